@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.config.monitor;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -27,8 +28,10 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.cloud.bus.event.RefreshRemoteApplicationEvent;
+import org.springframework.cloud.config.server.environment.EnvironmentRepositoryChangedEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.util.StringUtils;
@@ -75,21 +78,12 @@ public class PropertyPathEndpoint implements ApplicationEventPublisherAware {
 	public Set<String> notifyByPath(@RequestHeader HttpHeaders headers, @RequestBody Map<String, Object> request) {
 		PropertyPathNotification notification = this.extractor.extract(headers, request);
 		if (notification != null) {
-
-			Set<String> services = new LinkedHashSet<>();
-
-			for (String path : notification.getPaths()) {
-				services.addAll(guessServiceName(path));
-			}
 			if (this.applicationEventPublisher != null) {
-				for (String service : services) {
-					log.info("Refresh for: " + service);
-					this.applicationEventPublisher
-							.publishEvent(new RefreshRemoteApplicationEvent(this, this.busId, service));
-				}
-				return services;
+				// Let the server drop what it cached for the paths before the services ask again
+				this.applicationEventPublisher
+						.publishEvent(new EnvironmentRepositoryChangedEvent(this, notification.getPaths()));
 			}
-
+			return refresh(Arrays.asList(notification.getPaths()));
 		}
 		return Collections.emptySet();
 	}
@@ -102,6 +96,35 @@ public class PropertyPathEndpoint implements ApplicationEventPublisherAware {
 		return notifyByPath(headers, map);
 	}
 
+	/**
+	 * Refresh the services affected by changes detected by an environment repository.
+	 * @param event the change event
+	 */
+	@EventListener
+	public void onEnvironmentRepositoryChanged(EnvironmentRepositoryChangedEvent event) {
+		// The changes announced by a webhook have already been refreshed
+		if (event.getSource() != this) {
+			refresh(event.getPaths());
+		}
+	}
+
+	private Set<String> refresh(List<String> paths) {
+		Set<String> services = new LinkedHashSet<>();
+
+		for (String path : paths) {
+			services.addAll(guessServiceName(path));
+		}
+		if (this.applicationEventPublisher != null) {
+			for (String service : services) {
+				log.info("Refresh for: " + service);
+				this.applicationEventPublisher
+						.publishEvent(new RefreshRemoteApplicationEvent(this, this.busId, service));
+			}
+			return services;
+		}
+		return Collections.emptySet();
+	}
+
 	private Set<String> guessServiceName(String path) {
 		Set<String> services = new LinkedHashSet<>();
 		if (path != null) {
@@ -23,6 +23,9 @@ import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import org.springframework.cloud.bus.event.RefreshRemoteApplicationEvent;
+import org.springframework.cloud.config.server.environment.EnvironmentRepositoryChangedEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.support.StaticApplicationContext;
 import org.springframework.http.HttpHeaders;
 
@@ -95,6 +98,38 @@ public class PropertyPathEndpointTests {
 				.toString()).isEqualTo("[foo-local, foo]");
 	}
 
+	@Test
+	public void testNotifyOnEnvironmentRepositoryChange() {
+		List<RefreshRemoteApplicationEvent> events = new ArrayList<>();
+		StaticApplicationContext publisher = new StaticApplicationContext();
+		publisher.addApplicationListener((ApplicationListener<RefreshRemoteApplicationEvent>) events::add);
+		publisher.refresh();
+		this.endpoint.setApplicationEventPublisher(publisher);
+
+		this.endpoint.onEnvironmentRepositoryChanged(new EnvironmentRepositoryChangedEvent(this, "foo-local"));
+
+		assertThat(events).hasSize(2);
+	}
+
+	@Test
+	public void testNotifyAnnouncesTheChangeBeforeRefreshing() {
+		List<Object> events = new ArrayList<>();
+		StaticApplicationContext publisher = new StaticApplicationContext();
+		publisher.addApplicationListener((ApplicationListener<RefreshRemoteApplicationEvent>) events::add);
+		publisher.addApplicationListener((ApplicationListener<EnvironmentRepositoryChangedEvent>) event -> {
+			events.add(event);
+			this.endpoint.onEnvironmentRepositoryChanged(event);
+		});
+		publisher.refresh();
+		this.endpoint.setApplicationEventPublisher(publisher);
+
+		this.endpoint.notifyByPath(new HttpHeaders(), Collections.singletonMap("path", "foo-local.yml"));
+
+		assertThat(events).hasSize(3);
+		assertThat(events.get(0)).isInstanceOf(EnvironmentRepositoryChangedEvent.class);
+		assertThat(((EnvironmentRepositoryChangedEvent) events.get(0)).getPaths()).containsExactly("foo-local.yml");
+	}
+
 	@Test
 	public void testNotifyMultiDash() {
 		assertThat(this.endpoint.notifyByPath(new HttpHeaders(), Collections.singletonMap("path", "foo-local-dev.yml"))
@@ -47,9 +47,9 @@ public class CompositeConfiguration {
 			@Autowired(required = false) List<EnvironmentRepository> environmentRepos,
 			ConfigServerProperties properties, ObjectProvider<ObservationRegistry> observationRegistry) {
 		environmentRepos = environmentRepos != null ? environmentRepos : new ArrayList<>();
-		return new SearchPathCompositeEnvironmentRepository(environmentRepos,
+		return configure(new SearchPathCompositeEnvironmentRepository(environmentRepos,
 				observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP),
-				properties.isFailOnCompositeError());
+				properties.isFailOnCompositeError()), properties);
 	}
 
 	@Bean
@@ -59,9 +59,16 @@ public class CompositeConfiguration {
 			@Autowired(required = false) List<EnvironmentRepository> environmentRepos,
 			ConfigServerProperties properties, ObjectProvider<ObservationRegistry> observationRegistry) {
 		environmentRepos = environmentRepos != null ? environmentRepos : new ArrayList<>();
-		return new CompositeEnvironmentRepository(environmentRepos,
+		return configure(new CompositeEnvironmentRepository(environmentRepos,
 				observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP),
-				properties.isFailOnCompositeError());
+				properties.isFailOnCompositeError()), properties);
+	}
+
+	static <T extends CompositeEnvironmentRepository> T configure(T repository, ConfigServerProperties properties) {
+		repository.setParallelism(properties.getCompositeParallelism());
+		repository.setTimeout(properties.getCompositeTimeout());
+		repository.setTimeoutPolicy(properties.getCompositeTimeoutPolicy());
+		return repository;
 	}
 
 }
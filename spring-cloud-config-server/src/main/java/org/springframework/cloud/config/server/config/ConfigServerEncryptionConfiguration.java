@@ -41,6 +41,7 @@ public class ConfigServerEncryptionConfiguration {
 		EncryptionController controller = new EncryptionController(this.encryptor);
 		controller.setDefaultApplicationName(this.properties.getDefaultApplicationName());
 		controller.setDefaultProfile(this.properties.getDefaultProfile());
+		controller.setParallelism(this.properties.getEncrypt().getParallelism());
 		return controller;
 	}
 
@@ -21,22 +21,37 @@ import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import io.micrometer.observation.ObservationRegistry;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.cloud.config.server.encryption.EnvironmentEncryptor;
 import org.springframework.cloud.config.server.encryption.ResourceEncryptor;
 import org.springframework.cloud.config.server.environment.EnvironmentController;
 import org.springframework.cloud.config.server.environment.EnvironmentEncryptorEnvironmentRepository;
 import org.springframework.cloud.config.server.environment.EnvironmentRepository;
+import org.springframework.cloud.config.server.environment.EnvironmentRequestCoalescer;
+import org.springframework.cloud.config.server.environment.LastKnownGoodEnvironmentRepository;
+import org.springframework.cloud.config.server.environment.RedisEnvironmentCache;
 import org.springframework.cloud.config.server.resource.ResourceController;
 import org.springframework.cloud.config.server.resource.ResourceRepository;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.http.MediaType;
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -57,9 +72,15 @@ public class ConfigServerMvcConfiguration implements WebMvcConfigurer {
 		configurer.mediaType("yaml", MediaType.valueOf("text/yaml"));
 	}
 
+	@Bean
+	@ConditionalOnProperty("spring.cloud.config.server.coalesce-requests")
+	public EnvironmentRequestCoalescer environmentRequestCoalescer() {
+		return new EnvironmentRequestCoalescer();
+	}
+
 	@Configuration(proxyBeanMethods = false)
 	@ConditionalOnMissingBean(org.springframework.cloud.context.scope.refresh.RefreshScope.class)
-	static class EnvironmentControllerConfiguration {
+	static class EnvironmentControllerConfiguration implements DisposableBean {
 
 		@Autowired(required = false)
 		private List<EnvironmentEncryptor> environmentEncryptors;
@@ -73,6 +94,15 @@ public class ConfigServerMvcConfiguration implements WebMvcConfigurer {
 		@Autowired(required = false)
 		private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
 
+		@Autowired(required = false)
+		private EnvironmentRequestCoalescer coalescer;
+
+		// Redis is optional, so the cache is only looked up when one was configured
+		@Autowired
+		private ObjectProvider<RedisEnvironmentCache> sharedCache;
+
+		private LastKnownGoodEnvironmentRepository lastKnownGood;
+
 		@Bean
 		public EnvironmentController environmentController(EnvironmentRepository envRepository,
 				ConfigServerProperties server) {
@@ -96,14 +126,44 @@ public class ConfigServerMvcConfiguration implements WebMvcConfigurer {
 					this.resourceEncryptorMap);
 			controller.setEncryptEnabled(server.getEncrypt().isEnabled());
 			controller.setPlainTextEncryptEnabled(server.getEncrypt().isPlainTextEncrypt());
+			controller.setRenderedResourceCacheSize(server.getRenderedResourceCacheSize());
 			return controller;
 		}
 
 		private EnvironmentRepository encrypted(EnvironmentRepository envRepository, ConfigServerProperties server) {
 			EnvironmentEncryptorEnvironmentRepository encrypted = new EnvironmentEncryptorEnvironmentRepository(
-					envRepository, this.environmentEncryptors, this.observationRegistry);
+					lastKnownGood(shared(envRepository), server), this.environmentEncryptors, this.observationRegistry);
 			encrypted.setOverrides(server.getOverrides());
-			return encrypted;
+			return this.coalescer != null ? this.coalescer.coalescing(encrypted) : encrypted;
+		}
+
+		private EnvironmentRepository shared(EnvironmentRepository envRepository) {
+			RedisEnvironmentCache cache = this.sharedCache.getIfAvailable();
+			return cache != null ? cache.caching(envRepository) : envRepository;
+		}
+
+		private synchronized EnvironmentRepository lastKnownGood(EnvironmentRepository envRepository,
+				ConfigServerProperties server) {
+			ConfigServerProperties.LastKnownGood properties = server.getLastKnownGood();
+			if (!properties.isEnabled()) {
+				return envRepository;
+			}
+			// Shared by the controllers, so remembered environments survive a refresh
+			if (this.lastKnownGood == null) {
+				this.lastKnownGood = new LastKnownGoodEnvironmentRepository(envRepository, properties.getMaxSize(),
+						this.objectMapper);
+				this.lastKnownGood.setParallelism(properties.getParallelism());
+			}
+			this.lastKnownGood.setLatencyBudget(properties.getLatencyBudget());
+			this.lastKnownGood.setPersistenceDirectory(properties.getPersistenceDirectory());
+			return this.lastKnownGood;
+		}
+
+		@Override
+		public synchronized void destroy() {
+			if (this.lastKnownGood != null) {
+				this.lastKnownGood.destroy();
+			}
 		}
 
 	}
@@ -122,4 +182,57 @@ public class ConfigServerMvcConfiguration implements WebMvcConfigurer {
 
 	}
 
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(StringRedisTemplate.class)
+	@ConditionalOnProperty("spring.cloud.config.server.shared-cache.enabled")
+	protected static class RedisEnvironmentCacheConfiguration {
+
+		@Bean
+		public RedisEnvironmentCache redisEnvironmentCache(StringRedisTemplate redis, ConfigServerProperties server,
+				ObjectProvider<ObjectMapper> objectMapper) {
+			ConfigServerProperties.SharedCache properties = server.getSharedCache();
+			RedisEnvironmentCache cache = new RedisEnvironmentCache(redis,
+					objectMapper.getIfAvailable(ObjectMapper::new), properties.getKeyPrefix());
+			cache.setTimeToLive(properties.getTimeToLive());
+			cache.setNearCacheTimeToLive(properties.getNearCacheTimeToLive());
+			cache.setNearCacheMaxSize(properties.getNearCacheMaxSize());
+			return cache;
+		}
+
+		@Bean
+		public RedisMessageListenerContainer redisEnvironmentCacheListenerContainer(
+				RedisConnectionFactory connectionFactory, RedisEnvironmentCache cache, StringRedisTemplate redis) {
+			RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+			container.setConnectionFactory(connectionFactory);
+			container.addMessageListener(
+					(message, pattern) -> cache.evict(redis.getStringSerializer().deserialize(message.getBody())),
+					new ChannelTopic(cache.getChannel()));
+			return container;
+		}
+
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class EnvironmentRequestCoalescerMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnProperty("spring.cloud.config.server.coalesce-requests")
+		public MeterBinder environmentRequestCoalescerMetrics(EnvironmentRequestCoalescer coalescer) {
+			return registry -> {
+				FunctionCounter.builder("spring.cloud.config.server.environment.requests", coalescer,
+						EnvironmentRequestCoalescer::getRequestCount).description("Environment requests")
+						.register(registry);
+				FunctionCounter.builder("spring.cloud.config.server.environment.requests.coalesced", coalescer,
+						EnvironmentRequestCoalescer::getCoalescedCount)
+						.description("Environment requests served with the result of an identical request")
+						.register(registry);
+				Gauge.builder("spring.cloud.config.server.environment.requests.in.flight", coalescer,
+						EnvironmentRequestCoalescer::getInFlightCount)
+						.description("Distinct environment requests being served").register(registry);
+			};
+		}
+
+	}
+
 }
@@ -16,10 +16,14 @@
 
 package org.springframework.cloud.config.server.config;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.config.server.environment.CompositeEnvironmentRepository;
 import org.springframework.core.style.ToStringCreator;
 
 /**
@@ -95,6 +99,27 @@ public class ConfigServerProperties {
 	 */
 	private boolean failOnCompositeError = true;
 
+	/**
+	 * Maximum number of subordinate repositories in a composite environment repository
+	 * that are queried concurrently. Defaults to 1, which queries them one after another.
+	 */
+	private int compositeParallelism = 1;
+
+	/**
+	 * How long to wait for each subordinate repository in a composite environment
+	 * repository when they are queried concurrently. Defaults to waiting until every
+	 * repository responds.
+	 */
+	private Duration compositeTimeout;
+
+	/**
+	 * What to do when a subordinate repository does not respond within the composite
+	 * timeout: fail the request, skip the repository, or use the property sources it
+	 * last returned.
+	 */
+	private CompositeEnvironmentRepository.TimeoutPolicy compositeTimeoutPolicy =
+			CompositeEnvironmentRepository.TimeoutPolicy.FAIL;
+
 	/**
 	 * By default the location order we use in GenericResourceRepository is the order in
 	 * which they are listed. Prior to Hoxton.SR11 the order used to be reverse. If this
@@ -103,12 +128,37 @@ public class ConfigServerProperties {
 	 */
 	private boolean reverseLocationOrder = false;
 
+	/**
+	 * Maximum number of plain text resources to keep in memory after placeholder
+	 * resolution and decryption. Only resources rendered from an environment with a
+	 * version are cached, keyed on that version and the resource last modified time.
+	 * Defaults to 0, which disables the cache.
+	 */
+	private int renderedResourceCacheSize = 0;
+
+	/**
+	 * Let identical environment requests that arrive while one of them is being served
+	 * share its result, instead of each querying the backends.
+	 */
+	private boolean coalesceRequests = false;
+
 	/**
 	 * Decryption configuration for when server handles encrypted properties before
 	 * sending them to clients.
 	 */
 	private Encrypt encrypt = new Encrypt();
 
+	/**
+	 * Fallback to the last environment successfully served when a backend fails or is
+	 * too slow.
+	 */
+	private LastKnownGood lastKnownGood = new LastKnownGood();
+
+	/**
+	 * Cache of environments shared by all the config server nodes through Redis.
+	 */
+	private SharedCache sharedCache = new SharedCache();
+
 	public boolean isEnabled() {
 		return this.enabled;
 	}
@@ -121,6 +171,14 @@ public class ConfigServerProperties {
 		return this.encrypt;
 	}
 
+	public LastKnownGood getLastKnownGood() {
+		return this.lastKnownGood;
+	}
+
+	public SharedCache getSharedCache() {
+		return this.sharedCache;
+	}
+
 	public String getDefaultLabel() {
 		return this.defaultLabel;
 	}
@@ -193,6 +251,30 @@ public class ConfigServerProperties {
 		this.failOnCompositeError = failOnCompositeError;
 	}
 
+	public int getCompositeParallelism() {
+		return this.compositeParallelism;
+	}
+
+	public void setCompositeParallelism(int compositeParallelism) {
+		this.compositeParallelism = compositeParallelism;
+	}
+
+	public Duration getCompositeTimeout() {
+		return this.compositeTimeout;
+	}
+
+	public void setCompositeTimeout(Duration compositeTimeout) {
+		this.compositeTimeout = compositeTimeout;
+	}
+
+	public CompositeEnvironmentRepository.TimeoutPolicy getCompositeTimeoutPolicy() {
+		return this.compositeTimeoutPolicy;
+	}
+
+	public void setCompositeTimeoutPolicy(CompositeEnvironmentRepository.TimeoutPolicy compositeTimeoutPolicy) {
+		this.compositeTimeoutPolicy = compositeTimeoutPolicy;
+	}
+
 	public boolean isReverseLocationOrder() {
 		return reverseLocationOrder;
 	}
@@ -201,14 +283,35 @@ public class ConfigServerProperties {
 		this.reverseLocationOrder = reverseLocationOrder;
 	}
 
+	public int getRenderedResourceCacheSize() {
+		return renderedResourceCacheSize;
+	}
+
+	public void setRenderedResourceCacheSize(int renderedResourceCacheSize) {
+		this.renderedResourceCacheSize = renderedResourceCacheSize;
+	}
+
+	public boolean isCoalesceRequests() {
+		return this.coalesceRequests;
+	}
+
+	public void setCoalesceRequests(boolean coalesceRequests) {
+		this.coalesceRequests = coalesceRequests;
+	}
+
 	@Override
 	public String toString() {
 		return new ToStringCreator(this).append("enabled", enabled).append("bootstrap", bootstrap)
 				.append("prefix", prefix).append("defaultLabel", defaultLabel).append("overrides", overrides)
 				.append("stripDocumentFromYaml", stripDocumentFromYaml).append("acceptEmpty", acceptEmpty)
 				.append("defaultApplicationName", defaultApplicationName).append("defaultProfile", defaultProfile)
-				.append("failOnCompositeError", failOnCompositeError).append("encrypt", encrypt)
-				.append("reverseLocationOrder", reverseLocationOrder).toString();
+				.append("failOnCompositeError", failOnCompositeError)
+				.append("compositeParallelism", compositeParallelism).append("compositeTimeout", compositeTimeout)
+				.append("compositeTimeoutPolicy", compositeTimeoutPolicy).append("encrypt", encrypt)
+				.append("lastKnownGood", lastKnownGood).append("sharedCache", sharedCache)
+				.append("reverseLocationOrder", reverseLocationOrder)
+				.append("renderedResourceCacheSize", renderedResourceCacheSize)
+				.append("coalesceRequests", coalesceRequests).toString();
 
 	}
 
@@ -228,6 +331,31 @@ public class ConfigServerProperties {
 		 */
 		private boolean plainTextEncrypt = false;
 
+		/**
+		 * Maximum number of property values decrypted (or Vault paths read)
+		 * concurrently, on a pool of threads shared by all the environment and batch
+		 * encrypt/decrypt requests. Defaults to 1, which processes values one after
+		 * another on the request thread.
+		 */
+		private int parallelism = 1;
+
+		/**
+		 * Key store aliases, besides the default one, whose encryptors are created on
+		 * startup (with the default secret).
+		 */
+		private List<String> keyAliases = new ArrayList<>();
+
+		/**
+		 * Minimum time between checks of the key store resource for modifications. The
+		 * keys are reloaded when the key store changes.
+		 */
+		private Duration keyStoreCheckInterval = Duration.ofSeconds(5);
+
+		/**
+		 * Cache of decrypted property values.
+		 */
+		private Cache cache = new Cache();
+
 		public boolean isEnabled() {
 			return this.enabled;
 		}
@@ -244,13 +372,263 @@ public class ConfigServerProperties {
 			this.plainTextEncrypt = plainTextEncrypt;
 		}
 
+		public int getParallelism() {
+			return this.parallelism;
+		}
+
+		public void setParallelism(int parallelism) {
+			this.parallelism = parallelism;
+		}
+
+		public List<String> getKeyAliases() {
+			return this.keyAliases;
+		}
+
+		public void setKeyAliases(List<String> keyAliases) {
+			this.keyAliases = keyAliases;
+		}
+
+		public Duration getKeyStoreCheckInterval() {
+			return this.keyStoreCheckInterval;
+		}
+
+		public void setKeyStoreCheckInterval(Duration keyStoreCheckInterval) {
+			this.keyStoreCheckInterval = keyStoreCheckInterval;
+		}
+
+		public Cache getCache() {
+			return this.cache;
+		}
+
 		@Override
 		public String toString() {
 			return new ToStringCreator(this).append("enabled", enabled).append("plainTextEncrypt", plainTextEncrypt)
-					.toString();
+					.append("parallelism", parallelism).append("keyAliases", keyAliases)
+					.append("keyStoreCheckInterval", keyStoreCheckInterval).append("cache", cache).toString();
 
 		}
 
+		/**
+		 * Decrypted value cache properties.
+		 */
+		public static class Cache {
+
+			/**
+			 * Enable caching of decrypted values, so that the same cipher text is only
+			 * decrypted once per time to live.
+			 */
+			private boolean enabled = false;
+
+			/**
+			 * Maximum number of decrypted values to cache.
+			 */
+			private int maxSize = 1000;
+
+			/**
+			 * How long a decrypted value is cached for.
+			 */
+			private Duration timeToLive = Duration.ofMinutes(5);
+
+			public boolean isEnabled() {
+				return this.enabled;
+			}
+
+			public void setEnabled(boolean enabled) {
+				this.enabled = enabled;
+			}
+
+			public int getMaxSize() {
+				return this.maxSize;
+			}
+
+			public void setMaxSize(int maxSize) {
+				this.maxSize = maxSize;
+			}
+
+			public Duration getTimeToLive() {
+				return this.timeToLive;
+			}
+
+			public void setTimeToLive(Duration timeToLive) {
+				this.timeToLive = timeToLive;
+			}
+
+			@Override
+			public String toString() {
+				return new ToStringCreator(this).append("enabled", enabled).append("maxSize", maxSize)
+						.append("timeToLive", timeToLive).toString();
+			}
+
+		}
+
+	}
+
+	/**
+	 * Last known good environment properties.
+	 */
+	public static class LastKnownGood {
+
+		/**
+		 * Serve the last environment successfully returned for the same application,
+		 * profiles and label when a backend fails.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * How long to wait for the backends before serving the last known good
+		 * environment, while the backends are queried again in the background. Defaults
+		 * to waiting for the backends.
+		 */
+		private Duration latencyBudget;
+
+		/**
+		 * Maximum number of backend queries running in the background when a latency
+		 * budget is set.
+		 */
+		private int parallelism = 4;
+
+		/**
+		 * Maximum number of environments to remember.
+		 */
+		private int maxSize = 1000;
+
+		/**
+		 * Directory where the last known good environments are also stored, so that they
+		 * survive a restart. The environments are stored before decryption, but secrets
+		 * read from backends such as Vault, JDBC, AWS or CredHub are in plain text, so
+		 * the files are only readable by the owner. Defaults to keeping them in memory
+		 * only.
+		 */
+		private String persistenceDirectory;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Duration getLatencyBudget() {
+			return this.latencyBudget;
+		}
+
+		public void setLatencyBudget(Duration latencyBudget) {
+			this.latencyBudget = latencyBudget;
+		}
+
+		public int getParallelism() {
+			return this.parallelism;
+		}
+
+		public void setParallelism(int parallelism) {
+			this.parallelism = parallelism;
+		}
+
+		public int getMaxSize() {
+			return this.maxSize;
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public String getPersistenceDirectory() {
+			return this.persistenceDirectory;
+		}
+
+		public void setPersistenceDirectory(String persistenceDirectory) {
+			this.persistenceDirectory = persistenceDirectory;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("enabled", enabled).append("latencyBudget", latencyBudget)
+					.append("parallelism", parallelism).append("maxSize", maxSize)
+					.append("persistenceDirectory", persistenceDirectory).toString();
+		}
+
+	}
+
+
+	/**
+	 * Shared environment cache properties.
+	 */
+	public static class SharedCache {
+
+		/**
+		 * Cache environments with a version in Redis, so that they are shared by all the
+		 * config server nodes.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * How long an environment is kept in Redis.
+		 */
+		private Duration timeToLive = Duration.ofMinutes(5);
+
+		/**
+		 * How long an environment is kept in the local near cache of each node.
+		 */
+		private Duration nearCacheTimeToLive = Duration.ofSeconds(10);
+
+		/**
+		 * Maximum number of environments in the local near cache of each node.
+		 */
+		private int nearCacheMaxSize = 1000;
+
+		/**
+		 * Prefix of the Redis keys and channel used by the cache.
+		 */
+		private String keyPrefix = "spring-cloud-config:";
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Duration getTimeToLive() {
+			return this.timeToLive;
+		}
+
+		public void setTimeToLive(Duration timeToLive) {
+			this.timeToLive = timeToLive;
+		}
+
+		public Duration getNearCacheTimeToLive() {
+			return this.nearCacheTimeToLive;
+		}
+
+		public void setNearCacheTimeToLive(Duration nearCacheTimeToLive) {
+			this.nearCacheTimeToLive = nearCacheTimeToLive;
+		}
+
+		public int getNearCacheMaxSize() {
+			return this.nearCacheMaxSize;
+		}
+
+		public void setNearCacheMaxSize(int nearCacheMaxSize) {
+			this.nearCacheMaxSize = nearCacheMaxSize;
+		}
+
+		public String getKeyPrefix() {
+			return this.keyPrefix;
+		}
+
+		public void setKeyPrefix(String keyPrefix) {
+			this.keyPrefix = keyPrefix;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("enabled", enabled).append("timeToLive", timeToLive)
+					.append("nearCacheTimeToLive", nearCacheTimeToLive).append("nearCacheMaxSize", nearCacheMaxSize)
+					.append("keyPrefix", keyPrefix).toString();
+		}
+
 	}
 
 }
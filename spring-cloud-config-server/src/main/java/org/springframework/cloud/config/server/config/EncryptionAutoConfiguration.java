@@ -16,12 +16,20 @@
 
 package org.springframework.cloud.config.server.config;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.config.server.encryption.CipherEnvironmentEncryptor;
+import org.springframework.cloud.config.server.encryption.DecryptedValueCache;
 import org.springframework.cloud.config.server.encryption.EnvironmentEncryptor;
 import org.springframework.cloud.config.server.encryption.SingleTextEncryptorLocator;
 import org.springframework.cloud.config.server.encryption.TextEncryptorLocator;
@@ -51,16 +59,56 @@ public class EncryptionAutoConfiguration {
 		return new SingleTextEncryptorLocator(encryptor);
 	}
 
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty(value = "spring.cloud.config.server.encrypt.cache.enabled")
+	public DecryptedValueCache decryptedValueCache(ObjectProvider<ConfigServerProperties> server) {
+		ConfigServerProperties.Encrypt.Cache cache = encrypt(server).getCache();
+		return new DecryptedValueCache(cache.getMaxSize(), cache.getTimeToLive());
+	}
+
 	@Bean
 	@ConditionalOnMissingBean
 	@ConditionalOnProperty(value = "spring.cloud.config.server.encrypt.enabled", matchIfMissing = true)
 	@ConditionalOnBean(TextEncryptorLocator.class)
 	public EnvironmentEncryptor environmentEncryptor(@Autowired(required = false) TextEncryptorLocator locator,
-			TextEncryptor encryptor) {
+			TextEncryptor encryptor, ObjectProvider<DecryptedValueCache> cache,
+			ObjectProvider<ConfigServerProperties> server) {
 		if (locator == null) {
 			locator = new SingleTextEncryptorLocator(encryptor);
 		}
-		return new CipherEnvironmentEncryptor(locator);
+		CipherEnvironmentEncryptor environmentEncryptor = new CipherEnvironmentEncryptor(locator);
+		environmentEncryptor.setDecryptedValueCache(cache.getIfAvailable());
+		environmentEncryptor.setParallelism(encrypt(server).getParallelism());
+		return environmentEncryptor;
+	}
+
+	private static ConfigServerProperties.Encrypt encrypt(ObjectProvider<ConfigServerProperties> server) {
+		return server.getIfAvailable(ConfigServerProperties::new).getEncrypt();
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class DecryptedValueCacheMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnBean(DecryptedValueCache.class)
+		public MeterBinder decryptedValueCacheMetrics(DecryptedValueCache cache) {
+			return registry -> {
+				FunctionCounter.builder("spring.cloud.config.server.decrypt.cache.hits", cache,
+						DecryptedValueCache::getHitCount).description("Decrypted values served from the cache")
+						.register(registry);
+				FunctionCounter.builder("spring.cloud.config.server.decrypt.cache.misses", cache,
+						DecryptedValueCache::getMissCount).description("Values decrypted because they were not cached")
+						.register(registry);
+				FunctionCounter.builder("spring.cloud.config.server.decrypt.cache.evictions", cache,
+						DecryptedValueCache::getEvictionCount)
+						.description("Decrypted values evicted or expired from the cache").register(registry);
+				Gauge.builder("spring.cloud.config.server.decrypt.cache.size", cache, DecryptedValueCache::size)
+						.description("Number of decrypted values in the cache").register(registry);
+			};
+		}
+
 	}
 
 }
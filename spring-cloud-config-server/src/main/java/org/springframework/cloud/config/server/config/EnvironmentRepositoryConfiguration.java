@@ -16,10 +16,14 @@
 
 package org.springframework.cloud.config.server.config;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 
 import com.google.cloud.secretmanager.v1.SecretManagerServiceClient;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import io.micrometer.observation.ObservationRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import org.apache.http.client.HttpClient;
@@ -37,6 +41,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.SearchStrategy;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.config.server.composite.CompositeEnvironmentBeanFactoryPostProcessor;
 import org.springframework.cloud.config.server.composite.ConditionalOnMissingSearchPathLocator;
@@ -98,7 +103,10 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.Environment;
 import org.springframework.credhub.core.CredHubOperations;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.vault.core.VaultTemplate;
 
@@ -427,6 +435,27 @@ class AwsParameterStoreRepositoryConfiguration {
 		return factory.build(environmentProperties);
 	}
 
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	static class AwsParameterStoreMetricsConfiguration {
+
+		@Bean
+		public MeterBinder awsParameterStoreMetrics(AwsParameterStoreEnvironmentRepository repository) {
+			return registry -> {
+				FunctionCounter.builder("spring.cloud.config.server.awsparamstore.calls", repository,
+						AwsParameterStoreEnvironmentRepository::getCallCount).description("Calls to the SSM API")
+						.register(registry);
+				FunctionCounter.builder("spring.cloud.config.server.awsparamstore.throttles", repository,
+						AwsParameterStoreEnvironmentRepository::getThrottleCount)
+						.description("Calls to the SSM API that were throttled").register(registry);
+				FunctionCounter.builder("spring.cloud.config.server.awsparamstore.cache.hits", repository,
+						AwsParameterStoreEnvironmentRepository::getCacheHitCount)
+						.description("Parameter paths served from the cache").register(registry);
+			};
+		}
+
+	}
+
 }
 
 @Configuration(proxyBeanMethods = false)
@@ -521,6 +550,24 @@ class RedisRepositoryConfiguration {
 		return factory.build(environmentProperties);
 	}
 
+	@Bean
+	@ConditionalOnProperty("spring.cloud.config.server.redis.keyspace-notifications")
+	public RedisMessageListenerContainer redisEnvironmentRepositoryListenerContainer(
+			RedisConnectionFactory connectionFactory, RedisEnvironmentRepository repository,
+			ObjectProvider<RedisProperties> redisProperties) {
+		RedisProperties redis = redisProperties.getIfAvailable();
+		// Only the database the hashes are read from
+		String prefix = "__keyspace@" + (redis != null ? redis.getDatabase() : 0) + "__:";
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		container.addMessageListener((message, pattern) -> {
+			String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+			repository.keyspaceNotification(channel.substring(prefix.length()),
+					new String(message.getBody(), StandardCharsets.UTF_8));
+		}, new PatternTopic(prefix + "*"));
+		return container;
+	}
+
 }
 
 @Configuration(proxyBeanMethods = false)
@@ -539,9 +586,9 @@ class CompositeRepositoryConfiguration {
 	public SearchPathCompositeEnvironmentRepository searchPathCompositeEnvironmentRepository(
 			List<EnvironmentRepository> environmentRepositories, ConfigServerProperties properties,
 			ObjectProvider<ObservationRegistry> observationRegistry) {
-		return new SearchPathCompositeEnvironmentRepository(environmentRepositories,
+		return CompositeConfiguration.configure(new SearchPathCompositeEnvironmentRepository(environmentRepositories,
 				observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP),
-				properties.isFailOnCompositeError());
+				properties.isFailOnCompositeError()), properties);
 	}
 
 	@Primary
@@ -550,9 +597,9 @@ class CompositeRepositoryConfiguration {
 	public CompositeEnvironmentRepository compositeEnvironmentRepository(
 			List<EnvironmentRepository> environmentRepositories, ConfigServerProperties properties,
 			ObjectProvider<ObservationRegistry> observationRegistry) {
-		return new CompositeEnvironmentRepository(environmentRepositories,
+		return CompositeConfiguration.configure(new CompositeEnvironmentRepository(environmentRepositories,
 				observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP),
-				properties.isFailOnCompositeError());
+				properties.isFailOnCompositeError()), properties);
 	}
 
 }
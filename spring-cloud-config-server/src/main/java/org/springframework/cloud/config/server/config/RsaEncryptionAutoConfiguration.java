@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.config.server.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -26,7 +27,6 @@ import org.springframework.cloud.config.server.encryption.KeyStoreTextEncryptorL
 import org.springframework.cloud.config.server.encryption.TextEncryptorLocator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.rsa.crypto.KeyStoreKeyFactory;
 import org.springframework.security.rsa.crypto.RsaAlgorithm;
 import org.springframework.security.rsa.crypto.RsaSecretEncryptor;
 
@@ -50,16 +50,18 @@ public class RsaEncryptionAutoConfiguration {
 
 	@Bean
 	@ConditionalOnMissingBean
-	public TextEncryptorLocator textEncryptorLocator(KeyProperties key, RsaProperties rsaProperties) {
+	public TextEncryptorLocator textEncryptorLocator(KeyProperties key, RsaProperties rsaProperties,
+			ObjectProvider<ConfigServerProperties> server) {
 		KeyProperties.KeyStore keyStore = key.getKeyStore();
-		KeyStoreTextEncryptorLocator locator = new KeyStoreTextEncryptorLocator(
-				new KeyStoreKeyFactory(keyStore.getLocation(), keyStore.getPassword().toCharArray(),
-						key.getKeyStore().getType()),
-				keyStore.getSecret(), keyStore.getAlias());
+		KeyStoreTextEncryptorLocator locator = new KeyStoreTextEncryptorLocator(keyStore.getLocation(),
+				keyStore.getPassword().toCharArray(), keyStore.getType(), keyStore.getSecret(), keyStore.getAlias());
 		RsaAlgorithm algorithm = rsaProperties.getAlgorithm();
 		locator.setRsaAlgorithm(algorithm);
 		locator.setSalt(rsaProperties.getSalt());
 		locator.setStrong(rsaProperties.isStrong());
+		ConfigServerProperties.Encrypt encrypt = server.getIfAvailable(ConfigServerProperties::new).getEncrypt();
+		locator.setAliases(encrypt.getKeyAliases());
+		locator.setKeyStoreCheckInterval(encrypt.getKeyStoreCheckInterval());
 		return locator;
 	}
 
@@ -16,6 +16,14 @@
 
 package org.springframework.cloud.config.server.config;
 
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.cloud.config.server.encryption.vault.VaultEnvironmentEncryptor;
 import org.springframework.cloud.config.server.environment.vault.SpringVaultEnvironmentRepository;
@@ -36,8 +44,44 @@ public class VaultEncryptionAutoConfiguration {
 
 	@Bean
 	public VaultEnvironmentEncryptor vaultEnvironmentEncryptor(
-			SpringVaultEnvironmentRepository vaultEnvironmentRepository) {
-		return new VaultEnvironmentEncryptor(vaultEnvironmentRepository.getKeyValueTemplate());
+			SpringVaultEnvironmentRepository vaultEnvironmentRepository,
+			ObjectProvider<ConfigServerProperties> server) {
+		VaultEnvironmentEncryptor encryptor = new VaultEnvironmentEncryptor(
+				vaultEnvironmentRepository.getKeyValueTemplate());
+		ConfigServerProperties.Encrypt encrypt = server.getIfAvailable(ConfigServerProperties::new).getEncrypt();
+		encryptor.setParallelism(encrypt.getParallelism());
+		if (encrypt.getCache().isEnabled()) {
+			encryptor.setCacheTimeToLive(encrypt.getCache().getTimeToLive());
+			encryptor.setCacheMaxSize(encrypt.getCache().getMaxSize());
+		}
+		return encryptor;
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class VaultEnvironmentEncryptorMetricsConfiguration {
+
+		@Bean
+		public MeterBinder vaultEnvironmentEncryptorMetrics(VaultEnvironmentEncryptor encryptor) {
+			return registry -> {
+				encryptor.setStatisticsListener((path, statistics) -> bind(registry, path, statistics));
+				encryptor.getStatistics().forEach((path, statistics) -> bind(registry, path, statistics));
+			};
+		}
+
+		private static void bind(MeterRegistry registry, String path,
+				VaultEnvironmentEncryptor.ReadStatistics statistics) {
+			FunctionTimer.builder("spring.cloud.config.server.vault.reads", statistics, s -> s.getReadCount(),
+					s -> s.getTotalReadTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS).tag("path", path)
+					.description("Reads of a Vault path to resolve {vault} references").register(registry);
+			FunctionCounter.builder("spring.cloud.config.server.vault.errors", statistics, s -> s.getErrorCount())
+					.tag("path", path).description("Failed reads of a Vault path").register(registry);
+			FunctionCounter
+					.builder("spring.cloud.config.server.vault.cache.hits", statistics, s -> s.getCacheHitCount())
+					.tag("path", path)
+					.description("References to a Vault path resolved from the cache").register(registry);
+		}
+
 	}
 
 }
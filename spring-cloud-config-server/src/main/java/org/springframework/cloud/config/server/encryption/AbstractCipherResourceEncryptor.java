@@ -17,8 +17,12 @@
 package org.springframework.cloud.config.server.encryption;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonFactory;
@@ -65,12 +69,50 @@ abstract class AbstractCipherResourceEncryptor implements ResourceEncryptor {
 			}
 		}
 
-		for (String value : valsToDecrpyt) {
-			String decryptedValue = decryptValue(value.replace(CIPHER_MARKER, ""), name, profiles);
-			text = text.replace(value, decryptedValue);
-		}
+		return replaceCipherValues(text, valsToDecrpyt, name, profiles);
+	}
 
-		return text;
+	/**
+	 * Replace every occurrence of the cipher values in the text with the decrypted value,
+	 * copying the text to the output once. Each distinct value is decrypted once.
+	 * @param text the text to decrypt
+	 * @param values the cipher values (starting with the cipher marker) to replace
+	 * @param name the application name
+	 * @param profiles the profiles
+	 * @return the decrypted text
+	 */
+	protected String replaceCipherValues(String text, Set<String> values, String name, String[] profiles) {
+		if (values.isEmpty()) {
+			return text;
+		}
+		Map<String, String> decryptedValues = new HashMap<>();
+		for (String value : values) {
+			decryptedValues.put(value, decryptValue(value.replace(CIPHER_MARKER, ""), name, profiles));
+		}
+		// Longest first, so a value that is a prefix of another does not win
+		List<String> candidates = new ArrayList<>(values);
+		candidates.sort(Comparator.comparingInt(String::length).reversed());
+		StringBuilder builder = new StringBuilder(text.length());
+		int copied = 0;
+		int index = text.indexOf(CIPHER_MARKER);
+		while (index >= 0) {
+			String match = null;
+			for (String candidate : candidates) {
+				if (text.startsWith(candidate, index)) {
+					match = candidate;
+					break;
+				}
+			}
+			if (match == null) {
+				index = text.indexOf(CIPHER_MARKER, index + CIPHER_MARKER.length());
+				continue;
+			}
+			builder.append(text, copied, index).append(decryptedValues.get(match));
+			copied = index + match.length();
+			index = text.indexOf(CIPHER_MARKER, copied);
+		}
+		builder.append(text, copied, text.length());
+		return builder.toString();
 	}
 
 	protected String decryptValue(String value, String name, String[] profiles) {
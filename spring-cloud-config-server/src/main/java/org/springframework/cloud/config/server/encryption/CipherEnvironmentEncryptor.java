@@ -16,13 +16,17 @@
 
 package org.springframework.cloud.config.server.encryption;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
@@ -38,7 +42,7 @@ import org.springframework.util.StringUtils;
  *
  */
 @Component
-public class CipherEnvironmentEncryptor implements EnvironmentEncryptor {
+public class CipherEnvironmentEncryptor implements EnvironmentEncryptor, DisposableBean {
 
 	private static Log logger = LogFactory.getLog(CipherEnvironmentEncryptor.class);
 
@@ -46,51 +50,135 @@ public class CipherEnvironmentEncryptor implements EnvironmentEncryptor {
 
 	private EnvironmentPrefixHelper helper = new EnvironmentPrefixHelper();
 
+	private DecryptedValueCache cache;
+
+	private volatile ForkJoinPool pool;
+
 	@Autowired
 	public CipherEnvironmentEncryptor(TextEncryptorLocator encryptor) {
 		this.encryptor = encryptor;
 	}
 
+	/**
+	 * Set a cache for decrypted values, so that the same cipher text is not decrypted
+	 * again on every request. Defaults to null (no cache).
+	 * @param cache the cache to use
+	 */
+	public void setDecryptedValueCache(DecryptedValueCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Set the maximum number of values that are decrypted concurrently. The threads are
+	 * shared by all the requests using this encryptor. Defaults to 1 (values are
+	 * decrypted one after another on the calling thread).
+	 * @param parallelism the maximum number of concurrent decryptions
+	 */
+	public void setParallelism(int parallelism) {
+		ForkJoinPool pool = this.pool;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		setParallelism(1);
+	}
+
 	@Override
 	public Environment decrypt(Environment environment) {
 		return this.encryptor != null ? decrypt(environment, this.encryptor) : environment;
 	}
 
 	private Environment decrypt(Environment environment, TextEncryptorLocator encryptor) {
-		Environment result = new Environment(environment);
+		String profiles = StringUtils.arrayToCommaDelimitedString(environment.getProfiles());
+		// Collect all the encrypted values first, so they can be decrypted in parallel
+		List<List<Decryption>> sources = new ArrayList<>();
+		List<Decryption> decryptions = new ArrayList<>();
 		for (PropertySource source : environment.getPropertySources()) {
-			Map<Object, Object> map = new LinkedHashMap<Object, Object>(source.getSource());
-			for (Map.Entry<Object, Object> entry : new LinkedHashSet<>(map.entrySet())) {
-				Object key = entry.getKey();
-				String name = key.toString();
+			List<Decryption> encrypted = new ArrayList<>();
+			for (Map.Entry<?, ?> entry : source.getSource().entrySet()) {
 				if (entry.getValue() != null && entry.getValue().toString().startsWith("{cipher}")) {
-					String value = entry.getValue().toString();
-					map.remove(key);
-					try {
-						value = value.substring("{cipher}".length());
-						value = encryptor
-								.locate(this.helper.getEncryptorKeys(name,
-										StringUtils.arrayToCommaDelimitedString(environment.getProfiles()), value))
-								.decrypt(this.helper.stripPrefix(value));
-					}
-					catch (Exception e) {
-						value = "<n/a>";
-						name = "invalid." + name;
-						String message = "Cannot decrypt key: " + key + " (" + e.getClass() + ": " + e.getMessage()
-								+ ")";
-						if (logger.isDebugEnabled()) {
-							logger.debug(message, e);
-						}
-						else if (logger.isWarnEnabled()) {
-							logger.warn(message);
-						}
-					}
-					map.put(name, value);
+					encrypted.add(new Decryption(entry.getKey(), entry.getValue().toString()));
 				}
 			}
+			sources.add(encrypted);
+			decryptions.addAll(encrypted);
+		}
+		ForkJoinPool pool = this.pool;
+		if (pool == null || decryptions.size() < 2) {
+			decryptions.forEach(decryption -> decryption.decrypt(encryptor, profiles));
+		}
+		else {
+			CompletableFuture.allOf(decryptions.stream()
+					.map(decryption -> CompletableFuture.runAsync(() -> decryption.decrypt(encryptor, profiles), pool))
+					.toArray(CompletableFuture[]::new)).join();
+		}
+		// Decrypted values replace the encrypted ones in the same order as before
+		Environment result = new Environment(environment);
+		for (int i = 0; i < sources.size(); i++) {
+			PropertySource source = environment.getPropertySources().get(i);
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>(source.getSource());
+			for (Decryption decryption : sources.get(i)) {
+				map.remove(decryption.key);
+				map.put(decryption.name, decryption.value);
+			}
 			result.add(new PropertySource(source.getName(), map));
 		}
 		return result;
 	}
 
+	private String decrypt(TextEncryptorLocator encryptor, Map<String, String> keys, String value) {
+		if (this.cache == null) {
+			return encryptor.locate(keys).decrypt(value);
+		}
+		return this.cache.get(keys, value, () -> encryptor.locate(keys).decrypt(value));
+	}
+
+	/**
+	 * A single encrypted value and, once decrypted, its (possibly renamed) key and
+	 * value.
+	 */
+	private final class Decryption {
+
+		private final Object key;
+
+		private final String encrypted;
+
+		private String name;
+
+		private String value;
+
+		private Decryption(Object key, String encrypted) {
+			this.key = key;
+			this.encrypted = encrypted;
+		}
+
+		private void decrypt(TextEncryptorLocator encryptor, String profiles) {
+			String property = this.key.toString();
+			String text = this.encrypted;
+			try {
+				text = text.substring("{cipher}".length());
+				Map<String, String> keys = helper.getEncryptorKeys(property, profiles, text);
+				text = CipherEnvironmentEncryptor.this.decrypt(encryptor, keys, helper.stripPrefix(text));
+			}
+			catch (Exception e) {
+				text = "<n/a>";
+				property = "invalid." + property;
+				String message = "Cannot decrypt key: " + this.key + " (" + e.getClass() + ": " + e.getMessage() + ")";
+				if (logger.isDebugEnabled()) {
+					logger.debug(message, e);
+				}
+				else if (logger.isWarnEnabled()) {
+					logger.warn(message);
+				}
+			}
+			this.name = property;
+			this.value = text;
+		}
+
+	}
+
 }
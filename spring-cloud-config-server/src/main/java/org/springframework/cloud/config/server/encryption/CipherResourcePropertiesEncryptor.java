@@ -52,7 +52,6 @@ public class CipherResourcePropertiesEncryptor extends AbstractCipherResourceEnc
 	public String decrypt(String text, Environment environment) throws IOException {
 		Set<String> valsToDecrpyt = new HashSet<String>();
 		Properties properties = new Properties();
-		StringBuffer sb = new StringBuffer();
 		properties.load(new ByteArrayInputStream(text.getBytes()));
 
 		for (Object value : properties.values()) {
@@ -62,13 +61,7 @@ public class CipherResourcePropertiesEncryptor extends AbstractCipherResourceEnc
 			}
 		}
 
-		for (String value : valsToDecrpyt) {
-			String decryptedValue = decryptValue(value.replace(CIPHER_MARKER, ""), environment.getName(),
-					environment.getProfiles());
-			text = text.replace(value, decryptedValue);
-		}
-
-		return text;
+		return replaceCipherValues(text, valsToDecrpyt, environment.getName(), environment.getProfiles());
 	}
 
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.encryption;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.util.Assert;
+
+/**
+ * A bounded cache of decrypted values, keyed on the cipher text and the keys used to
+ * locate its {@link org.springframework.security.crypto.encrypt.TextEncryptor}, so that
+ * the same cipher text only pays for an (RSA) decryption once per time to live. Plain
+ * text is held as a {@code char[]} which is zeroed when the entry is evicted, expires or
+ * the cache is cleared.
+ */
+public class DecryptedValueCache {
+
+	private final int maxSize;
+
+	private final long timeToLive;
+
+	private final LinkedHashMap<Key, Entry> entries;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxSize the maximum number of decrypted values to keep
+	 * @param timeToLive how long a decrypted value is kept after it was decrypted
+	 */
+	public DecryptedValueCache(int maxSize, Duration timeToLive) {
+		Assert.isTrue(maxSize > 0, "maxSize must be positive");
+		Assert.isTrue(timeToLive != null && !timeToLive.isNegative() && !timeToLive.isZero(),
+				"timeToLive must be positive");
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive.toNanos();
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Return the decrypted value for the cipher text, decrypting it (without holding a
+	 * lock) if it is not cached or has expired. Failed decryptions are not cached.
+	 * @param keys the keys used to locate the text encryptor
+	 * @param cipherText the cipher text (without the {cipher} marker)
+	 * @param decryptor the function that decrypts the cipher text
+	 * @return the plain text
+	 */
+	public String get(Map<String, String> keys, String cipherText, Supplier<String> decryptor) {
+		Key key = new Key(keys, cipherText);
+		long now = System.nanoTime();
+		synchronized (this.entries) {
+			Entry entry = this.entries.get(key);
+			if (entry != null) {
+				if (now - entry.created < this.timeToLive) {
+					this.hits.increment();
+					return new String(entry.value);
+				}
+				this.entries.remove(key);
+				entry.clear();
+				this.evictions.increment();
+			}
+		}
+		this.misses.increment();
+		String value = decryptor.get();
+		if (value != null) {
+			put(key, new Entry(value.toCharArray(), now));
+		}
+		return value;
+	}
+
+	private void put(Key key, Entry entry) {
+		synchronized (this.entries) {
+			Entry previous = this.entries.put(key, entry);
+			if (previous != null) {
+				previous.clear();
+			}
+			Iterator<Entry> values = this.entries.values().iterator();
+			while (this.entries.size() > this.maxSize && values.hasNext()) {
+				values.next().clear();
+				values.remove();
+				this.evictions.increment();
+			}
+		}
+	}
+
+	/**
+	 * Remove all the entries from the cache, zeroing the plain text.
+	 */
+	public void clear() {
+		synchronized (this.entries) {
+			this.entries.values().forEach(Entry::clear);
+			this.entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (this.entries) {
+			return this.entries.size();
+		}
+	}
+
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return this.evictions.sum();
+	}
+
+	private static final class Key {
+
+		private final Map<String, String> keys;
+
+		private final String cipherText;
+
+		private final int hash;
+
+		private Key(Map<String, String> keys, String cipherText) {
+			this.keys = new HashMap<>(keys);
+			this.cipherText = cipherText;
+			this.hash = Objects.hash(this.keys, cipherText);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			Key other = (Key) o;
+			return this.cipherText.equals(other.cipherText) && this.keys.equals(other.keys);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+	}
+
+	private static final class Entry {
+
+		private final char[] value;
+
+		private final long created;
+
+		private Entry(char[] value, long created) {
+			this.value = value;
+			this.created = created;
+		}
+
+		private void clear() {
+			Arrays.fill(this.value, '\0');
+		}
+
+	}
+
+}
@@ -18,13 +18,21 @@ package org.springframework.cloud.config.server.encryption;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.context.encrypt.KeyFormatException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -50,7 +58,7 @@ import org.springframework.web.bind.annotation.RestController;
  */
 @RestController
 @RequestMapping(path = "${spring.cloud.config.server.prefix:}")
-public class EncryptionController {
+public class EncryptionController implements DisposableBean {
 
 	private static Log logger = LogFactory.getLog(EncryptionController.class);
 
@@ -62,6 +70,8 @@ public class EncryptionController {
 
 	private String defaultProfile = "default";
 
+	private volatile ForkJoinPool pool;
+
 	public EncryptionController(TextEncryptorLocator encryptorLocator) {
 		this.encryptorLocator = encryptorLocator;
 	}
@@ -74,6 +84,25 @@ public class EncryptionController {
 		this.defaultProfile = defaultProfile;
 	}
 
+	/**
+	 * Set the maximum number of values that are encrypted or decrypted concurrently,
+	 * across all batch requests. With 1 the values are processed one after another on
+	 * the calling thread. Defaults to 1.
+	 * @param parallelism the maximum number of concurrent operations
+	 */
+	public void setParallelism(int parallelism) {
+		ForkJoinPool pool = this.pool;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		setParallelism(1);
+	}
+
 	@GetMapping("/key")
 	public String getPublicKey() {
 		return getPublicKey(defaultApplicationName, defaultProfile);
@@ -115,6 +144,36 @@ public class EncryptionController {
 		return encrypted;
 	}
 
+	@PostMapping(path = "encrypt/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Object encryptBatch(@RequestBody Object data) {
+		return encryptBatch(defaultApplicationName, defaultProfile, data);
+	}
+
+	/**
+	 * Encrypt a JSON array or object of plain text values, returning an array or object
+	 * (with the same keys) of results. Each result has a "status" of "OK" and the
+	 * encrypted "value", or a "status" and "description" of the failure for that value.
+	 * @param name application name
+	 * @param profiles comma separated profiles
+	 * @param data JSON array or object of values to encrypt
+	 * @return the results in the same shape as the input
+	 */
+	@PostMapping(path = "/encrypt/batch/{name}/{profiles}", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Object encryptBatch(@PathVariable String name, @PathVariable String profiles,
+			@RequestBody Object data) {
+		TextEncryptor encryptor = getEncryptor(name, profiles, "");
+		validateEncryptionWeakness(encryptor);
+		Object results = batch(data, input -> {
+			Map<String, String> keys = helper.getEncryptorKeys(name, profiles, input);
+			String textToEncrypt = helper.stripPrefix(input);
+			return helper.addPrefix(keys, encryptorLocator.locate(keys).encrypt(textToEncrypt));
+		}, "Text could not be encrypted");
+		if (logger.isInfoEnabled()) {
+			logger.info("Encrypted batch data");
+		}
+		return results;
+	}
+
 	@PostMapping("decrypt")
 	public String decrypt(@RequestBody String data, @RequestHeader("Content-Type") MediaType type) {
 		return decrypt(defaultApplicationName, defaultProfile, data, type);
@@ -143,6 +202,91 @@ public class EncryptionController {
 		}
 	}
 
+	@PostMapping(path = "decrypt/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Object decryptBatch(@RequestBody Object data) {
+		return decryptBatch(defaultApplicationName, defaultProfile, data);
+	}
+
+	/**
+	 * Decrypt a JSON array or object of cipher texts, returning an array or object (with
+	 * the same keys) of results. Each result has a "status" of "OK" and the decrypted
+	 * "value", or a "status" and "description" of the failure for that value.
+	 * @param name application name
+	 * @param profiles comma separated profiles
+	 * @param data JSON array or object of values to decrypt
+	 * @return the results in the same shape as the input
+	 */
+	@PostMapping(path = "/decrypt/batch/{name}/{profiles}", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Object decryptBatch(@PathVariable String name, @PathVariable String profiles,
+			@RequestBody Object data) {
+		TextEncryptor encryptor = getEncryptor(name, profiles, "");
+		checkDecryptionPossible(encryptor);
+		validateEncryptionWeakness(encryptor);
+		Object results = batch(data,
+				input -> getEncryptor(name, profiles, input).decrypt(helper.stripPrefix(input)),
+				"Text not encrypted with this key");
+		if (logger.isInfoEnabled()) {
+			logger.info("Decrypted batch cipher data");
+		}
+		return results;
+	}
+
+	private Object batch(Object data, Function<String, String> operation, String failure) {
+		if (data instanceof Map) {
+			Map<?, ?> values = (Map<?, ?>) data;
+			List<Map<String, Object>> results = batch(values.values(), operation, failure);
+			Map<Object, Object> batch = new LinkedHashMap<>();
+			int index = 0;
+			for (Object key : values.keySet()) {
+				batch.put(key, results.get(index++));
+			}
+			return batch;
+		}
+		if (data instanceof Collection) {
+			return batch((Collection<?>) data, operation, failure);
+		}
+		throw new InvalidBatchException();
+	}
+
+	private List<Map<String, Object>> batch(Collection<?> values, Function<String, String> operation,
+			String failure) {
+		ForkJoinPool pool = this.pool;
+		List<CompletableFuture<Map<String, Object>>> results = new ArrayList<>(values.size());
+		for (Object value : values) {
+			if (pool == null || values.size() < 2) {
+				results.add(CompletableFuture.completedFuture(batchItem(value, operation, failure)));
+			}
+			else {
+				results.add(CompletableFuture.supplyAsync(() -> batchItem(value, operation, failure), pool));
+			}
+		}
+		List<Map<String, Object>> batch = new ArrayList<>(results.size());
+		results.forEach(result -> batch.add(result.join()));
+		return batch;
+	}
+
+	private Map<String, Object> batchItem(Object value, Function<String, String> operation, String failure) {
+		Map<String, Object> result = new LinkedHashMap<>();
+		if (!(value instanceof String)) {
+			result.put("status", "INVALID");
+			result.put("description", "Value is not a string");
+			return result;
+		}
+		try {
+			String processed = operation.apply((String) value);
+			result.put("status", "OK");
+			result.put("value", processed);
+		}
+		catch (RuntimeException e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Cannot process batch value: " + e.getMessage());
+			}
+			result.put("status", "INVALID");
+			result.put("description", failure);
+		}
+		return result;
+	}
+
 	private TextEncryptor getEncryptor(String name, String profiles, String data) {
 		if (encryptorLocator == null) {
 			if (logger.isDebugEnabled()) {
@@ -252,6 +396,14 @@ public class EncryptionController {
 		return new ResponseEntity<>(body, HttpStatus.NOT_FOUND);
 	}
 
+	@ExceptionHandler(InvalidBatchException.class)
+	public ResponseEntity<Map<String, Object>> invalidBatch() {
+		Map<String, Object> body = new HashMap<>();
+		body.put("status", "BAD_REQUEST");
+		body.put("description", "Batch must be a JSON array or object of strings");
+		return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+	}
+
 	@ExceptionHandler(InvalidCipherException.class)
 	public ResponseEntity<Map<String, Object>> invalidCipher() {
 		Map<String, Object> body = new HashMap<>();
@@ -286,3 +438,8 @@ class InvalidCipherException extends RuntimeException {
 class DecryptionNotSupportedException extends RuntimeException {
 
 }
+
+@SuppressWarnings("serial")
+class InvalidBatchException extends RuntimeException {
+
+}
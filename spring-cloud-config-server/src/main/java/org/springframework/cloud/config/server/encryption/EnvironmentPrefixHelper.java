@@ -20,7 +20,6 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.springframework.security.crypto.encrypt.TextEncryptor;
-import org.springframework.util.StringUtils;
 
 /**
  * Shared helper class for encryption and decryption concerns where the plain text and
@@ -30,6 +29,9 @@ import org.springframework.util.StringUtils;
  * independent decryptions using different cryptographic keys for different applications
  * and profiles, if needed (this class does not have any crypto features, but it can be
  * used by components that do).
+ * <p>
+ * Prefixes are scanned character by character rather than with regular expressions,
+ * since this runs for every encrypted value on every request.
  *
  * @author Dave Syer
  *
@@ -63,38 +65,12 @@ class EnvironmentPrefixHelper {
 	 * @return encryptor keys
 	 */
 	public Map<String, String> getEncryptorKeys(String name, String profiles, String text) {
-
 		Map<String, String> keys = new LinkedHashMap<String, String>();
-
-		text = removeEnvironmentPrefix(text);
 		keys.put(NAME, name);
 		keys.put(PROFILES, profiles);
-
-		if (text.contains(ESCAPE)) {
-			text = text.substring(0, text.indexOf(ESCAPE));
-		}
-
-		String[] tokens = StringUtils.split(text, "}");
-		while (tokens != null) {
-			String token = tokens[0].trim();
-			if (token.startsWith("{")) {
-				String key = "";
-				String value = "";
-				if (token.contains(":") && !token.endsWith(":")) {
-					key = token.substring(1, token.indexOf(":"));
-					value = token.substring(token.indexOf(":") + 1);
-				}
-				else {
-					key = token.substring(1);
-				}
-				keys.put(key, value);
-			}
-			text = tokens[1];
-			tokens = StringUtils.split(text, "}");
-		}
-
+		int escape = text.indexOf(ESCAPE);
+		parsePrefix(text, escape < 0 ? text.length() : escape, keys);
 		return keys;
-
 	}
 
 	/**
@@ -118,17 +94,56 @@ class EnvironmentPrefixHelper {
 	}
 
 	public String stripPrefix(String value) {
-		if (!value.contains("}")) {
-			return value;
+		int escape = value.indexOf(ESCAPE);
+		if (escape >= 0) {
+			return value.substring(escape + ESCAPE.length());
 		}
-		if (value.contains(ESCAPE)) {
-			return value.substring(value.indexOf(ESCAPE) + ESCAPE.length());
+		int offset = parsePrefix(value, value.length(), null);
+		return offset == 0 ? value : value.substring(offset);
+	}
+
+	/**
+	 * Scan the <code>{name:value}</code> pairs at the start of the text in a single pass,
+	 * stopping at the limit or at the first character that does not start a pair. A
+	 * <code>{name}</code> without a value is added with an empty value, and pairs for
+	 * the "name" and "profiles" keys are skipped.
+	 * @param text the text to scan
+	 * @param limit the offset to stop scanning at (usually that of an {@link #ESCAPE})
+	 * @param keys the map to add the pairs to (may be null)
+	 * @return the offset of the text after the last pair with a colon
+	 */
+	private static int parsePrefix(String text, int limit, Map<String, String> keys) {
+		int offset = 0;
+		int start = 0;
+		while (start < limit && text.charAt(start) == '{') {
+			int colon = -1;
+			int end = start + 1;
+			while (end < limit && text.charAt(end) != '}') {
+				if (colon < 0 && text.charAt(end) == ':') {
+					colon = end;
+				}
+				end++;
+			}
+			if (end == limit) {
+				break;
+			}
+			if (colon >= 0) {
+				offset = end + 1;
+			}
+			if (colon < 0 || colon == end - 1) {
+				// Keys without a value (or with an empty one) are kept whole
+				colon = end;
+			}
+			if (keys != null && !isKey(text, start, colon, NAME) && !isKey(text, start, colon, PROFILES)) {
+				keys.put(text.substring(start + 1, colon), colon < end ? text.substring(colon + 1, end) : "");
+			}
+			start = end + 1;
 		}
-		return value.replaceFirst("^(\\{.*?:.*?\\})+", "");
+		return offset;
 	}
 
-	private String removeEnvironmentPrefix(String input) {
-		return input.replaceFirst("\\{name:.*\\}", "").replaceFirst("\\{profiles:.*\\}", "");
+	private static boolean isKey(String text, int start, int colon, String key) {
+		return colon - start - 1 == key.length() && text.startsWith(key, start + 1);
 	}
 
 }
@@ -16,8 +16,19 @@
 
 package org.springframework.cloud.config.server.encryption;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.security.rsa.crypto.KeyStoreKeyFactory;
 import org.springframework.security.rsa.crypto.RsaAlgorithm;
@@ -29,23 +40,43 @@ import org.springframework.security.rsa.crypto.RsaSecretEncryptor;
  * input map is not, in general, the secret in the keystore, but is dereferenced through a
  * {@link SecretLocator} (so for example you can keep a table of encrypted secrets and
  * update it separately to the keystore).
+ * <p>
+ * Encryptors are cached per alias and resolved secret. When the locator is created from
+ * a keystore {@link Resource}, the resource is checked for modifications (at most once
+ * per {@link #setKeyStoreCheckInterval(Duration) check interval}) and the keystore is
+ * reloaded and the cache cleared when it changes, so keys can be rotated without a
+ * restart.
  *
  * @author Dave Syer
  *
  */
-public class KeyStoreTextEncryptorLocator implements TextEncryptorLocator {
+public class KeyStoreTextEncryptorLocator implements TextEncryptorLocator, InitializingBean {
+
+	private static final Log logger = LogFactory.getLog(KeyStoreTextEncryptorLocator.class);
 
 	private final static String KEY = "key";
 
 	private final static String SECRET = "secret";
 
-	private KeyStoreKeyFactory keys;
+	private volatile Encryptors encryptors;
+
+	private final Resource keyStore;
+
+	private final char[] keyStorePassword;
+
+	private final String keyStoreType;
+
+	private volatile long keyStoreLastModified;
+
+	private volatile long keyStoreLastChecked;
+
+	private long keyStoreCheckInterval = Duration.ofSeconds(5).toNanos();
 
 	private String defaultSecret;
 
 	private String defaultAlias;
 
-	private RsaSecretEncryptor defaultEncryptor;
+	private List<String> aliases = new ArrayList<>();
 
 	private SecretLocator secretLocator = new PassthruSecretLocator();
 
@@ -56,7 +87,30 @@ public class KeyStoreTextEncryptorLocator implements TextEncryptorLocator {
 	private String salt = "deadbeef";
 
 	public KeyStoreTextEncryptorLocator(KeyStoreKeyFactory keys, String defaultSecret, String defaultAlias) {
-		this.keys = keys;
+		this.encryptors = new Encryptors(keys);
+		this.keyStore = null;
+		this.keyStorePassword = null;
+		this.keyStoreType = null;
+		this.defaultAlias = defaultAlias;
+		this.defaultSecret = defaultSecret;
+	}
+
+	/**
+	 * Create a locator that reloads the keystore when the resource changes.
+	 * @param keyStore the keystore resource
+	 * @param password the keystore password
+	 * @param type the keystore type (e.g. "jks")
+	 * @param defaultSecret the secret used when none is provided in the input map
+	 * @param defaultAlias the alias used when none is provided in the input map
+	 */
+	public KeyStoreTextEncryptorLocator(Resource keyStore, char[] password, String type, String defaultSecret,
+			String defaultAlias) {
+		this.keyStore = keyStore;
+		this.keyStorePassword = password.clone();
+		this.keyStoreType = type;
+		this.encryptors = new Encryptors(new KeyStoreKeyFactory(keyStore, this.keyStorePassword, type));
+		this.keyStoreLastModified = lastModified(keyStore);
+		this.keyStoreLastChecked = System.nanoTime();
 		this.defaultAlias = defaultAlias;
 		this.defaultSecret = defaultSecret;
 	}
@@ -66,38 +120,147 @@ public class KeyStoreTextEncryptorLocator implements TextEncryptorLocator {
 	 */
 	public void setSecretLocator(SecretLocator secretLocator) {
 		this.secretLocator = secretLocator;
+		clear();
 	}
 
 	public void setRsaAlgorithm(RsaAlgorithm rsaAlgorithm) {
 		this.rsaAlgorithm = rsaAlgorithm;
+		clear();
 	}
 
 	public void setStrong(boolean strong) {
 		this.strong = strong;
+		clear();
 	}
 
 	public void setSalt(String salt) {
 		this.salt = salt;
+		clear();
+	}
+
+	/**
+	 * @param aliases additional aliases (with the default secret) whose encryptors are
+	 * created on startup, along with the default alias
+	 */
+	public void setAliases(Collection<String> aliases) {
+		this.aliases = new ArrayList<>(aliases);
+	}
+
+	/**
+	 * @param keyStoreCheckInterval the minimum time between checks of the keystore
+	 * resource for modifications
+	 */
+	public void setKeyStoreCheckInterval(Duration keyStoreCheckInterval) {
+		this.keyStoreCheckInterval = keyStoreCheckInterval.toNanos();
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		List<String> warm = new ArrayList<>();
+		warm.add(this.defaultAlias);
+		warm.addAll(this.aliases);
+		for (String alias : warm) {
+			if (alias == null) {
+				continue;
+			}
+			try {
+				locate(Map.of(KEY, alias));
+			}
+			catch (RuntimeException e) {
+				logger.warn("Cannot create encryptor for key alias " + alias + ": " + e.getMessage());
+			}
+		}
 	}
 
 	@Override
 	public TextEncryptor locate(Map<String, String> keys) {
+		checkKeyStore();
 		String alias = keys.containsKey(KEY) ? keys.get(KEY) : this.defaultAlias;
 		String secret = keys.containsKey(SECRET) ? keys.get(SECRET) : this.defaultSecret;
-		if (alias.equals(this.defaultAlias) && secret.equals(this.defaultSecret)) {
-			if (this.defaultEncryptor == null) {
-				this.defaultEncryptor = rsaSecretEncryptor(alias, secret);
+		char[] password = this.secretLocator.locate(secret);
+		Encryptors encryptors = this.encryptors;
+		return encryptors.cache.computeIfAbsent(new EncryptorKey(alias, password),
+				key -> new RsaSecretEncryptor(encryptors.keys.getKeyPair(alias, password), this.rsaAlgorithm,
+						this.salt, this.strong));
+	}
+
+	private void clear() {
+		this.encryptors = new Encryptors(this.encryptors.keys);
+	}
+
+	private void checkKeyStore() {
+		if (this.keyStore == null || System.nanoTime() - this.keyStoreLastChecked < this.keyStoreCheckInterval) {
+			return;
+		}
+		synchronized (this.keyStore) {
+			long now = System.nanoTime();
+			if (now - this.keyStoreLastChecked < this.keyStoreCheckInterval) {
+				return;
+			}
+			this.keyStoreLastChecked = now;
+			long lastModified = lastModified(this.keyStore);
+			if (lastModified != this.keyStoreLastModified) {
+				logger.info("Key store " + this.keyStore.getDescription() + " changed, reloading keys");
+				this.encryptors = new Encryptors(
+						new KeyStoreKeyFactory(this.keyStore, this.keyStorePassword, this.keyStoreType));
+				this.keyStoreLastModified = lastModified;
 			}
-			return this.defaultEncryptor;
 		}
-		else {
-			return rsaSecretEncryptor(alias, secret);
+	}
+
+	private static long lastModified(Resource resource) {
+		try {
+			return resource.lastModified();
+		}
+		catch (Exception e) {
+			return 0;
 		}
 	}
 
-	private RsaSecretEncryptor rsaSecretEncryptor(String alias, String secret) {
-		return new RsaSecretEncryptor(this.keys.getKeyPair(alias, this.secretLocator.locate(secret)), this.rsaAlgorithm,
-				this.salt, this.strong);
+	/**
+	 * A key store together with the encryptors created from it, replaced as a whole when
+	 * the key store is reloaded or the encryptor settings change.
+	 */
+	private static final class Encryptors {
+
+		private final KeyStoreKeyFactory keys;
+
+		private final Map<EncryptorKey, RsaSecretEncryptor> cache = new ConcurrentHashMap<>();
+
+		private Encryptors(KeyStoreKeyFactory keys) {
+			this.keys = keys;
+		}
+
+	}
+
+	private static final class EncryptorKey {
+
+		private final String alias;
+
+		private final char[] password;
+
+		private EncryptorKey(String alias, char[] password) {
+			this.alias = alias;
+			this.password = password;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			EncryptorKey other = (EncryptorKey) o;
+			return this.alias.equals(other.alias) && Arrays.equals(this.password, other.password);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.alias.hashCode() + Arrays.hashCode(this.password);
+		}
+
 	}
 
 }
@@ -16,18 +16,37 @@
 
 package org.springframework.cloud.config.server.encryption.vault;
 
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.client.ConfigClientProperties;
 import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.encryption.CipherEnvironmentEncryptor;
 import org.springframework.cloud.config.server.encryption.EnvironmentEncryptor;
+import org.springframework.cloud.config.server.support.RequestContextSupport;
 import org.springframework.util.ObjectUtils;
 import org.springframework.vault.core.VaultKeyValueOperations;
 import org.springframework.vault.support.VaultResponse;
@@ -35,90 +54,392 @@ import org.springframework.vault.support.VaultResponse;
 /**
  * VaultEnvironmentEncryptor that can decrypt property values prefixed with {vault}
  * marker.
+ * <p>
+ * Each distinct Vault path referenced by an environment is read once per request, and
+ * all the references to a path share the outcome of that read: if it fails, every
+ * property referring to the path is reported as invalid. Reads can also be cached
+ * across requests for a {@link #setCacheTimeToLive(Duration) time to live}, shortened to
+ * the lease duration of the response when Vault returns one, and only shared between
+ * requests presenting the same config token. The cache holds a bounded number of
+ * responses, dropping expired and least recently used ones first, and is keyed on a
+ * digest of the token rather than the token itself. Read counts, latencies and cache
+ * hits are recorded per Vault path.
  *
  * @author Alexey Zhokhov
  */
-public class VaultEnvironmentEncryptor implements EnvironmentEncryptor {
+public class VaultEnvironmentEncryptor implements EnvironmentEncryptor, DisposableBean {
 
 	private static final Log logger = LogFactory.getLog(CipherEnvironmentEncryptor.class);
 
 	private final VaultKeyValueOperations keyValueTemplate;
 
+	private volatile ForkJoinPool pool;
+
+	private final LinkedHashMap<String, CachedResponse> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final Map<String, ReadStatistics> statistics = new ConcurrentHashMap<>();
+
+	private volatile BiConsumer<String, ReadStatistics> statisticsListener;
+
+	private long cacheTimeToLive;
+
+	private int cacheMaxSize = 1000;
+
 	public VaultEnvironmentEncryptor(VaultKeyValueOperations keyValueTemplate) {
 		this.keyValueTemplate = keyValueTemplate;
 	}
 
+	/**
+	 * Set the maximum number of Vault paths that are read concurrently. The threads are
+	 * shared by all the requests using this encryptor, and read with the attributes (and
+	 * so the config token) of the request that needs the path. Defaults to 1 (paths are
+	 * read one after another on the calling thread).
+	 * @param parallelism the maximum number of concurrent reads
+	 */
+	public void setParallelism(int parallelism) {
+		ForkJoinPool pool = this.pool;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Set how long a Vault response is cached across requests. A response with a lease
+	 * duration is cached for at most the lease duration. Defaults to zero (no cache).
+	 * @param cacheTimeToLive the time to live of a cached response
+	 */
+	public void setCacheTimeToLive(Duration cacheTimeToLive) {
+		this.cacheTimeToLive = cacheTimeToLive.toNanos();
+		clearCache();
+	}
+
+	/**
+	 * Set the maximum number of responses that are cached, one per Vault path and
+	 * config token. Defaults to 1000.
+	 * @param cacheMaxSize the maximum number of cached responses
+	 */
+	public void setCacheMaxSize(int cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+
+	/**
+	 * Set a callback that is invoked when the first read of a Vault path is recorded,
+	 * for example to register metrics for the path.
+	 * @param statisticsListener the callback
+	 */
+	public void setStatisticsListener(BiConsumer<String, ReadStatistics> statisticsListener) {
+		this.statisticsListener = statisticsListener;
+	}
+
+	/**
+	 * @return the read statistics for each Vault path that has been referenced
+	 */
+	public Map<String, ReadStatistics> getStatistics() {
+		return Collections.unmodifiableMap(this.statistics);
+	}
+
 	@Override
-	public Environment decrypt(Environment environment) {
-		Map<String, VaultResponse> loadedVaultKeys = new HashMap<>();
+	public void destroy() {
+		setParallelism(1);
+		clearCache();
+	}
 
-		Environment result = new Environment(environment);
+	@Override
+	public Environment decrypt(Environment environment) {
+		// Collect all the references first, so the Vault paths can be read in parallel
+		List<List<Resolution>> sources = new ArrayList<>();
+		Map<String, Future<VaultResponse>> loadedVaultKeys = new LinkedHashMap<>();
 		for (PropertySource source : environment.getPropertySources()) {
-			Map<Object, Object> map = new LinkedHashMap<>(source.getSource());
-			for (Map.Entry<Object, Object> entry : new LinkedHashSet<>(map.entrySet())) {
-				Object key = entry.getKey();
-				String name = key.toString();
+			List<Resolution> resolutions = new ArrayList<>();
+			for (Map.Entry<?, ?> entry : source.getSource().entrySet()) {
 				if (entry.getValue() != null && entry.getValue().toString().startsWith("{vault}")) {
-					String value = entry.getValue().toString();
-					map.remove(key);
-					try {
-						value = value.substring("{vault}".length());
+					Resolution resolution = new Resolution(entry.getKey(), entry.getValue().toString());
+					if (resolution.vaultKey != null) {
+						loadedVaultKeys.computeIfAbsent(resolution.vaultKey, this::load);
+					}
+					resolutions.add(resolution);
+				}
+			}
+			sources.add(resolutions);
+		}
+		// Resolved values replace the references in the same order as before
+		Environment result = new Environment(environment);
+		for (int i = 0; i < sources.size(); i++) {
+			PropertySource source = environment.getPropertySources().get(i);
+			Map<Object, Object> map = new LinkedHashMap<>(source.getSource());
+			for (Resolution resolution : sources.get(i)) {
+				resolution.resolve(loadedVaultKeys);
+				map.remove(resolution.key);
+				map.put(resolution.name, resolution.value);
+			}
+			result.add(new PropertySource(source.getName(), map));
+		}
+		return result;
+	}
 
-						if (!value.startsWith(":")) {
-							throw new RuntimeException("Wrong format");
-						}
+	private Future<VaultResponse> load(String vaultKey) {
+		ReadStatistics statistics = statistics(vaultKey);
+		String cacheKey = cacheKey(vaultKey);
+		CachedResponse cached = getCached(cacheKey);
+		if (cached != null) {
+			statistics.cacheHits.increment();
+			return CompletableFuture.completedFuture(cached.response);
+		}
+		ForkJoinPool pool = this.pool;
+		if (pool == null) {
+			FutureTask<VaultResponse> task = new FutureTask<>(() -> read(vaultKey, cacheKey, statistics));
+			task.run();
+			return task;
+		}
+		// The Vault token may come from the request, so read with its attributes
+		return CompletableFuture.supplyAsync(
+				RequestContextSupport.withRequestAttributes(() -> read(vaultKey, cacheKey, statistics)), pool);
+	}
 
-						value = value.substring(1);
+	private VaultResponse read(String vaultKey, String cacheKey, ReadStatistics statistics) {
+		long start = System.nanoTime();
+		VaultResponse response;
+		try {
+			response = this.keyValueTemplate.get(vaultKey);
+		}
+		catch (RuntimeException e) {
+			statistics.errors.increment();
+			throw e;
+		}
+		finally {
+			statistics.reads.increment();
+			statistics.readTime.add(System.nanoTime() - start);
+		}
+		long timeToLive = this.cacheTimeToLive;
+		if (response != null && response.getLeaseDuration() > 0) {
+			timeToLive = Math.min(timeToLive, TimeUnit.SECONDS.toNanos(response.getLeaseDuration()));
+		}
+		if (timeToLive > 0) {
+			putCached(cacheKey, new CachedResponse(response, start + timeToLive));
+		}
+		return response;
+	}
 
-						if (!value.contains("#")) {
-							throw new RuntimeException("Wrong format");
-						}
+	/**
+	 * Responses are only shared between requests presenting the same token, which is
+	 * digested so that it is not kept in memory any longer than the request.
+	 */
+	private static String cacheKey(String vaultKey) {
+		String token = RequestContextSupport.getRequestHeader(ConfigClientProperties.TOKEN_HEADER);
+		if (token == null) {
+			return vaultKey;
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+			return vaultKey + "#" + HexFormat.of().formatHex(digest);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 
-						String[] parts = value.split("#");
+	private CachedResponse getCached(String cacheKey) {
+		synchronized (this.cache) {
+			CachedResponse cached = this.cache.get(cacheKey);
+			if (cached != null && cached.isExpired(System.nanoTime())) {
+				this.cache.remove(cacheKey);
+				return null;
+			}
+			return cached;
+		}
+	}
 
-						if (parts.length == 1) {
-							throw new RuntimeException("Wrong format");
-						}
+	private void putCached(String cacheKey, CachedResponse response) {
+		long now = System.nanoTime();
+		synchronized (this.cache) {
+			this.cache.put(cacheKey, response);
+			// Drop the expired responses (for example of rotated tokens) before the
+			// least recently used ones
+			Iterator<CachedResponse> responses = this.cache.values().iterator();
+			while (responses.hasNext()) {
+				if (responses.next().isExpired(now)) {
+					responses.remove();
+				}
+			}
+			responses = this.cache.values().iterator();
+			while (this.cache.size() > this.cacheMaxSize && responses.hasNext()) {
+				responses.next();
+				responses.remove();
+			}
+		}
+	}
 
-						if (ObjectUtils.isEmpty(parts[0]) || ObjectUtils.isEmpty(parts[1])) {
-							throw new RuntimeException("Wrong format");
-						}
+	private void clearCache() {
+		synchronized (this.cache) {
+			this.cache.clear();
+		}
+	}
 
-						String vaultKey = parts[0];
-						String vaultParamName = parts[1];
+	private ReadStatistics statistics(String vaultKey) {
+		ReadStatistics statistics = this.statistics.get(vaultKey);
+		if (statistics == null) {
+			ReadStatistics created = new ReadStatistics();
+			statistics = this.statistics.putIfAbsent(vaultKey, created);
+			if (statistics == null) {
+				statistics = created;
+				BiConsumer<String, ReadStatistics> listener = this.statisticsListener;
+				if (listener != null) {
+					listener.accept(vaultKey, statistics);
+				}
+			}
+		}
+		return statistics;
+	}
 
-						if (!loadedVaultKeys.containsKey(vaultKey)) {
-							loadedVaultKeys.put(vaultKey, keyValueTemplate.get(vaultKey));
-						}
+	/**
+	 * Counts of reads, errors and cache hits, and the total read time, for a Vault path.
+	 */
+	public static final class ReadStatistics {
 
-						VaultResponse vaultResponse = loadedVaultKeys.get(vaultKey);
+		private final LongAdder reads = new LongAdder();
 
-						if (vaultResponse == null || (vaultResponse.getData() == null
-								|| !vaultResponse.getData().containsKey(vaultParamName))) {
-							value = null;
-						}
-						else {
-							value = vaultResponse.getData().get(vaultParamName).toString();
-						}
-					}
-					catch (Exception e) {
-						value = "<n/a>";
-						name = "invalid." + name;
-						String message = "Cannot resolve key: " + key + " (" + e.getClass() + ": " + e.getMessage()
-								+ ")";
-						if (logger.isDebugEnabled()) {
-							logger.debug(message, e);
-						}
-						else if (logger.isWarnEnabled()) {
-							logger.warn(message);
-						}
-					}
-					map.put(name, value);
+		private final LongAdder errors = new LongAdder();
+
+		private final LongAdder cacheHits = new LongAdder();
+
+		private final LongAdder readTime = new LongAdder();
+
+		public long getReadCount() {
+			return this.reads.sum();
+		}
+
+		public long getErrorCount() {
+			return this.errors.sum();
+		}
+
+		public long getCacheHitCount() {
+			return this.cacheHits.sum();
+		}
+
+		public double getTotalReadTime(TimeUnit unit) {
+			return (double) this.readTime.sum() / unit.toNanos(1);
+		}
+
+	}
+
+	private static final class CachedResponse {
+
+		private final VaultResponse response;
+
+		private final long expires;
+
+		private CachedResponse(VaultResponse response, long expires) {
+			this.response = response;
+			this.expires = expires;
+		}
+
+		private boolean isExpired(long now) {
+			return now - this.expires >= 0;
+		}
+
+	}
+
+	/**
+	 * A single {vault} reference and, once resolved, its (possibly renamed) key and
+	 * value.
+	 */
+	private static final class Resolution {
+
+		private final Object key;
+
+		private String vaultKey;
+
+		private String vaultParamName;
+
+		private Exception error;
+
+		private String name;
+
+		private String value;
+
+		private Resolution(Object key, String reference) {
+			this.key = key;
+			try {
+				String text = reference.substring("{vault}".length());
+
+				if (!text.startsWith(":")) {
+					throw new RuntimeException("Wrong format");
 				}
+
+				text = text.substring(1);
+
+				if (!text.contains("#")) {
+					throw new RuntimeException("Wrong format");
+				}
+
+				String[] parts = text.split("#");
+
+				if (parts.length == 1) {
+					throw new RuntimeException("Wrong format");
+				}
+
+				if (ObjectUtils.isEmpty(parts[0]) || ObjectUtils.isEmpty(parts[1])) {
+					throw new RuntimeException("Wrong format");
+				}
+
+				this.vaultKey = parts[0];
+				this.vaultParamName = parts[1];
+			}
+			catch (Exception e) {
+				this.error = e;
 			}
-			result.add(new PropertySource(source.getName(), map));
 		}
-		return result;
+
+		private void resolve(Map<String, Future<VaultResponse>> loadedVaultKeys) {
+			String property = this.key.toString();
+			String text;
+			try {
+				if (this.error != null) {
+					throw this.error;
+				}
+
+				VaultResponse vaultResponse = get(loadedVaultKeys.get(this.vaultKey));
+
+				if (vaultResponse == null || (vaultResponse.getData() == null
+						|| !vaultResponse.getData().containsKey(this.vaultParamName))) {
+					text = null;
+				}
+				else {
+					text = vaultResponse.getData().get(this.vaultParamName).toString();
+				}
+			}
+			catch (Exception e) {
+				text = "<n/a>";
+				property = "invalid." + property;
+				String message = "Cannot resolve key: " + this.key + " (" + e.getClass() + ": " + e.getMessage() + ")";
+				if (logger.isDebugEnabled()) {
+					logger.debug(message, e);
+				}
+				else if (logger.isWarnEnabled()) {
+					logger.warn(message);
+				}
+			}
+			this.name = property;
+			this.value = text;
+		}
+
+		private static VaultResponse get(Future<VaultResponse> response) throws Exception {
+			try {
+				return response.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw e;
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) {
+					throw (Exception) e.getCause();
+				}
+				throw e;
+			}
+		}
+
 	}
 
 }
@@ -101,6 +101,21 @@ public class AwsParameterStoreEnvironmentProperties implements EnvironmentReposi
 	@Max(10)
 	private int maxResults = 10;
 
+	/**
+	 * The maximum number of parameter paths read concurrently, across all requests.
+	 * Defaults to "4".
+	 */
+	@Min(1)
+	private int parallelism = 4;
+
+	/**
+	 * Time (in seconds) the parameters of a path are cached. Expired parameters are
+	 * still served, up to twice that time, while they are read again in the background.
+	 * Defaults to "0" (not cached).
+	 */
+	@Min(0)
+	private int cacheTimeToLive = 0;
+
 	public int getOrder() {
 		return order;
 	}
@@ -174,4 +189,20 @@ public class AwsParameterStoreEnvironmentProperties implements EnvironmentReposi
 		this.maxResults = maxResults;
 	}
 
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public int getCacheTimeToLive() {
+		return cacheTimeToLive;
+	}
+
+	public void setCacheTimeToLive(int cacheTimeToLive) {
+		this.cacheTimeToLive = cacheTimeToLive;
+	}
+
 }
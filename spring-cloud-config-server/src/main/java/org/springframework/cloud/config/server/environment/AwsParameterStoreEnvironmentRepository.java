@@ -16,21 +16,37 @@
 
 package org.springframework.cloud.config.server.environment;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.services.ssm.SsmClient;
 import software.amazon.awssdk.services.ssm.model.GetParametersByPathRequest;
 import software.amazon.awssdk.services.ssm.model.GetParametersByPathResponse;
 import software.amazon.awssdk.services.ssm.model.Parameter;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.config.ConfigServerProperties;
@@ -40,9 +56,22 @@ import org.springframework.util.StringUtils;
 import static org.springframework.cloud.config.server.environment.AwsParameterStoreEnvironmentProperties.DEFAULT_PATH_SEPARATOR;
 
 /**
+ * An {@link EnvironmentRepository} backed by the AWS Parameter Store. The parameter paths
+ * of a request are read concurrently, on a pool shared by all requests so that the
+ * number of concurrent calls to SSM is bounded. That bound is lowered when SSM throttles
+ * the calls and raised again as they succeed, and a throttled call is retried after a
+ * back off without holding a thread of the pool in the meantime. The parameters of each
+ * path can be cached, and are then read again in the background once they expire.
+ *
  * @author Iulian Antohe
  */
-public class AwsParameterStoreEnvironmentRepository implements EnvironmentRepository, Ordered {
+public class AwsParameterStoreEnvironmentRepository implements EnvironmentRepository, Ordered, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(AwsParameterStoreEnvironmentRepository.class);
+
+	private static final int MAX_CACHED_PATHS = 1024;
+
+	private static final int MAX_THROTTLED_RETRIES = 3;
 
 	private final SsmClient awsSsmClient;
 
@@ -52,12 +81,42 @@ public class AwsParameterStoreEnvironmentRepository implements EnvironmentReposi
 
 	private final int order;
 
+	private final Map<String, CachedPath> cache = new ConcurrentHashMap<>();
+
+	private final LongAdder calls = new LongAdder();
+
+	private final LongAdder throttles = new LongAdder();
+
+	private final LongAdder cacheHits = new LongAdder();
+
+	private volatile CallLimiter limiter;
+
 	public AwsParameterStoreEnvironmentRepository(SsmClient awsSsmClient, ConfigServerProperties configServerProperties,
 			AwsParameterStoreEnvironmentProperties environmentProperties) {
 		this.awsSsmClient = awsSsmClient;
 		this.configServerProperties = configServerProperties;
 		this.environmentProperties = environmentProperties;
 		this.order = environmentProperties.getOrder();
+		setParallelism(environmentProperties.getParallelism());
+	}
+
+	/**
+	 * Set the maximum number of parameter paths read concurrently, across all requests.
+	 * With 1 the paths are read one after another on the calling thread, which backs off
+	 * itself when a call is throttled.
+	 * @param parallelism the maximum number of concurrent reads
+	 */
+	public void setParallelism(int parallelism) {
+		CallLimiter limiter = this.limiter;
+		this.limiter = parallelism > 1 ? new CallLimiter(new ForkJoinPool(parallelism), parallelism) : null;
+		if (limiter != null) {
+			limiter.pool.shutdown();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		setParallelism(1);
 	}
 
 	@Override
@@ -119,9 +178,16 @@ public class AwsParameterStoreEnvironmentRepository implements EnvironmentReposi
 	private List<PropertySource> getPropertySources(Set<String> parameterPaths) {
 		List<PropertySource> result = new ArrayList<>();
 
+		CallLimiter limiter = this.limiter;
+		Map<String, CompletableFuture<Map<String, String>>> sources = new LinkedHashMap<>();
+
 		for (String path : parameterPaths) {
-			String name = environmentProperties.getOrigin() + path;
-			Map<String, String> source = getPropertiesByParameterPath(path);
+			sources.put(path, getCachedPropertiesByParameterPath(path, limiter));
+		}
+
+		for (Map.Entry<String, CompletableFuture<Map<String, String>>> entry : sources.entrySet()) {
+			String name = environmentProperties.getOrigin() + entry.getKey();
+			Map<String, String> source = join(entry.getValue());
 
 			if (!source.isEmpty()) {
 				result.add(new PropertySource(name, source));
@@ -137,21 +203,150 @@ public class AwsParameterStoreEnvironmentRepository implements EnvironmentReposi
 		return result;
 	}
 
+	private static Map<String, String> join(CompletableFuture<Map<String, String>> source) {
+		try {
+			return source.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private CompletableFuture<Map<String, String>> getCachedPropertiesByParameterPath(String path,
+			CallLimiter limiter) {
+		int timeToLive = environmentProperties.getCacheTimeToLive();
+		if (timeToLive <= 0) {
+			return getPropertiesByParameterPath(path, limiter);
+		}
+		long now = System.nanoTime();
+		long timeToLiveNanos = TimeUnit.SECONDS.toNanos(timeToLive);
+		CachedPath cached = this.cache.get(path);
+		if (cached != null) {
+			long age = now - cached.loaded;
+			if (age < timeToLiveNanos) {
+				this.cacheHits.increment();
+				return CompletableFuture.completedFuture(new HashMap<>(cached.properties));
+			}
+			// Serve expired parameters for a while, as long as they are being refreshed
+			if (limiter != null && age < 2 * timeToLiveNanos) {
+				this.cacheHits.increment();
+				refresh(path, cached, limiter);
+				return CompletableFuture.completedFuture(new HashMap<>(cached.properties));
+			}
+		}
+		return getPropertiesByParameterPath(path, limiter).thenApply(properties -> {
+			cache(path, new CachedPath(properties, now));
+			return new HashMap<>(properties);
+		});
+	}
+
+	private void refresh(String path, CachedPath cached, CallLimiter limiter) {
+		if (!cached.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		long now = System.nanoTime();
+		getPropertiesByParameterPath(path, limiter).whenComplete((properties, e) -> {
+			if (e == null) {
+				cache(path, new CachedPath(properties, now));
+			}
+			else {
+				cached.refreshing.set(false);
+				logger.warn("Cannot refresh the parameters of " + path, e);
+			}
+		});
+	}
+
+	private void cache(String path, CachedPath cached) {
+		if (this.cache.size() >= MAX_CACHED_PATHS && !this.cache.containsKey(path)) {
+			this.cache.clear();
+		}
+		this.cache.put(path, cached);
+	}
+
+	private CompletableFuture<Map<String, String>> getPropertiesByParameterPath(String path, CallLimiter limiter) {
+		if (limiter == null) {
+			return CompletableFuture.completedFuture(getPropertiesByParameterPath(path));
+		}
+		return getPropertiesByParameterPath(path, parametersByPathRequest(path), limiter, new HashMap<>());
+	}
+
+	/**
+	 * Read the pages of the path one after another, each on the pool.
+	 */
+	private CompletableFuture<Map<String, String>> getPropertiesByParameterPath(String path,
+			GetParametersByPathRequest request, CallLimiter limiter, Map<String, String> result) {
+		CompletableFuture<GetParametersByPathResponse> page = new CompletableFuture<>();
+		getParametersByPath(request, limiter, 0, page);
+		return page.thenCompose(response -> {
+			if (response == null) {
+				return CompletableFuture.completedFuture(result);
+			}
+			addParametersToProperties(path, response.parameters(), result);
+			if (!StringUtils.hasLength(response.nextToken())) {
+				return CompletableFuture.completedFuture(result);
+			}
+			return getPropertiesByParameterPath(path, request.toBuilder().nextToken(response.nextToken()).build(),
+					limiter, result);
+		});
+	}
+
+	private void getParametersByPath(GetParametersByPathRequest request, CallLimiter limiter, int attempt,
+			CompletableFuture<GetParametersByPathResponse> result) {
+		limiter.execute(() -> {
+			this.calls.increment();
+			boolean throttled = false;
+			try {
+				result.complete(awsSsmClient.getParametersByPath(request));
+			}
+			catch (SdkServiceException e) {
+				throttled = e.isThrottlingException();
+				if (!throttled || attempt >= MAX_THROTTLED_RETRIES) {
+					result.completeExceptionally(e);
+				}
+			}
+			catch (RuntimeException | Error e) {
+				result.completeExceptionally(e);
+			}
+			finally {
+				limiter.release(throttled);
+			}
+			if (throttled) {
+				this.throttles.increment();
+				if (!result.isDone()) {
+					// Retry later, rather than holding a thread of the pool while backing off
+					CompletableFuture.delayedExecutor(backOff(attempt), TimeUnit.MILLISECONDS)
+							.execute(() -> getParametersByPath(request, limiter, attempt + 1, result));
+				}
+			}
+		}, result);
+	}
+
+	private GetParametersByPathRequest parametersByPathRequest(String path) {
+		return GetParametersByPathRequest.builder().path(path).recursive(environmentProperties.isRecursive())
+				.withDecryption(environmentProperties.isDecryptValues())
+				.maxResults(environmentProperties.getMaxResults()).build();
+	}
+
+	private static long backOff(int attempt) {
+		long delay = 50L << attempt;
+		return delay + ThreadLocalRandom.current().nextLong(delay);
+	}
+
 	private Map<String, String> getPropertiesByParameterPath(String path) {
 		Map<String, String> result = new HashMap<>();
 
-		GetParametersByPathRequest request = GetParametersByPathRequest.builder().path(path)
-				.recursive(environmentProperties.isRecursive()).withDecryption(environmentProperties.isDecryptValues())
-				.maxResults(environmentProperties.getMaxResults()).build();
+		GetParametersByPathRequest request = parametersByPathRequest(path);
 
-		GetParametersByPathResponse response = awsSsmClient.getParametersByPath(request);
+		GetParametersByPathResponse response = getParametersByPath(request);
 
 		if (response != null) {
 			addParametersToProperties(path, response.parameters(), result);
 
 			while (StringUtils.hasLength(response.nextToken())) {
-				response = awsSsmClient
-						.getParametersByPath(request.toBuilder().nextToken(response.nextToken()).build());
+				response = getParametersByPath(request.toBuilder().nextToken(response.nextToken()).build());
 
 				addParametersToProperties(path, response.parameters(), result);
 			}
@@ -160,6 +355,32 @@ public class AwsParameterStoreEnvironmentRepository implements EnvironmentReposi
 		return result;
 	}
 
+	private GetParametersByPathResponse getParametersByPath(GetParametersByPathRequest request) {
+		for (int attempt = 0;; attempt++) {
+			this.calls.increment();
+			try {
+				return awsSsmClient.getParametersByPath(request);
+			}
+			catch (SdkServiceException e) {
+				if (!e.isThrottlingException()) {
+					throw e;
+				}
+				this.throttles.increment();
+				if (attempt >= MAX_THROTTLED_RETRIES) {
+					throw e;
+				}
+				// Without a pool, this is the thread of the request, so it backs off itself
+				try {
+					Thread.sleep(backOff(attempt));
+				}
+				catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
 	private void addParametersToProperties(String path, List<Parameter> parameters, Map<String, String> properties) {
 		for (Parameter parameter : parameters) {
 			String name = StringUtils.delete(parameter.name(), path).replace(DEFAULT_PATH_SEPARATOR, ".");
@@ -168,9 +389,108 @@ public class AwsParameterStoreEnvironmentRepository implements EnvironmentReposi
 		}
 	}
 
+	/**
+	 * @return the number of calls made to SSM
+	 */
+	public long getCallCount() {
+		return this.calls.sum();
+	}
+
+	/**
+	 * @return the number of calls to SSM that were throttled
+	 */
+	public long getThrottleCount() {
+		return this.throttles.sum();
+	}
+
+	/**
+	 * @return the number of parameter paths served from the cache
+	 */
+	public long getCacheHitCount() {
+		return this.cacheHits.sum();
+	}
+
 	@Override
 	public int getOrder() {
 		return order;
 	}
 
+	/**
+	 * Runs the calls to SSM on the pool, at most {@code limit} at a time, queueing the
+	 * others rather than blocking a thread. The limit is halved when a call is throttled
+	 * and grows back by one with each call that is not, up to the parallelism, so that
+	 * all the requests back off together.
+	 */
+	private static final class CallLimiter {
+
+		private final ForkJoinPool pool;
+
+		private final int maxLimit;
+
+		private final Queue<Runnable> waiting = new ArrayDeque<>();
+
+		private int limit;
+
+		private int running;
+
+		private CallLimiter(ForkJoinPool pool, int maxLimit) {
+			this.pool = pool;
+			this.maxLimit = maxLimit;
+			this.limit = maxLimit;
+		}
+
+		/**
+		 * Run the call when the limit allows it. The call must {@link #release(boolean)}
+		 * once done, and the result is failed if the pool no longer accepts calls.
+		 */
+		private void execute(Runnable call, CompletableFuture<?> result) {
+			Runnable task = () -> {
+				try {
+					this.pool.execute(call);
+				}
+				catch (RejectedExecutionException e) {
+					result.completeExceptionally(e);
+					release(false);
+				}
+			};
+			synchronized (this) {
+				if (this.running >= this.limit) {
+					this.waiting.add(task);
+					return;
+				}
+				this.running++;
+			}
+			task.run();
+		}
+
+		private void release(boolean throttled) {
+			List<Runnable> next = new ArrayList<>();
+			synchronized (this) {
+				this.running--;
+				this.limit = throttled ? Math.max(1, this.limit / 2) : Math.min(this.maxLimit, this.limit + 1);
+				while (this.running < this.limit && !this.waiting.isEmpty()) {
+					next.add(this.waiting.poll());
+					this.running++;
+				}
+			}
+			next.forEach(Runnable::run);
+		}
+
+	}
+
+	private static final class CachedPath {
+
+		private final Map<String, String> properties;
+
+		private final long loaded;
+
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		private CachedPath(Map<String, String> properties, long loaded) {
+			this.properties = properties;
+			this.loaded = loaded;
+		}
+
+	}
+
 }
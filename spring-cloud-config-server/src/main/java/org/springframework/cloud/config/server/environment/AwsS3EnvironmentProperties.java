@@ -42,6 +42,25 @@ public class AwsS3EnvironmentProperties implements EnvironmentRepositoryProperti
 
 	private int order;
 
+	/**
+	 * Time (in seconds) the keys of the objects of a label are cached. Defaults to 0
+	 * (the objects are listed on every request).
+	 */
+	private int refreshRate = 0;
+
+	/**
+	 * Time (in seconds) an object already read is used without checking whether it
+	 * changed. Defaults to 0 (checked on every request, from the listing or with a
+	 * conditional GET).
+	 */
+	private int revalidateRate = 0;
+
+	/**
+	 * The maximum number of objects read concurrently, across all requests. Defaults to
+	 * "4".
+	 */
+	private int parallelism = AwsS3EnvironmentRepository.DEFAULT_PARALLELISM;
+
 	public String getRegion() {
 		return region;
 	}
@@ -75,4 +94,28 @@ public class AwsS3EnvironmentProperties implements EnvironmentRepositoryProperti
 		this.order = order;
 	}
 
+	public int getRefreshRate() {
+		return refreshRate;
+	}
+
+	public void setRefreshRate(int refreshRate) {
+		this.refreshRate = refreshRate;
+	}
+
+	public int getRevalidateRate() {
+		return revalidateRate;
+	}
+
+	public void setRevalidateRate(int revalidateRate) {
+		this.revalidateRate = revalidateRate;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
 }
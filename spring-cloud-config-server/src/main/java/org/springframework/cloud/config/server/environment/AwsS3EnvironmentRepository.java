@@ -18,16 +18,33 @@ package org.springframework.cloud.config.server.environment;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
@@ -42,12 +59,21 @@ import org.springframework.util.StringUtils;
  * @author Scott Frederick
  * @author Daniel Aiken
  */
-public class AwsS3EnvironmentRepository implements EnvironmentRepository, Ordered, SearchPathLocator {
+public class AwsS3EnvironmentRepository
+		implements EnvironmentRepository, Ordered, SearchPathLocator, DisposableBean {
 
 	private static final String AWS_S3_RESOURCE_SCHEME = "s3://";
 
 	private static final String PATH_SEPARATOR = "/";
 
+	private static final String[] EXTENSIONS = { ".properties", ".yml", ".yaml", ".json" };
+
+	private static final int MAX_CACHED_ENTRIES = 1024;
+
+	static final int DEFAULT_PARALLELISM = 4;
+
+	private static final Log logger = LogFactory.getLog(AwsS3EnvironmentRepository.class);
+
 	private final S3Client s3Client;
 
 	private final String bucketName;
@@ -56,10 +82,23 @@ public class AwsS3EnvironmentRepository implements EnvironmentRepository, Ordere
 
 	protected int order = Ordered.LOWEST_PRECEDENCE;
 
+	private final Map<String, Listing> listings = new ConcurrentHashMap<>();
+
+	private final Map<String, CachedObject> objects = new ConcurrentHashMap<>();
+
+	private volatile int refreshRate;
+
+	private volatile int revalidateRate;
+
+	private volatile ForkJoinPool pool;
+
+	private volatile boolean listingDenied;
+
 	public AwsS3EnvironmentRepository(S3Client s3Client, String bucketName, ConfigServerProperties server) {
 		this.s3Client = s3Client;
 		this.bucketName = bucketName;
 		this.serverProperties = server;
+		setParallelism(DEFAULT_PARALLELISM);
 	}
 
 	@Override
@@ -71,6 +110,41 @@ public class AwsS3EnvironmentRepository implements EnvironmentRepository, Ordere
 		this.order = order;
 	}
 
+	/**
+	 * @param refreshRate time (in seconds) the keys of the objects of a label are cached.
+	 * Defaults to 0 (the objects are listed on every request).
+	 */
+	public void setRefreshRate(int refreshRate) {
+		this.refreshRate = refreshRate;
+	}
+
+	/**
+	 * @param revalidateRate time (in seconds) an object already read is used without
+	 * checking whether it changed. Defaults to 0 (checked on every request, from the
+	 * listing or with a conditional GET).
+	 */
+	public void setRevalidateRate(int revalidateRate) {
+		this.revalidateRate = revalidateRate;
+	}
+
+	/**
+	 * Set the maximum number of objects read concurrently, across all requests. With 1
+	 * the objects are read one after another on the calling thread. Defaults to 4.
+	 * @param parallelism the maximum number of concurrent reads
+	 */
+	public void setParallelism(int parallelism) {
+		ForkJoinPool pool = this.pool;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		setParallelism(1);
+	}
+
 	@Override
 	public Environment findOne(String specifiedApplication, String specifiedProfiles, String specifiedLabel) {
 		final String application = !StringUtils.hasText(specifiedApplication)
@@ -88,9 +162,23 @@ public class AwsS3EnvironmentRepository implements EnvironmentRepository, Ordere
 		final Environment environment = new Environment(application, profileArray);
 		environment.setLabel(label);
 
+		// One listing tells which files exist, then they are all read at the same time
+		Map<String, String> keys = listObjectKeys(label);
+		ForkJoinPool pool = this.pool;
+		List<CompletableFuture<S3ConfigFile>> files = new ArrayList<>();
 		for (String profile : profileArray) {
 			for (String app : apps) {
-				S3ConfigFile s3ConfigFile = getS3ConfigFile(app, profile, label);
+				String objectKeyPrefix = buildObjectKeyPrefix(app, profile, label);
+				Supplier<S3ConfigFile> load = () -> load(objectKeyPrefix, keys);
+				files.add(pool != null ? CompletableFuture.supplyAsync(load, pool)
+						: CompletableFuture.completedFuture(load.get()));
+			}
+		}
+
+		Iterator<CompletableFuture<S3ConfigFile>> results = files.iterator();
+		for (String profile : profileArray) {
+			for (String app : apps) {
+				S3ConfigFile s3ConfigFile = join(results.next());
 				if (s3ConfigFile != null) {
 					environment.setVersion(s3ConfigFile.getVersion());
 
@@ -108,6 +196,18 @@ public class AwsS3EnvironmentRepository implements EnvironmentRepository, Ordere
 		return environment;
 	}
 
+	private static S3ConfigFile join(CompletableFuture<S3ConfigFile> file) {
+		try {
+			return file.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
 	private String[] parseProfiles(String profiles) {
 		if (ObjectUtils.isEmpty(profiles)) {
 			return new String[] { "" };
@@ -120,10 +220,74 @@ public class AwsS3EnvironmentRepository implements EnvironmentRepository, Ordere
 		return parsedProfiles.toArray(new String[0]);
 	}
 
-	private S3ConfigFile getS3ConfigFile(String application, String profile, String label) {
-		String objectKeyPrefix = buildObjectKeyPrefix(application, profile, label);
+	/**
+	 * List the keys (and ETags) of the objects of a label, or return null if the bucket
+	 * cannot be listed, in which case each file is probed for with a GET.
+	 */
+	private Map<String, String> listObjectKeys(String label) {
+		if (this.listingDenied) {
+			return null;
+		}
+		String prefix = ObjectUtils.isEmpty(label) ? "" : label + PATH_SEPARATOR;
+		long now = System.nanoTime();
+		Listing listing = this.listings.get(prefix);
+		if (listing != null && now - listing.expires < 0) {
+			return listing.keys;
+		}
+		Map<String, String> keys = new HashMap<>();
+		try {
+			ListObjectsV2Request.Builder request = ListObjectsV2Request.builder().bucket(bucketName).prefix(prefix)
+					.delimiter(PATH_SEPARATOR);
+			ListObjectsV2Response response;
+			do {
+				response = s3Client.listObjectsV2(request.build());
+				for (S3Object object : response.contents()) {
+					keys.put(object.key(), object.eTag());
+				}
+				request.continuationToken(response.nextContinuationToken());
+			}
+			while (Boolean.TRUE.equals(response.isTruncated()));
+		}
+		catch (S3Exception e) {
+			if (e.statusCode() == 403) {
+				// Only s3:GetObject is allowed, so don't try again
+				this.listingDenied = true;
+			}
+			logger.debug("Cannot list the objects of " + bucketName + PATH_SEPARATOR + prefix
+					+ ", probing for each file instead", e);
+			return null;
+		}
+		if (this.refreshRate > 0) {
+			if (this.listings.size() >= MAX_CACHED_ENTRIES && !this.listings.containsKey(prefix)) {
+				this.listings.clear();
+			}
+			this.listings.put(prefix, new Listing(keys, now + TimeUnit.SECONDS.toNanos(this.refreshRate)));
+		}
+		return keys;
+	}
 
-		return getS3ConfigFile(objectKeyPrefix);
+	private S3ConfigFile load(String objectKeyPrefix, Map<String, String> keys) {
+		for (String extension : EXTENSIONS) {
+			String key = objectKeyPrefix + extension;
+			if (keys == null) {
+				try {
+					return getS3ConfigFile(key, null);
+				}
+				catch (Exception e) {
+					// Not found, try the next extension
+				}
+			}
+			else if (keys.containsKey(key)) {
+				try {
+					return getS3ConfigFile(key, keys.get(key));
+				}
+				catch (Exception e) {
+					logger.debug("Cannot read " + key + " from " + bucketName, e);
+					return null;
+				}
+			}
+		}
+		return null;
 	}
 
 	private String buildObjectKeyPrefix(String application, String profile, String label) {
@@ -138,37 +302,57 @@ public class AwsS3EnvironmentRepository implements EnvironmentRepository, Ordere
 		return objectKeyPrefix.toString();
 	}
 
-	private S3ConfigFile getS3ConfigFile(String keyPrefix) {
+	/**
+	 * Read an object, reusing the properties already read from it when it has not
+	 * changed: when the listing shows the same ETag, within the revalidate rate, or when
+	 * a conditional GET answers 304 (Not Modified).
+	 */
+	private S3ConfigFile getS3ConfigFile(String key, String listedETag) {
+		long now = System.nanoTime();
+		CachedObject cached = this.objects.get(key);
+		if (cached != null && (cached.eTag.equals(listedETag) || now - cached.revalidateAt < 0)) {
+			return new ReadS3ConfigFile(cached.version, cached.properties);
+		}
+		GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucketName).key(key);
+		if (cached != null) {
+			request.ifNoneMatch(cached.eTag);
+		}
+		ResponseInputStream<GetObjectResponse> responseInputStream;
 		try {
-			final ResponseInputStream<GetObjectResponse> responseInputStream = getObject(keyPrefix + ".properties");
-			return new PropertyS3ConfigFile(responseInputStream.response().versionId(), responseInputStream);
+			responseInputStream = s3Client.getObject(request.build());
 		}
-		catch (Exception eProperties) {
-			try {
-				final ResponseInputStream<GetObjectResponse> responseInputStream = getObject(keyPrefix + ".yml");
-				return new YamlS3ConfigFile(responseInputStream.response().versionId(), responseInputStream);
-			}
-			catch (Exception eYml) {
-				try {
-					final ResponseInputStream<GetObjectResponse> responseInputStream = getObject(keyPrefix + ".yaml");
-					return new YamlS3ConfigFile(responseInputStream.response().versionId(), responseInputStream);
-				}
-				catch (Exception eYaml) {
-					try {
-						final ResponseInputStream<GetObjectResponse> responseInputStream = getObject(
-								keyPrefix + ".json");
-						return new JsonS3ConfigFile(responseInputStream.response().versionId(), responseInputStream);
-					}
-					catch (Exception eJson) {
-						return null;
-					}
-				}
+		catch (S3Exception e) {
+			if (cached != null && e.statusCode() == 304) {
+				cache(key, cached.eTag, cached.version, cached.properties, now);
+				return new ReadS3ConfigFile(cached.version, cached.properties);
 			}
+			throw e;
 		}
+		GetObjectResponse response = responseInputStream.response();
+		S3ConfigFile s3ConfigFile;
+		if (key.endsWith(".properties")) {
+			s3ConfigFile = new PropertyS3ConfigFile(response.versionId(), responseInputStream);
+		}
+		else if (key.endsWith(".json")) {
+			s3ConfigFile = new JsonS3ConfigFile(response.versionId(), responseInputStream);
+		}
+		else {
+			s3ConfigFile = new YamlS3ConfigFile(response.versionId(), responseInputStream);
+		}
+		// Read it on this thread too, so the response is not kept open
+		Properties properties = s3ConfigFile.read();
+		if (response.eTag() != null) {
+			cache(key, response.eTag(), response.versionId(), properties, now);
+		}
+		return new ReadS3ConfigFile(response.versionId(), properties);
 	}
 
-	private ResponseInputStream<GetObjectResponse> getObject(String key) throws Exception {
-		return s3Client.getObject(GetObjectRequest.builder().bucket(bucketName).key(key).build());
+	private void cache(String key, String eTag, String version, Properties properties, long now) {
+		if (this.objects.size() >= MAX_CACHED_ENTRIES && !this.objects.containsKey(key)) {
+			this.objects.clear();
+		}
+		this.objects.put(key,
+				new CachedObject(eTag, version, properties, now + TimeUnit.SECONDS.toNanos(this.revalidateRate)));
 	}
 
 	@Override
@@ -185,6 +369,38 @@ public class AwsS3EnvironmentRepository implements EnvironmentRepository, Ordere
 		return new Locations(application, profiles, label, null, new String[] { baseLocation.toString() });
 	}
 
+	private static final class Listing {
+
+		private final Map<String, String> keys;
+
+		private final long expires;
+
+		private Listing(Map<String, String> keys, long expires) {
+			this.keys = keys;
+			this.expires = expires;
+		}
+
+	}
+
+	private static final class CachedObject {
+
+		private final String eTag;
+
+		private final String version;
+
+		private final Properties properties;
+
+		private final long revalidateAt;
+
+		private CachedObject(String eTag, String version, Properties properties, long revalidateAt) {
+			this.eTag = eTag;
+			this.version = version;
+			this.properties = properties;
+			this.revalidateAt = revalidateAt;
+		}
+
+	}
+
 }
 
 abstract class S3ConfigFile {
@@ -249,6 +465,24 @@ class YamlS3ConfigFile extends S3ConfigFile {
 
 }
 
+class ReadS3ConfigFile extends S3ConfigFile {
+
+	final Properties properties;
+
+	ReadS3ConfigFile(String version, Properties properties) {
+		super(version);
+		this.properties = properties;
+	}
+
+	@Override
+	public Properties read() {
+		Properties props = new Properties();
+		props.putAll(properties);
+		return props;
+	}
+
+}
+
 class JsonS3ConfigFile extends YamlS3ConfigFile {
 
 	// YAML is a superset of JSON, which means you can parse JSON with a YAML parser
@@ -41,6 +41,9 @@ public class AwsS3EnvironmentRepositoryFactory
 		AwsS3EnvironmentRepository repository = new AwsS3EnvironmentRepository(client,
 				environmentProperties.getBucket(), server);
 		repository.setOrder(environmentProperties.getOrder());
+		repository.setRefreshRate(environmentProperties.getRefreshRate());
+		repository.setRevalidateRate(environmentProperties.getRevalidateRate());
+		repository.setParallelism(environmentProperties.getParallelism());
 		return repository;
 	}
 
@@ -81,6 +81,19 @@ public class AwsSecretsManagerEnvironmentProperties implements EnvironmentReposi
 	@NotNull
 	private String origin = DEFAULT_ORIGIN;
 
+	/**
+	 * The maximum number of secrets read concurrently, across all requests. Defaults to
+	 * "4".
+	 */
+	private int parallelism = 4;
+
+	/**
+	 * Time (in seconds) the value of a secret is used without checking whether it
+	 * changed. Once expired, the value is used again if the version holding the label is
+	 * unchanged. Defaults to "0" (not cached).
+	 */
+	private int cacheTimeToLive = 0;
+
 	public String getRegion() {
 		return region;
 	}
@@ -138,4 +151,20 @@ public class AwsSecretsManagerEnvironmentProperties implements EnvironmentReposi
 		this.origin = origin;
 	}
 
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public int getCacheTimeToLive() {
+		return cacheTimeToLive;
+	}
+
+	public void setCacheTimeToLive(int cacheTimeToLive) {
+		this.cacheTimeToLive = cacheTimeToLive;
+	}
+
 }
@@ -17,19 +17,31 @@
 package org.springframework.cloud.config.server.environment;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.services.secretsmanager.model.DescribeSecretRequest;
+import software.amazon.awssdk.services.secretsmanager.model.DescribeSecretResponse;
 import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
 import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
 import software.amazon.awssdk.services.secretsmanager.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.secretsmanager.model.SecretsManagerException;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.config.ConfigServerProperties;
@@ -40,13 +52,21 @@ import org.springframework.util.StringUtils;
 import static org.springframework.cloud.config.server.environment.AwsSecretsManagerEnvironmentProperties.DEFAULT_PATH_SEPARATOR;
 
 /**
+ * An {@link EnvironmentRepository} backed by AWS Secrets Manager. The secrets of a
+ * request are read concurrently. Their values can be cached, and once expired a cached
+ * value is used again as long as the version holding the label has not changed.
+ *
  * @author Tejas Pandilwar
  * @author KNV Srinivas
  */
-public class AwsSecretsManagerEnvironmentRepository implements EnvironmentRepository, Ordered {
+public class AwsSecretsManagerEnvironmentRepository implements EnvironmentRepository, Ordered, DisposableBean {
 
 	private static final Log log = LogFactory.getLog(AwsSecretsManagerEnvironmentRepository.class);
 
+	private static final String CURRENT_STAGE = "AWSCURRENT";
+
+	private static final int MAX_CACHED_SECRETS = 1024;
+
 	private final ObjectMapper objectMapper;
 
 	private final SecretsManagerClient awsSmClient;
@@ -57,6 +77,12 @@ public class AwsSecretsManagerEnvironmentRepository implements EnvironmentReposi
 
 	private final int order;
 
+	private final Map<List<String>, Secret> cache = new ConcurrentHashMap<>();
+
+	private volatile ForkJoinPool pool;
+
+	private volatile Duration cacheTimeToLive;
+
 	public AwsSecretsManagerEnvironmentRepository(SecretsManagerClient awsSmClient,
 			ConfigServerProperties configServerProperties,
 			AwsSecretsManagerEnvironmentProperties environmentProperties) {
@@ -65,6 +91,8 @@ public class AwsSecretsManagerEnvironmentRepository implements EnvironmentReposi
 		this.environmentProperties = environmentProperties;
 		this.order = environmentProperties.getOrder();
 		this.objectMapper = new ObjectMapper();
+		setParallelism(environmentProperties.getParallelism());
+		setCacheTimeToLive(Duration.ofSeconds(environmentProperties.getCacheTimeToLive()));
 	}
 
 	@Override
@@ -93,36 +121,67 @@ public class AwsSecretsManagerEnvironmentRepository implements EnvironmentReposi
 			environment.add(new PropertySource("overrides", overrides));
 		}
 
+		List<String> paths = new ArrayList<>();
+
 		for (String profile : profiles) {
-			addPropertySource(environment, application, profile, label);
+			addPath(paths, application, profile);
 			if (!defaultApplication.equals(application)) {
-				addPropertySource(environment, defaultApplication, profile, label);
+				addPath(paths, defaultApplication, profile);
 			}
 		}
 
 		if (!Arrays.asList(profiles).contains(defaultProfile)) {
-			addPropertySource(environment, application, defaultProfile, label);
+			addPath(paths, application, defaultProfile);
 		}
 
 		if (!Arrays.asList(profiles).contains(defaultProfile) && !defaultApplication.equals(application)) {
-			addPropertySource(environment, defaultApplication, defaultProfile, label);
+			addPath(paths, defaultApplication, defaultProfile);
 		}
 
 		if (!defaultApplication.equals(application)) {
-			addPropertySource(environment, application, null, label);
+			addPath(paths, application, null);
 		}
 
-		addPropertySource(environment, defaultApplication, null, label);
+		addPath(paths, defaultApplication, null);
+
+		addPropertySources(environment, paths, label);
 
 		return environment;
 	}
 
-	private void addPropertySource(Environment environment, String application, String profile, String label) {
-		String path = buildPath(application, profile);
+	private void addPath(List<String> paths, String application, String profile) {
+		paths.add(buildPath(application, profile));
+	}
+
+	/**
+	 * Read the secrets of all the paths at the same time, and add them in order.
+	 */
+	private void addPropertySources(Environment environment, List<String> paths, String label) {
+		ForkJoinPool pool = this.pool;
+		List<CompletableFuture<Map<Object, Object>>> sources = new ArrayList<>();
+		for (String path : paths) {
+			Supplier<Map<Object, Object>> find = () -> findCachedProperties(path, label);
+			sources.add(pool != null ? CompletableFuture.supplyAsync(find, pool)
+					: CompletableFuture.completedFuture(find.get()));
+		}
+
+		for (int i = 0; i < paths.size(); i++) {
+			Map<Object, Object> properties = join(sources.get(i));
+			if (!properties.isEmpty()) {
+				environment.add(new PropertySource(environmentProperties.getOrigin() + paths.get(i), properties));
+			}
+		}
+	}
 
-		Map<Object, Object> properties = findProperties(path, label);
-		if (!properties.isEmpty()) {
-			environment.add(new PropertySource(environmentProperties.getOrigin() + path, properties));
+	private static Map<Object, Object> join(CompletableFuture<Map<Object, Object>> source) {
+		try {
+			return source.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
 		}
 	}
 
@@ -138,14 +197,65 @@ public class AwsSecretsManagerEnvironmentRepository implements EnvironmentReposi
 		}
 	}
 
-	private Map<Object, Object> findProperties(String path, String label) {
+	private Map<Object, Object> findCachedProperties(String path, String label) {
+		long timeToLive = this.cacheTimeToLive.toNanos();
+		if (timeToLive <= 0) {
+			return findProperties(path, label, 0).properties;
+		}
+		List<String> key = Arrays.asList(path, label);
+		long now = System.nanoTime();
+		Secret cached = cache.get(key);
+		// Once expired, only the (cheaper) metadata is read while the version is the same
+		if (cached != null
+				&& (now - cached.loaded < timeToLive || isCurrentVersion(path, label, cached.versionId))) {
+			if (now - cached.loaded >= timeToLive) {
+				cache(key, new Secret(cached.versionId, cached.properties, now));
+			}
+			return new HashMap<>(cached.properties);
+		}
+		Secret secret = findProperties(path, label, now);
+		cache(key, secret);
+		return new HashMap<>(secret.properties);
+	}
+
+	private void cache(List<String> key, Secret secret) {
+		if (cache.size() >= MAX_CACHED_SECRETS && !cache.containsKey(key)) {
+			cache.clear();
+		}
+		cache.put(key, secret);
+	}
+
+	/**
+	 * Whether the version of the secret holding the label is still the given one (null
+	 * for a secret that did not exist).
+	 */
+	private boolean isCurrentVersion(String path, String label, String versionId) {
+		String stage = StringUtils.hasText(label) ? label : CURRENT_STAGE;
+		try {
+			DescribeSecretResponse response = awsSmClient
+					.describeSecret(DescribeSecretRequest.builder().secretId(path).build());
+			List<String> stages = versionId != null ? response.versionIdsToStages().get(versionId) : null;
+			return stages != null && stages.contains(stage);
+		}
+		catch (ResourceNotFoundException e) {
+			return versionId == null;
+		}
+		catch (SecretsManagerException e) {
+			log.debug(String.format("Unable to describe secretId=%s, reading its value instead", path), e);
+			return false;
+		}
+	}
+
+	private Secret findProperties(String path, String label, long now) {
 		Map<Object, Object> properties = new HashMap<>();
+		String versionId = null;
 
 		GetSecretValueRequest request = GetSecretValueRequest.builder().secretId(path).versionStage(label).build();
 		try {
 			GetSecretValueResponse response = awsSmClient.getSecretValue(request);
 
 			if (response != null) {
+				versionId = response.versionId();
 				Map<String, Object> secretMap = objectMapper.readValue(response.secretString(),
 						new TypeReference<Map<String, Object>>() {
 						});
@@ -161,7 +271,34 @@ public class AwsSecretsManagerEnvironmentRepository implements EnvironmentReposi
 					path), e);
 		}
 
-		return properties;
+		return new Secret(versionId, properties, now);
+	}
+
+	/**
+	 * Set the maximum number of secrets read concurrently, across all requests. With 1
+	 * the secrets are read one after another on the calling thread.
+	 * @param parallelism the maximum number of concurrent reads
+	 */
+	public void setParallelism(int parallelism) {
+		ForkJoinPool pool = this.pool;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Set how long the secrets are served from the cache before their version is checked
+	 * again. With zero or less the secrets are not cached.
+	 * @param cacheTimeToLive the time to live of the cached secrets
+	 */
+	public void setCacheTimeToLive(Duration cacheTimeToLive) {
+		this.cacheTimeToLive = cacheTimeToLive;
+	}
+
+	@Override
+	public void destroy() {
+		setParallelism(1);
 	}
 
 	@Override
@@ -169,4 +306,20 @@ public class AwsSecretsManagerEnvironmentRepository implements EnvironmentReposi
 		return order;
 	}
 
+	private static final class Secret {
+
+		private final String versionId;
+
+		private final Map<Object, Object> properties;
+
+		private final long loaded;
+
+		private Secret(String versionId, Map<Object, Object> properties, long loaded) {
+			this.versionId = versionId;
+			this.properties = properties;
+			this.loaded = loaded;
+		}
+
+	}
+
 }
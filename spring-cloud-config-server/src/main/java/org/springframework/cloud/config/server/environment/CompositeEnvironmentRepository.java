@@ -16,24 +16,59 @@
 
 package org.springframework.cloud.config.server.environment;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import io.micrometer.observation.Observation;
 import io.micrometer.observation.ObservationRegistry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.cloud.config.server.support.RequestContextSupport;
 import org.springframework.core.OrderComparator;
 
 /**
  * An {@link EnvironmentRepository} composed of multiple ordered
  * {@link EnvironmentRepository}s.
+ * <p>
+ * By default the repositories are queried one after another. With a
+ * {@link #setParallelism(int) parallelism} greater than 1 they are queried concurrently
+ * (the property sources are still merged in order), and each repository can be given a
+ * {@link #setTimeout(Duration) timeout}, after which the {@link TimeoutPolicy} decides
+ * whether the request fails, skips the repository or serves the last property sources it
+ * returned.
+ * <p>
+ * Concurrent queries see a copy of the request headers (such as the config token) taken
+ * when the request arrived, and the current observation, rather than the live request,
+ * since a query that timed out can outlive the request. Such a query is cancelled (its
+ * thread interrupted), and a repository that still has its share of the threads taken by
+ * timed out queries is not queried again until they finish: the timeout policy applies
+ * to it straight away.
  *
  * @author Ryan Baxter
  */
-public class CompositeEnvironmentRepository implements EnvironmentRepository {
+public class CompositeEnvironmentRepository implements EnvironmentRepository, DisposableBean {
+
+	private static final int MAX_LAST_KNOWN_GOOD = 1024;
 
 	Log log = LogFactory.getLog(getClass());
 
@@ -41,6 +76,26 @@ public class CompositeEnvironmentRepository implements EnvironmentRepository {
 
 	protected boolean failOnError;
 
+	private final ObservationRegistry observationRegistry;
+
+	private final Map<EnvironmentRepository, AtomicInteger> timedOut = new ConcurrentHashMap<>();
+
+	private volatile ForkJoinPool pool;
+
+	private volatile int parallelism = 1;
+
+	private Duration timeout;
+
+	private TimeoutPolicy timeoutPolicy = TimeoutPolicy.FAIL;
+
+	private final Map<LastKnownGoodKey, List<PropertySource>> lastKnownGood = Collections
+			.synchronizedMap(new LinkedHashMap<LastKnownGoodKey, List<PropertySource>>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<LastKnownGoodKey, List<PropertySource>> eldest) {
+					return size() > MAX_LAST_KNOWN_GOOD;
+				}
+			});
+
 	/**
 	 * Creates a new {@link CompositeEnvironmentRepository}.
 	 * @param environmentRepositories The list of {@link EnvironmentRepository}s to create
@@ -57,6 +112,7 @@ public class CompositeEnvironmentRepository implements EnvironmentRepository {
 						.map(e -> ObservationEnvironmentRepositoryWrapper.wrap(observationRegistry, e))
 						.collect(Collectors.toList());
 		this.failOnError = failOnError;
+		this.observationRegistry = observationRegistry;
 	}
 
 	/**
@@ -70,6 +126,41 @@ public class CompositeEnvironmentRepository implements EnvironmentRepository {
 		this(environmentRepositories, ObservationRegistry.NOOP, failOnError);
 	}
 
+	/**
+	 * Set the maximum number of repositories that are queried concurrently. Defaults to
+	 * 1 (repositories are queried one after another on the calling thread).
+	 * @param parallelism the maximum number of concurrent queries
+	 */
+	public void setParallelism(int parallelism) {
+		ForkJoinPool pool = this.pool;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		this.parallelism = parallelism;
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Set how long to wait for each repository when they are queried concurrently.
+	 * Defaults to null (wait until every repository responds).
+	 * @param timeout the timeout for each repository
+	 */
+	public void setTimeout(Duration timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param timeoutPolicy what to do when a repository does not respond in time
+	 */
+	public void setTimeoutPolicy(TimeoutPolicy timeoutPolicy) {
+		this.timeoutPolicy = timeoutPolicy;
+	}
+
+	@Override
+	public void destroy() {
+		setParallelism(1);
+	}
+
 	@Override
 	public Environment findOne(String application, String profile, String label) {
 		return findOne(application, profile, label, false);
@@ -85,6 +176,9 @@ public class CompositeEnvironmentRepository implements EnvironmentRepository {
 			env.setVersion(envRepo.getVersion());
 			env.setState(envRepo.getState());
 		}
+		else if (this.pool != null) {
+			findAll(env, this.pool, application, profile, label, includeOrigin);
+		}
 		else {
 			for (EnvironmentRepository repo : environmentRepositories) {
 				try {
@@ -103,4 +197,238 @@ public class CompositeEnvironmentRepository implements EnvironmentRepository {
 		return env;
 	}
 
+	private void findAll(Environment env, ForkJoinPool pool, String application, String profile, String label,
+			boolean includeOrigin) {
+		List<LastKnownGoodKey> keys = new ArrayList<>();
+		List<Query> queries = new ArrayList<>();
+		// A digest of the request, so that the config token is not kept
+		String request = EnvironmentRequestKey.of(application, profile, label, includeOrigin).digest();
+		Observation observation = this.observationRegistry.getCurrentObservation();
+		int share = Math.max(1, this.parallelism / this.environmentRepositories.size());
+		for (int i = 0; i < this.environmentRepositories.size(); i++) {
+			EnvironmentRepository repo = this.environmentRepositories.get(i);
+			LastKnownGoodKey key = new LastKnownGoodKey(i, request);
+			keys.add(key);
+			AtomicInteger timedOut = this.timedOut.computeIfAbsent(repo, r -> new AtomicInteger());
+			if (timedOut.get() >= share) {
+				// Still busy with queries that timed out, so do not take another thread
+				queries.add(null);
+				continue;
+			}
+			Supplier<Environment> find = () -> repo.findOne(application, profile, label, includeOrigin);
+			if (observation != null) {
+				Supplier<Environment> unobserved = find;
+				find = () -> observation.scoped(unobserved);
+			}
+			// Repositories may read request scoped beans, such as the config token
+			Query query = new Query(key, RequestContextSupport.withRequestSnapshot(find), timedOut);
+			pool.execute(query.task);
+			queries.add(query);
+		}
+		Duration timeout = this.timeout;
+		long deadline = timeout != null ? System.nanoTime() + timeout.toNanos() : 0;
+		try {
+			// Wait for the results in order, so the property sources keep their precedence
+			for (int i = 0; i < queries.size(); i++) {
+				EnvironmentRepository repo = this.environmentRepositories.get(i);
+				Query query = queries.get(i);
+				try {
+					if (query == null) {
+						throw new TimeoutException();
+					}
+					env.addAll(await(query.task, timeout != null ? deadline - System.nanoTime() : -1)
+							.getPropertySources());
+				}
+				catch (TimeoutException e) {
+					if (query != null) {
+						query.abandon();
+					}
+					onTimeout(env, repo, keys.get(i));
+				}
+				catch (RuntimeException e) {
+					if (failOnError) {
+						throw e;
+					}
+					else {
+						log.info("Error adding environment for " + repo);
+					}
+				}
+			}
+		}
+		catch (RuntimeException | Error e) {
+			// The request fails, so the queries still in flight are of no use
+			for (Query query : queries) {
+				if (query != null) {
+					query.abandon();
+				}
+			}
+			throw e;
+		}
+	}
+
+	private Environment await(FutureTask<Environment> result, long timeout) throws TimeoutException {
+		try {
+			return timeout < 0 ? result.get() : result.get(Math.max(timeout, 0), TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for environment", e);
+		}
+		catch (CancellationException e) {
+			throw new IllegalStateException("Query for environment was cancelled", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private void onTimeout(Environment env, EnvironmentRepository repo, LastKnownGoodKey key) {
+		switch (this.timeoutPolicy) {
+			case SKIP:
+				log.warn("Timed out waiting for " + repo + ", skipping it");
+				break;
+			case LAST_KNOWN_GOOD:
+				List<PropertySource> sources = this.lastKnownGood.get(key);
+				if (sources != null) {
+					log.warn("Timed out waiting for " + repo + ", using the last known good property sources");
+					env.addAll(sources);
+				}
+				else {
+					log.warn("Timed out waiting for " + repo + " and no last known good property sources, skipping it");
+				}
+				break;
+			default:
+				throw new RepositoryException("Timed out waiting for " + repo + " after " + this.timeout);
+		}
+	}
+
+	private void remember(LastKnownGoodKey key, Environment result) {
+		if (result == null || this.timeoutPolicy != TimeoutPolicy.LAST_KNOWN_GOOD) {
+			return;
+		}
+		this.lastKnownGood.put(key, new ArrayList<>(result.getPropertySources()));
+	}
+
+	/**
+	 * What to do when a repository in the composite does not respond within the timeout.
+	 */
+	public enum TimeoutPolicy {
+
+		/**
+		 * Fail the whole request.
+		 */
+		FAIL,
+
+		/**
+		 * Leave out the property sources of the repository.
+		 */
+		SKIP,
+
+		/**
+		 * Use the property sources the repository last returned for the same request, or
+		 * leave them out if there are none.
+		 */
+		LAST_KNOWN_GOOD
+
+	}
+
+	/**
+	 * A query of one repository, counted against the repository while it keeps running
+	 * after it timed out.
+	 */
+	private final class Query implements Callable<Environment> {
+
+		private static final int PENDING = 0;
+
+		private static final int RUNNING = 1;
+
+		private static final int DONE = 2;
+
+		private static final int ABANDONED = 3;
+
+		private final LastKnownGoodKey key;
+
+		private final Supplier<Environment> find;
+
+		private final AtomicInteger timedOut;
+
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+
+		private final FutureTask<Environment> task = new FutureTask<>(this);
+
+		private Query(LastKnownGoodKey key, Supplier<Environment> find, AtomicInteger timedOut) {
+			this.key = key;
+			this.find = find;
+			this.timedOut = timedOut;
+		}
+
+		@Override
+		public Environment call() {
+			if (!this.state.compareAndSet(PENDING, RUNNING)) {
+				return null;
+			}
+			try {
+				Environment result = this.find.get();
+				remember(this.key, result);
+				return result;
+			}
+			finally {
+				if (!this.state.compareAndSet(RUNNING, DONE)) {
+					this.timedOut.decrementAndGet();
+				}
+			}
+		}
+
+		/**
+		 * Cancel the query, interrupting it if it is running. A query that does not stop
+		 * is counted against its repository until it finishes.
+		 */
+		private void abandon() {
+			this.task.cancel(true);
+			if (this.state.compareAndSet(RUNNING, ABANDONED)) {
+				this.timedOut.incrementAndGet();
+			}
+			else {
+				this.state.compareAndSet(PENDING, ABANDONED);
+			}
+		}
+
+	}
+
+	private static final class LastKnownGoodKey {
+
+		private final int repository;
+
+		private final String request;
+
+		private LastKnownGoodKey(int repository, String request) {
+			this.repository = repository;
+			this.request = request;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			LastKnownGoodKey other = (LastKnownGoodKey) o;
+			return this.repository == other.repository && Objects.equals(this.request, other.request);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.repository, this.request);
+		}
+
+	}
+
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event published by an {@link EnvironmentRepository} when it detects that some of its
+ * property sources changed. The paths are named like the files of a native repository
+ * (for example {@code application}, {@code foo} or {@code foo-dev}), so that listeners
+ * can work out which applications are affected.
+ */
+public class EnvironmentRepositoryChangedEvent extends ApplicationEvent {
+
+	private final List<String> paths;
+
+	public EnvironmentRepositoryChangedEvent(Object source, String... paths) {
+		super(source);
+		this.paths = Collections.unmodifiableList(Arrays.asList(paths));
+	}
+
+	public List<String> getPaths() {
+		return this.paths;
+	}
+
+}
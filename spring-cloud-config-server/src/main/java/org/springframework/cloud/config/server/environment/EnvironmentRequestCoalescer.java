@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.cloud.config.environment.Environment;
+
+/**
+ * Lets identical environment requests that arrive while one of them is being served share
+ * its result, instead of each querying the backends, decrypting and so on. The first
+ * request loads the environment on its own thread, and the others wait for it and get a
+ * copy. Nothing is kept once the first request has completed, so this is not a cache.
+ */
+public class EnvironmentRequestCoalescer {
+
+	private final Map<EnvironmentRequestKey, CompletableFuture<Environment>> inFlight =
+			new ConcurrentHashMap<>();
+
+	private final LongAdder requests = new LongAdder();
+
+	private final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * @param repository the repository to query
+	 * @return a repository that coalesces identical concurrent requests to the repository
+	 */
+	public EnvironmentRepository coalescing(EnvironmentRepository repository) {
+		return new CoalescingEnvironmentRepository(repository);
+	}
+
+	Environment findOne(EnvironmentRepository repository, String application, String profile, String label,
+			boolean includeOrigin) {
+		this.requests.increment();
+		EnvironmentRequestKey key = EnvironmentRequestKey.of(application, profile, label, includeOrigin);
+		CompletableFuture<Environment> created = new CompletableFuture<>();
+		CompletableFuture<Environment> existing = this.inFlight.putIfAbsent(key, created);
+		if (existing != null) {
+			this.coalesced.increment();
+			try {
+				return Environments.copy(existing.join());
+			}
+			catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+		}
+		try {
+			Environment environment = repository.findOne(application, profile, label, includeOrigin);
+			// Hand out copies, so callers can modify what they get back
+			Environment copy = Environments.copy(environment);
+			this.inFlight.remove(key, created);
+			created.complete(environment);
+			return copy;
+		}
+		catch (RuntimeException | Error e) {
+			this.inFlight.remove(key, created);
+			created.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of environment requests
+	 */
+	public long getRequestCount() {
+		return this.requests.sum();
+	}
+
+	/**
+	 * @return the number of environment requests served with the result of an identical
+	 * request that was already in flight
+	 */
+	public long getCoalescedCount() {
+		return this.coalesced.sum();
+	}
+
+	/**
+	 * @return the number of environment requests currently being served
+	 */
+	public int getInFlightCount() {
+		return this.inFlight.size();
+	}
+
+	private final class CoalescingEnvironmentRepository implements EnvironmentRepository {
+
+		private final EnvironmentRepository delegate;
+
+		private CoalescingEnvironmentRepository(EnvironmentRepository delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Environment findOne(String application, String profile, String label) {
+			return findOne(application, profile, label, false);
+		}
+
+		@Override
+		public Environment findOne(String application, String profile, String label, boolean includeOrigin) {
+			return EnvironmentRequestCoalescer.this.findOne(this.delegate, application, profile, label,
+					includeOrigin);
+		}
+
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.cloud.config.server.support.RequestContextSupport;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Identifies a request for an environment, including the config token of the current
+ * HTTP request, so that environments loaded with one token are never handed to a client
+ * presenting another.
+ */
+final class EnvironmentRequestKey {
+
+	private final String application;
+
+	private final String profile;
+
+	private final String label;
+
+	private final boolean includeOrigin;
+
+	private final String token;
+
+	private EnvironmentRequestKey(String application, String profile, String label, boolean includeOrigin,
+			String token) {
+		this.application = application;
+		this.profile = profile;
+		this.label = label;
+		this.includeOrigin = includeOrigin;
+		this.token = token;
+	}
+
+	static EnvironmentRequestKey of(String application, String profile, String label, boolean includeOrigin) {
+		return new EnvironmentRequestKey(application, profile, label, includeOrigin,
+				RequestContextSupport.getRequestHeader(ConfigClientProperties.TOKEN_HEADER));
+	}
+
+	/**
+	 * @param name the name of an application
+	 * @return true if the key is for the application (or for several applications
+	 * including it)
+	 */
+	boolean isFor(String name) {
+		return ObjectUtils.containsElement(getApplications(), name);
+	}
+
+	/**
+	 * @return the names of the applications the key is for
+	 */
+	String[] getApplications() {
+		return StringUtils.commaDelimitedListToStringArray(this.application);
+	}
+
+	/**
+	 * @return a digest of the key that does not reveal the config token
+	 */
+	String digest() {
+		String value = this.application + "\n" + this.profile + "\n" + this.label + "\n" + this.includeOrigin + "\n"
+				+ this.token;
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		EnvironmentRequestKey other = (EnvironmentRequestKey) o;
+		return this.includeOrigin == other.includeOrigin && Objects.equals(this.application, other.application)
+				&& Objects.equals(this.profile, other.profile) && Objects.equals(this.label, other.label)
+				&& Objects.equals(this.token, other.token);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.application, this.profile, this.label, this.includeOrigin, this.token);
+	}
+
+	@Override
+	public String toString() {
+		return "environment " + this.application + "/" + this.profile + "/" + this.label;
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.util.LinkedHashMap;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+
+/**
+ * Helpers for repositories that keep environments (in a cache, for example) and hand
+ * them out again.
+ */
+final class Environments {
+
+	private Environments() {
+	}
+
+	/**
+	 * Copy the environment and the maps of its property sources, so that a caller
+	 * changing what it was given (as the encryptors and overrides do) leaves the kept
+	 * environment as it is.
+	 * @param environment the environment to copy (may be null)
+	 * @return the copy, or null
+	 */
+	static Environment copy(Environment environment) {
+		if (environment == null) {
+			return null;
+		}
+		Environment copy = new Environment(environment);
+		for (PropertySource source : environment.getPropertySources()) {
+			copy.add(new PropertySource(source.getName(), new LinkedHashMap<>(source.getSource())));
+		}
+		return copy;
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * A file as committed in a Git repository, read from the object store rather than from
+ * the working copy, so that its content does not change when another label is checked
+ * out. Each stream opens the repository and closes it once read.
+ */
+final class GitObjectResource extends AbstractResource {
+
+	private final File gitDirectory;
+
+	private final ObjectId id;
+
+	private final long size;
+
+	private final long lastModified;
+
+	private final Resource file;
+
+	/**
+	 * @param gitDirectory the directory of the repository
+	 * @param id the id of the blob
+	 * @param size the size of the blob
+	 * @param lastModified the time of the commit holding the blob
+	 * @param file the file in the working copy
+	 */
+	GitObjectResource(File gitDirectory, ObjectId id, long size, long lastModified, Resource file) {
+		this.gitDirectory = gitDirectory;
+		this.id = id;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.file = file;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		Repository repository = new FileRepositoryBuilder().setGitDir(this.gitDirectory).setMustExist(true).build();
+		try {
+			return new FilterInputStream(repository.open(this.id, Constants.OBJ_BLOB).openStream()) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					}
+					finally {
+						repository.close();
+					}
+				}
+			};
+		}
+		catch (IOException | RuntimeException e) {
+			repository.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean exists() {
+		return true;
+	}
+
+	@Override
+	public long contentLength() {
+		return this.size;
+	}
+
+	@Override
+	public long lastModified() {
+		return this.lastModified;
+	}
+
+	@Override
+	public String getFilename() {
+		return this.file.getFilename();
+	}
+
+	@Override
+	public String getDescription() {
+		return this.file.getDescription() + " (" + this.id.name() + ")";
+	}
+
+}
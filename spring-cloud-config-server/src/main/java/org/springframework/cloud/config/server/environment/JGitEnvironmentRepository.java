@@ -47,17 +47,24 @@ import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.api.errors.RefNotFoundException;
 import org.eclipse.jgit.errors.NoRemoteRepositoryException;
 import org.eclipse.jgit.lib.BranchTrackingStatus;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.ReceiveCommand;
 import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.TrackingRefUpdate;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.util.FileUtils;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.cloud.config.server.support.GitCredentialsProviderFactory;
 import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
@@ -276,6 +283,71 @@ public class JGitEnvironmentRepository extends AbstractScmEnvironmentRepository
 				getSearchLocations(getWorkingDirectory(), application, profile, label));
 	}
 
+	/**
+	 * All the labels share one working copy, so the locations are current as long as the
+	 * commit they were returned with is still checked out.
+	 */
+	@Override
+	public boolean isCurrent(Locations locations) {
+		if (!holds(locations)) {
+			return false;
+		}
+		try (Git git = openGitRepository()) {
+			Ref head = git.getRepository().findRef("HEAD");
+			return head != null && head.getObjectId() != null
+					&& head.getObjectId().getName().equals(locations.getVersion());
+		}
+		catch (IOException e) {
+			this.logger.debug("Could not read the HEAD of " + getWorkingDirectory(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Whether the locations are in the working copy of this repository.
+	 */
+	boolean holds(Locations locations) {
+		String workingDirectory = getWorkingDirectory().toURI().toString();
+		for (String location : locations.getLocations()) {
+			if (!location.startsWith(workingDirectory)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * All the labels share one working copy, so the resource is read from the commit the
+	 * locations were returned with. Files that are not committed there are read from the
+	 * working copy.
+	 */
+	@Override
+	public Resource snapshot(Locations locations, Resource resource) {
+		if (locations.getVersion() == null || !holds(locations)) {
+			return resource;
+		}
+		try (Git git = openGitRepository(); RevWalk walk = new RevWalk(git.getRepository())) {
+			String path = getWorkingDirectory().toPath().toAbsolutePath().normalize()
+					.relativize(resource.getFile().toPath().toAbsolutePath().normalize()).toString()
+					.replace(File.separatorChar, '/');
+			RevCommit commit = walk.parseCommit(ObjectId.fromString(locations.getVersion()));
+			try (TreeWalk tree = TreeWalk.forPath(git.getRepository(), path, commit.getTree())) {
+				if (tree == null || !tree.getFileMode(0).equals(FileMode.REGULAR_FILE)
+						&& !tree.getFileMode(0).equals(FileMode.EXECUTABLE_FILE)) {
+					return resource;
+				}
+				ObjectId id = tree.getObjectId(0);
+				return new GitObjectResource(git.getRepository().getDirectory(), id,
+						walk.getObjectReader().getObjectSize(id, Constants.OBJ_BLOB),
+						commit.getCommitTime() * 1000L, resource);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			this.logger.debug("Could not read " + resource + " from commit " + locations.getVersion(), e);
+			return resource;
+		}
+	}
+
 	@Override
 	public synchronized void afterPropertiesSet() throws Exception {
 		Assert.state(getUri() != null, MESSAGE);
@@ -33,6 +33,10 @@ public class JdbcEnvironmentProperties implements EnvironmentRepositoryPropertie
 	private static final String DEFAULT_SQL_WITHOUT_PROFILE = "SELECT \"KEY\", \"VALUE\" from PROPERTIES"
 			+ " where APPLICATION=? and PROFILE is null and LABEL=?";
 
+	private static final String DEFAULT_SINGLE_QUERY_SQL = "SELECT APPLICATION, PROFILE, \"KEY\", \"VALUE\""
+			+ " from PROPERTIES where APPLICATION in (:applications)"
+			+ " and (PROFILE in (:profiles) or PROFILE is null) and LABEL=:label";
+
 	/**
 	 * Flag to indicate that JDBC environment repository configuration is enabled.
 	 */
@@ -46,6 +50,43 @@ public class JdbcEnvironmentProperties implements EnvironmentRepositoryPropertie
 	/** SQL used to query database for keys and values when profile is null. */
 	private String sqlWithoutProfile = DEFAULT_SQL_WITHOUT_PROFILE;
 
+	/**
+	 * Flag to fetch all the keys and values of an environment with a single query
+	 * ({@link #singleQuerySql}), instead of one query per application and profile. Not
+	 * applied when the repository is given a custom PropertiesResultSetExtractor, which
+	 * can only read the rows of one application and profile at a time.
+	 */
+	private boolean singleQuery = false;
+
+	/**
+	 * SQL used to query database for applications, profiles, keys and values (in that
+	 * order) in single query mode, with named parameters "applications", "profiles" and
+	 * "label".
+	 */
+	private String singleQuerySql = DEFAULT_SINGLE_QUERY_SQL;
+
+	/**
+	 * SQL used to query database for the version of an environment, with the same named
+	 * parameters as {@link #singleQuerySql}, for example the latest update time of the
+	 * rows or a checksum kept in a separate table. Several rows are combined into a
+	 * digest, in any order. When set, environments are cached until their version changes.
+	 */
+	private String versionSql;
+
+	/**
+	 * Number of rows fetched from the database at a time, so that large property tables
+	 * are streamed rather than read in one go (some drivers, such as PostgreSQL, only do
+	 * that outside of auto-commit). Defaults to 0, which uses the driver default.
+	 */
+	private int fetchSize = 0;
+
+	/**
+	 * Flag to share a single instance of each property key between property sources and
+	 * cached environments, saving memory when the same keys are repeated across
+	 * applications and profiles.
+	 */
+	private boolean deduplicateKeys = false;
+
 	/**
 	 * Flag to determine how to handle query exceptions.
 	 */
@@ -86,6 +127,46 @@ public class JdbcEnvironmentProperties implements EnvironmentRepositoryPropertie
 		this.sqlWithoutProfile = sqlWithoutProfile;
 	}
 
+	public boolean isSingleQuery() {
+		return this.singleQuery;
+	}
+
+	public void setSingleQuery(boolean singleQuery) {
+		this.singleQuery = singleQuery;
+	}
+
+	public String getSingleQuerySql() {
+		return this.singleQuerySql;
+	}
+
+	public void setSingleQuerySql(String singleQuerySql) {
+		this.singleQuerySql = singleQuerySql;
+	}
+
+	public String getVersionSql() {
+		return this.versionSql;
+	}
+
+	public void setVersionSql(String versionSql) {
+		this.versionSql = versionSql;
+	}
+
+	public int getFetchSize() {
+		return this.fetchSize;
+	}
+
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	public boolean isDeduplicateKeys() {
+		return this.deduplicateKeys;
+	}
+
+	public void setDeduplicateKeys(boolean deduplicateKeys) {
+		this.deduplicateKeys = deduplicateKeys;
+	}
+
 	public boolean isFailOnError() {
 		return failOnError;
 	}
@@ -16,16 +16,21 @@
 
 package org.springframework.cloud.config.server.environment;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,6 +41,9 @@ import org.springframework.core.Ordered;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -47,6 +55,18 @@ import org.springframework.util.StringUtils;
  * <code>{application}-{profile}.properties</code>, including all the encryption and
  * decryption, which will be applied as post-processing steps (i.e. not in this repository
  * directly).
+ * <p>
+ * By default each application and profile is fetched with a separate query. In
+ * {@link JdbcEnvironmentProperties#isSingleQuery() single query} mode all of them are
+ * fetched in one round trip and split into property sources in memory, with the same
+ * precedence. The rows are then read by a {@link PropertySourcesResultSetExtractor}, so
+ * a custom {@link PropertiesResultSetExtractor} cannot be applied to them: with one, the
+ * repository keeps to a query per application and profile.
+ * <p>
+ * With a {@link JdbcEnvironmentProperties#getVersionSql() version query} the environment
+ * gets a version, and assembled environments are cached until their version changes, so
+ * only the (cheap) version query runs while the data is unchanged. An environment is not
+ * cached, and has no version, if one of its queries failed.
  *
  * @author Dave Syer
  *
@@ -55,16 +75,34 @@ public class JdbcEnvironmentRepository implements EnvironmentRepository, Ordered
 
 	private static final Log logger = LogFactory.getLog(JdbcEnvironmentRepository.class);
 
+	private static final int MAX_CACHED_ENVIRONMENTS = 1024;
+
+	private static final int MAX_DEDUPLICATED_KEYS = 262144;
+
 	private final JdbcTemplate jdbc;
 
+	private final NamedParameterJdbcTemplate namedJdbc;
+
 	private final PropertiesResultSetExtractor extractor;
 
+	private final PropertySourcesResultSetExtractor sourcesExtractor;
+
+	private final Map<String, String> keys;
+
 	private int order;
 
 	private String sql;
 
 	private String sqlWithoutProfile;
 
+	private boolean singleQuery;
+
+	private String singleQuerySql;
+
+	private String versionSql;
+
+	private final Map<List<String>, CachedEnvironment> cache = new ConcurrentHashMap<>();
+
 	private boolean failOnError;
 
 	private boolean configIncomplete;
@@ -78,16 +116,47 @@ public class JdbcEnvironmentRepository implements EnvironmentRepository, Ordered
 
 	public JdbcEnvironmentRepository(JdbcTemplate jdbc, JdbcEnvironmentProperties properties,
 			PropertiesResultSetExtractor extractor) {
-		this.jdbc = jdbc;
+		this.jdbc = withFetchSize(jdbc, properties.getFetchSize());
+		this.namedJdbc = new NamedParameterJdbcTemplate(this.jdbc);
+		this.keys = properties.isDeduplicateKeys() ? new ConcurrentHashMap<>() : null;
+		this.sourcesExtractor = new PropertySourcesResultSetExtractor(this::key);
 		this.order = properties.getOrder();
 		this.sql = properties.getSql();
 		this.sqlWithoutProfile = properties.getSqlWithoutProfile();
+		this.singleQuery = properties.isSingleQuery() && !isCustom(extractor);
+		this.singleQuerySql = properties.getSingleQuerySql();
+		this.versionSql = properties.getVersionSql();
 		this.failOnError = properties.isFailOnError();
 		this.extractor = extractor;
 		this.configIncomplete = properties.isConfigIncomplete();
 		this.defaultLabel = properties.getDefaultLabel();
 	}
 
+	private static boolean isCustom(PropertiesResultSetExtractor extractor) {
+		if (extractor == null || extractor.getClass() == PropertiesResultSetExtractor.class) {
+			return false;
+		}
+		logger.warn("Single query mode cannot apply " + extractor.getClass().getName()
+				+ ", querying each application and profile separately instead");
+		return true;
+	}
+
+	/**
+	 * Use a copy of the template if it needs a different fetch size, so that the shared
+	 * template is left as it is.
+	 */
+	private static JdbcTemplate withFetchSize(JdbcTemplate jdbc, int fetchSize) {
+		if (fetchSize <= 0 || fetchSize == jdbc.getFetchSize() || jdbc.getDataSource() == null) {
+			return jdbc;
+		}
+		JdbcTemplate template = new JdbcTemplate(jdbc.getDataSource());
+		template.setExceptionTranslator(jdbc.getExceptionTranslator());
+		template.setMaxRows(jdbc.getMaxRows());
+		template.setQueryTimeout(jdbc.getQueryTimeout());
+		template.setFetchSize(fetchSize);
+		return template;
+	}
+
 	public String getSql() {
 		return this.sql;
 	}
@@ -119,21 +188,90 @@ public class JdbcEnvironmentRepository implements EnvironmentRepository, Ordered
 		List<String> envs = new ArrayList<>(new LinkedHashSet<>(Arrays.asList(profiles)));
 		Collections.reverse(applications);
 		Collections.reverse(envs);
+		if (this.versionSql == null) {
+			addPropertySources(environment, applications, envs, label);
+			return environment;
+		}
+		// The version is read first, so a change while loading only causes another load
+		String version = queryVersion(applications, envs, label);
+		List<String> key = Arrays.asList(application, profile, label);
+		CachedEnvironment cached = this.cache.get(key);
+		if (cached != null && version != null && version.equals(cached.version)) {
+			return Environments.copy(cached.environment);
+		}
+		// An environment missing a source that failed to load must not outlive the failure,
+		// so it gets no version and no cache (here or downstream) keeps it
+		boolean complete = addPropertySources(environment, applications, envs, label);
+		if (!complete) {
+			return environment;
+		}
+		environment.setVersion(version);
+		if (version != null) {
+			if (this.cache.size() >= MAX_CACHED_ENVIRONMENTS && !this.cache.containsKey(key)) {
+				this.cache.clear();
+			}
+			this.cache.put(key, new CachedEnvironment(version, Environments.copy(environment)));
+		}
+		return environment;
+	}
+
+	/**
+	 * Add the property sources of the applications and profiles, returning false if a
+	 * query failed (and {@link #isFailOnError() failOnError} is off).
+	 */
+	private boolean addPropertySources(Environment environment, List<String> applications, List<String> envs,
+			String label) {
+		if (this.singleQuery) {
+			return addPropertySourcesWithSingleQuery(environment, applications, envs, label);
+		}
+		boolean complete = true;
 		for (String env : envs) {
 			for (String app : applications) {
-				addPropertySource(environment, app, env, label);
+				complete &= addPropertySource(environment, app, env, label);
 			}
 		}
 		// add properties without profile, equivalent to foo.yml, application.yml
 		if (!configIncomplete) {
 			for (String app : applications) {
-				addPropertySource(environment, app, null, label);
+				complete &= addPropertySource(environment, app, null, label);
 			}
 		}
-		return environment;
+		return complete;
 	}
 
-	private void addPropertySource(Environment environment, String application, String profile, String label) {
+	/**
+	 * Query the version of the applications, profiles and label, combining several rows
+	 * (in any order) into a digest. Returns null if there is no version.
+	 */
+	private String queryVersion(List<String> applications, List<String> envs, String label) {
+		List<String> versions;
+		try {
+			MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("applications", applications)
+					.addValue("profiles", envs).addValue("label", label);
+			versions = this.namedJdbc.queryForList(this.versionSql, parameters, String.class);
+		}
+		catch (DataAccessException e) {
+			if (failOnError) {
+				throw e;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Failed to retrieve version from JDBC Repository", e);
+			}
+			return null;
+		}
+		versions.removeIf(Objects::isNull);
+		if (versions.isEmpty()) {
+			return null;
+		}
+		if (versions.size() == 1) {
+			return versions.get(0);
+		}
+		// The query need not order its rows, so the digest must not depend on their order
+		Collections.sort(versions);
+		return DigestUtils.md5DigestAsHex(String.join("\n", versions).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private boolean addPropertySource(Environment environment, String application, String profile, String label) {
 		try {
 			Map<String, Object> source;
 			String name;
@@ -146,14 +284,16 @@ public class JdbcEnvironmentRepository implements EnvironmentRepository, Ordered
 				name = application;
 			}
 			if (source != null && !source.isEmpty()) {
-				environment.add(new PropertySource(name, source));
+				environment.add(new PropertySource(name, deduplicateKeys(source)));
 			}
+			return true;
 		}
 		catch (DataAccessException e) {
 			if (!failOnError) {
 				if (logger.isDebugEnabled()) {
 					logger.debug("Failed to retrieve configuration from JDBC Repository", e);
 				}
+				return false;
 			}
 			else {
 				throw e;
@@ -161,6 +301,70 @@ public class JdbcEnvironmentRepository implements EnvironmentRepository, Ordered
 		}
 	}
 
+	/**
+	 * Fetch the keys and values of all the applications and profiles in one query and
+	 * add them in the same order as {@link #addPropertySource} would.
+	 */
+	private boolean addPropertySourcesWithSingleQuery(Environment environment, List<String> applications,
+			List<String> envs, String label) {
+		Map<List<String>, Map<String, Object>> sources;
+		try {
+			MapSqlParameterSource parameters = new MapSqlParameterSource().addValue("applications", applications)
+					.addValue("profiles", envs).addValue("label", label);
+			sources = this.namedJdbc.query(this.singleQuerySql, parameters, this.sourcesExtractor);
+		}
+		catch (DataAccessException e) {
+			if (failOnError) {
+				throw e;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Failed to retrieve configuration from JDBC Repository", e);
+			}
+			return false;
+		}
+		for (String env : envs) {
+			for (String app : applications) {
+				addPropertySource(environment, app + "-" + env, sources.get(Arrays.asList(app, env)));
+			}
+		}
+		if (!configIncomplete) {
+			for (String app : applications) {
+				addPropertySource(environment, app, sources.get(Arrays.asList(app, null)));
+			}
+		}
+		return true;
+	}
+
+	private Map<String, Object> deduplicateKeys(Map<String, Object> source) {
+		if (this.keys == null) {
+			return source;
+		}
+		Map<String, Object> deduplicated = new LinkedHashMap<>((int) (source.size() / 0.75f) + 1);
+		source.forEach((key, value) -> deduplicated.put(key(key), value));
+		return deduplicated;
+	}
+
+	private String key(String key) {
+		if (this.keys == null || key == null) {
+			return key;
+		}
+		String existing = this.keys.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		if (this.keys.size() >= MAX_DEDUPLICATED_KEYS) {
+			this.keys.clear();
+		}
+		existing = this.keys.putIfAbsent(key, key);
+		return existing != null ? existing : key;
+	}
+
+	private void addPropertySource(Environment environment, String name, Map<String, Object> source) {
+		if (source != null && !source.isEmpty()) {
+			environment.add(new PropertySource(name, source));
+		}
+	}
+
 	@Override
 	public int getOrder() {
 		return this.order;
@@ -191,4 +395,52 @@ public class JdbcEnvironmentRepository implements EnvironmentRepository, Ordered
 
 	}
 
+	private static final class CachedEnvironment {
+
+		private final String version;
+
+		private final Environment environment;
+
+		private CachedEnvironment(String version, Environment environment) {
+			this.version = version;
+			this.environment = environment;
+		}
+
+	}
+
+	/**
+	 * Extracts the keys and values of each application and profile from rows of
+	 * application, profile, key and value, keyed on the application and profile.
+	 */
+	public static class PropertySourcesResultSetExtractor
+			implements ResultSetExtractor<Map<List<String>, Map<String, Object>>> {
+
+		private final UnaryOperator<String> keys;
+
+		public PropertySourcesResultSetExtractor() {
+			this(UnaryOperator.identity());
+		}
+
+		/**
+		 * @param keys a function applied to each key, for example to share a single
+		 * instance of repeated keys
+		 */
+		public PropertySourcesResultSetExtractor(UnaryOperator<String> keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		public Map<List<String>, Map<String, Object>> extractData(ResultSet rs)
+				throws SQLException, DataAccessException {
+			Map<List<String>, Map<String, Object>> sources = new HashMap<>();
+			while (rs.next()) {
+				List<String> source = Arrays.asList(rs.getString(1), rs.getString(2));
+				sources.computeIfAbsent(source, key -> new LinkedHashMap<>()).put(this.keys.apply(rs.getString(3)),
+						rs.getString(4));
+			}
+			return sources;
+		}
+
+	}
+
 }
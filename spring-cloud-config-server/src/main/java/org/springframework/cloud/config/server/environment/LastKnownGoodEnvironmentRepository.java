@@ -0,0 +1,328 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.server.support.RequestContextSupport;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.Assert;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * A delegating {@link EnvironmentRepository} that remembers the last environment
+ * successfully returned for each application, profiles, label (and config token), and
+ * serves a copy of it when the delegate fails. With a {@link #setLatencyBudget(Duration)
+ * latency budget} the delegate is queried on a separate thread, and the remembered copy
+ * is also served when the delegate is slower than the budget, while the query carries on
+ * in the background to refresh it (stale-while-revalidate). Concurrent queries for the
+ * same environment share a single background query.
+ * <p>
+ * A remembered environment is marked with a {@code Warning: 110} and an {@code Age}
+ * header when it is served in an HTTP request. Environments can also be persisted to a
+ * directory, so that they survive a restart of the server. Client errors (such as an
+ * unknown label) are never masked.
+ * <p>
+ * Background queries see a copy of the request headers (such as the config token) taken
+ * when the request arrived, since they can outlive the request.
+ */
+public class LastKnownGoodEnvironmentRepository implements EnvironmentRepository, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(LastKnownGoodEnvironmentRepository.class);
+
+	private static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+	private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+	private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+
+	private final EnvironmentRepository delegate;
+
+	private final Map<EnvironmentRequestKey, Stored> stored;
+
+	private final Map<EnvironmentRequestKey, CompletableFuture<Environment>> inFlight =
+			new ConcurrentHashMap<>();
+
+	private final ObjectMapper objectMapper;
+
+	private volatile ForkJoinPool pool;
+
+	private volatile Duration latencyBudget;
+
+	private volatile Path persistenceDirectory;
+
+	public LastKnownGoodEnvironmentRepository(EnvironmentRepository delegate, int maxSize,
+			ObjectMapper objectMapper) {
+		Assert.isTrue(maxSize > 0, "maxSize must be positive");
+		this.delegate = delegate;
+		this.objectMapper = objectMapper;
+		this.stored = Collections
+				.synchronizedMap(new LinkedHashMap<EnvironmentRequestKey, Stored>(16, 0.75f, true) {
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<EnvironmentRequestKey, Stored> eldest) {
+						return size() > maxSize;
+					}
+				});
+	}
+
+	/**
+	 * Set how long to wait for the delegate before serving the last known good
+	 * environment instead. Requires a {@link #setParallelism(int) parallelism} greater
+	 * than one. Defaults to null (always wait for the delegate).
+	 * @param latencyBudget the latency budget
+	 */
+	public void setLatencyBudget(Duration latencyBudget) {
+		this.latencyBudget = latencyBudget;
+	}
+
+	/**
+	 * @param parallelism the maximum number of delegate queries running in the
+	 * background at the same time
+	 */
+	public void setParallelism(int parallelism) {
+		ForkJoinPool pool = this.pool;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Set a directory where the last known good environments are also stored. They are
+	 * stored as the delegate returned them, before decryption, so values that backends
+	 * such as Vault, JDBC, AWS or CredHub hold as secrets are written in plain text. The
+	 * files (and the directory, if it is created) are only readable by the owner where
+	 * the file system supports POSIX permissions, but the directory should still be
+	 * protected accordingly.
+	 * @param persistenceDirectory a directory where the last known good environments are
+	 * stored, or null to only keep them in memory
+	 */
+	public void setPersistenceDirectory(String persistenceDirectory) {
+		this.persistenceDirectory = persistenceDirectory != null ? Paths.get(persistenceDirectory) : null;
+	}
+
+	@Override
+	public void destroy() {
+		setParallelism(1);
+	}
+
+	@Override
+	public Environment findOne(String application, String profile, String label) {
+		return findOne(application, profile, label, false);
+	}
+
+	@Override
+	public Environment findOne(String application, String profile, String label, boolean includeOrigin) {
+		EnvironmentRequestKey key = EnvironmentRequestKey.of(application, profile, label, includeOrigin);
+		Supplier<Environment> query = () -> this.delegate.findOne(application, profile, label, includeOrigin);
+		ForkJoinPool pool = this.pool;
+		Duration latencyBudget = this.latencyBudget;
+		if (pool == null || latencyBudget == null) {
+			Environment environment;
+			try {
+				environment = query.get();
+			}
+			catch (RuntimeException e) {
+				return fallback(key, e);
+			}
+			remember(key, environment);
+			return environment;
+		}
+		CompletableFuture<Environment> result = query(key, query, pool);
+		try {
+			try {
+				return Environments.copy(result.get(latencyBudget.toMillis(), TimeUnit.MILLISECONDS));
+			}
+			catch (TimeoutException e) {
+				Stored stored = lookup(key);
+				if (stored != null) {
+					logger.warn("Timed out waiting for " + key + ", serving the last known good environment");
+					return stale(stored);
+				}
+				return Environments.copy(result.get());
+			}
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				return fallback(key, (RuntimeException) e.getCause());
+			}
+			throw new IllegalStateException("Cannot load environment", e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading environment", e);
+		}
+	}
+
+	private CompletableFuture<Environment> query(EnvironmentRequestKey key, Supplier<Environment> query,
+			ForkJoinPool pool) {
+		CompletableFuture<Environment> result = this.inFlight.get(key);
+		if (result != null) {
+			return result;
+		}
+		CompletableFuture<Environment> created = new CompletableFuture<>();
+		result = this.inFlight.putIfAbsent(key, created);
+		if (result != null) {
+			return result;
+		}
+		// The query may outlive the request, so it must not read the live request
+		CompletableFuture.supplyAsync(RequestContextSupport.withRequestSnapshot(query), pool)
+				.whenComplete((environment, error) -> {
+					this.inFlight.remove(key, created);
+					if (error != null) {
+						created.completeExceptionally(error);
+					}
+					else {
+						remember(key, environment);
+						created.complete(environment);
+					}
+				});
+		return created;
+	}
+
+	private Environment fallback(EnvironmentRequestKey key, RuntimeException e) {
+		if (e instanceof EnvironmentNotFoundException || e instanceof NoSuchLabelException
+				|| e instanceof NoSuchRepositoryException || e instanceof InvalidEnvironmentRequestException) {
+			throw e;
+		}
+		Stored stored = lookup(key);
+		if (stored == null) {
+			throw e;
+		}
+		logger.warn("Cannot load " + key + ", serving the last known good environment: " + e.getMessage());
+		return stale(stored);
+	}
+
+	private Environment stale(Stored stored) {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes instanceof ServletRequestAttributes servletAttributes) {
+			HttpServletResponse response = servletAttributes.getResponse();
+			if (response != null) {
+				long age = Math.max(0, System.currentTimeMillis() - stored.time);
+				response.setHeader(HttpHeaders.WARNING, STALE_WARNING);
+				response.setHeader(HttpHeaders.AGE, String.valueOf(TimeUnit.MILLISECONDS.toSeconds(age)));
+			}
+		}
+		return Environments.copy(stored.environment);
+	}
+
+	private void remember(EnvironmentRequestKey key, Environment environment) {
+		if (environment == null) {
+			return;
+		}
+		Stored stored = new Stored(Environments.copy(environment), System.currentTimeMillis());
+		Stored previous = this.stored.put(key, stored);
+		Path directory = this.persistenceDirectory;
+		if (directory != null) {
+			persist(directory, key, stored, previous);
+		}
+	}
+
+	private Stored lookup(EnvironmentRequestKey key) {
+		Stored stored = this.stored.get(key);
+		Path directory = this.persistenceDirectory;
+		if (stored == null && directory != null) {
+			Path file = directory.resolve(key.digest() + ".json");
+			try {
+				if (Files.exists(file)) {
+					stored = new Stored(this.objectMapper.readValue(file.toFile(), Environment.class),
+							Files.getLastModifiedTime(file).toMillis());
+					this.stored.putIfAbsent(key, stored);
+				}
+			}
+			catch (IOException e) {
+				logger.warn("Cannot read last known good environment from " + file, e);
+			}
+		}
+		return stored;
+	}
+
+	private void persist(Path directory, EnvironmentRequestKey key, Stored stored, Stored previous) {
+		Path file = directory.resolve(key.digest() + ".json");
+		try {
+			byte[] content = this.objectMapper.writeValueAsBytes(stored.environment);
+			stored.digest = MessageDigest.getInstance("SHA-256").digest(content);
+			// Only rewrite the file when the environment changed
+			if (previous != null && MessageDigest.isEqual(stored.digest, previous.digest) && Files.exists(file)) {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(stored.time));
+				return;
+			}
+			// The environment may hold secrets in plain text, so only the owner may read it
+			Path temp;
+			if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+				temp = Files.createTempFile(directory, "environment", ".tmp",
+						PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+			}
+			else {
+				Files.createDirectories(directory);
+				temp = Files.createTempFile(directory, "environment", ".tmp");
+			}
+			Files.write(temp, content);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException | NoSuchAlgorithmException e) {
+			logger.warn("Cannot write last known good environment to " + file, e);
+		}
+	}
+
+	private static final class Stored {
+
+		private final Environment environment;
+
+		private final long time;
+
+		private volatile byte[] digest;
+
+		private Stored(Environment environment, long time) {
+			this.environment = environment;
+			this.time = time;
+		}
+
+	}
+
+}
@@ -29,6 +29,7 @@ import io.micrometer.observation.ObservationRegistry;
 import org.springframework.beans.BeanUtils;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.io.Resource;
 import org.springframework.util.PatternMatchUtils;
 import org.springframework.util.StringUtils;
 
@@ -146,6 +147,38 @@ public class MultipleJGitEnvironmentRepository extends JGitEnvironmentRepository
 		return candidate.getLocations(application, profile, label);
 	}
 
+	@Override
+	public boolean isCurrent(Locations locations) {
+		JGitEnvironmentRepository owner = getOwner(locations);
+		return owner == this ? super.isCurrent(locations) : owner.isCurrent(locations);
+	}
+
+	@Override
+	public Resource snapshot(Locations locations, Resource resource) {
+		JGitEnvironmentRepository owner = getOwner(locations);
+		return owner == this ? super.snapshot(locations, resource) : owner.snapshot(locations, resource);
+	}
+
+	/**
+	 * The repository whose working copy holds the locations, as only that one can tell
+	 * which version they belong to.
+	 */
+	private JGitEnvironmentRepository getOwner(Locations locations) {
+		String application = locations.getApplication();
+		String profile = locations.getProfile();
+		String label = locations.getLabel();
+		for (PatternMatchingJGitEnvironmentRepository repository : this.repos.values()) {
+			if (repository.matches(application, profile, label)) {
+				for (JGitEnvironmentRepository candidate : getRepositories(repository, application, profile, label)) {
+					if (candidate.holds(locations)) {
+						return candidate;
+					}
+				}
+			}
+		}
+		return getRepository(this, application, profile, label);
+	}
+
 	@Override
 	public Environment findOne(String application, String profile, String label, boolean includeOrigin) {
 		for (PatternMatchingJGitEnvironmentRepository repository : this.repos.values()) {
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.StringUtils;
+
+/**
+ * A second level cache of environments shared by all the config server nodes through
+ * Redis, with a short lived local near cache in front of it. Only environments with a
+ * version are cached. The version last seen for each application and label is recorded
+ * in Redis, and when a node loads a different version it drops the cached environments
+ * of the application and publishes an invalidation, so that all the nodes drop their near
+ * cache entries too.
+ * <p>
+ * An environment found in Redis is only served if the repository, when it is a
+ * {@link SearchPathLocator}, still reports its version. Other repositories cannot tell
+ * their version without loading the environment, so a change is also picked up when an
+ * {@link EnvironmentRepositoryChangedEvent} names its paths, as published by the
+ * repositories that watch their backend and by the {@code /monitor} webhook. Changes
+ * nobody announces are served once the cached environments expire.
+ * <p>
+ * Environments are cached as they come from the backends, before decryption. Listening to
+ * the invalidations is left to a message listener container, which should pass the
+ * messages of the {@link #getChannel() channel} to {@link #evict(String)}.
+ */
+public class RedisEnvironmentCache {
+
+	private static final Log logger = LogFactory.getLog(RedisEnvironmentCache.class);
+
+	private final StringRedisTemplate redis;
+
+	private final ObjectMapper objectMapper;
+
+	private final String keyPrefix;
+
+	private final Map<EnvironmentRequestKey, NearEntry> near = new ConcurrentHashMap<>();
+
+	private volatile Duration timeToLive = Duration.ofMinutes(5);
+
+	private volatile long nearCacheTimeToLive = Duration.ofSeconds(10).toNanos();
+
+	private volatile int nearCacheMaxSize = 1000;
+
+	public RedisEnvironmentCache(StringRedisTemplate redis, ObjectMapper objectMapper, String keyPrefix) {
+		this.redis = redis;
+		this.objectMapper = objectMapper;
+		this.keyPrefix = keyPrefix;
+	}
+
+	/**
+	 * @param timeToLive how long an environment is kept in Redis
+	 */
+	public void setTimeToLive(Duration timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * @param nearCacheTimeToLive how long an environment is kept in the local near cache,
+	 * which bounds how stale it can be if an invalidation is missed
+	 */
+	public void setNearCacheTimeToLive(Duration nearCacheTimeToLive) {
+		this.nearCacheTimeToLive = nearCacheTimeToLive.toNanos();
+	}
+
+	/**
+	 * @param nearCacheMaxSize the maximum number of environments in the near cache
+	 */
+	public void setNearCacheMaxSize(int nearCacheMaxSize) {
+		this.nearCacheMaxSize = nearCacheMaxSize;
+	}
+
+	/**
+	 * @return the Redis channel where invalidations are published
+	 */
+	public String getChannel() {
+		return this.keyPrefix + "invalidations";
+	}
+
+	/**
+	 * @param repository the repository to query on a cache miss
+	 * @return a repository that serves environments from the cache
+	 */
+	public EnvironmentRepository caching(EnvironmentRepository repository) {
+		return new CachingEnvironmentRepository(repository);
+	}
+
+	/**
+	 * Drop the cached environments of the application from Redis and tell all the nodes
+	 * to drop them from their near cache.
+	 * @param application the name of the application
+	 */
+	public void invalidate(String application) {
+		evict(application);
+		try {
+			String index = this.keyPrefix + "keys:" + application;
+			Set<String> keys = this.redis.opsForSet().members(index);
+			if (keys != null && !keys.isEmpty()) {
+				this.redis.delete(keys);
+			}
+			this.redis.delete(index);
+			this.redis.convertAndSend(getChannel(), application);
+		}
+		catch (RuntimeException e) {
+			logger.warn("Cannot invalidate the cached environments of " + application, e);
+		}
+	}
+
+	/**
+	 * Invalidate the applications affected by the changed paths.
+	 * @param event the change event
+	 */
+	@EventListener
+	public void onEnvironmentRepositoryChanged(EnvironmentRepositoryChangedEvent event) {
+		invalidatePaths(event.getPaths());
+	}
+
+	/**
+	 * Invalidate the applications affected by changes to the given paths, named like the
+	 * files of a native repository. A change to {@code application} affects them all.
+	 * @param paths the changed paths
+	 */
+	public void invalidatePaths(Collection<String> paths) {
+		Set<String> applications = new LinkedHashSet<>();
+		for (String path : paths) {
+			String name = StringUtils.stripFilenameExtension(StringUtils.getFilename(StringUtils.cleanPath(path)));
+			applications.add(name);
+			int index;
+			// the profile cannot be told from an application name with dashes
+			while ((index = name.lastIndexOf('-')) > 0) {
+				name = name.substring(0, index);
+				applications.add(name);
+			}
+		}
+		if (applications.contains("application")) {
+			invalidateAll();
+		}
+		else {
+			applications.forEach(this::invalidate);
+		}
+	}
+
+	private void invalidateAll() {
+		this.near.clear();
+		Set<String> applications = new LinkedHashSet<>();
+		try {
+			for (Object field : this.redis.opsForHash().keys(this.keyPrefix + "versions")) {
+				// the fields are the application and the label
+				String name = field.toString();
+				int index = name.indexOf('/');
+				if (index > 0) {
+					applications.add(name.substring(0, index));
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			logger.warn("Cannot list the cached applications", e);
+		}
+		applications.forEach(this::invalidate);
+	}
+
+	/**
+	 * Drop the environments of the application from the near cache of this node.
+	 * @param application the name of the application
+	 */
+	public void evict(String application) {
+		this.near.keySet().removeIf(key -> key.isFor(application));
+	}
+
+	Environment findOne(EnvironmentRepository repository, String application, String profile, String label,
+			boolean includeOrigin) {
+		EnvironmentRequestKey key = EnvironmentRequestKey.of(application, profile, label, includeOrigin);
+		long now = System.nanoTime();
+		NearEntry entry = this.near.get(key);
+		if (entry != null) {
+			if (now - entry.expires < 0) {
+				return Environments.copy(entry.environment);
+			}
+			this.near.remove(key, entry);
+		}
+		Environment environment = read(key);
+		if (environment != null && !isCurrent(repository, application, profile, label, environment)) {
+			environment = null;
+		}
+		if (environment == null) {
+			environment = repository.findOne(application, profile, label, includeOrigin);
+			if (environment == null || environment.getVersion() == null) {
+				return environment;
+			}
+			write(key, environment);
+		}
+		if (this.near.size() >= this.nearCacheMaxSize && !this.near.containsKey(key)) {
+			this.near.clear();
+		}
+		this.near.put(key,
+				new NearEntry(Environments.copy(environment), now + this.nearCacheTimeToLive));
+		return environment;
+	}
+
+	/**
+	 * Repositories that locate their search paths report the version of a label without
+	 * loading its environment, so an environment cached by another node is checked
+	 * against it before being served. Environments of other repositories are served
+	 * until they expire or are invalidated.
+	 */
+	private boolean isCurrent(EnvironmentRepository repository, String application, String profile, String label,
+			Environment environment) {
+		SearchPathLocator locator = null;
+		if (repository instanceof SearchPathLocator searchPathLocator) {
+			locator = searchPathLocator;
+		}
+		else if (repository instanceof ObservationEnvironmentRepositoryWrapper wrapper
+				&& wrapper.getDelegate() instanceof SearchPathLocator searchPathLocator) {
+			locator = searchPathLocator;
+		}
+		if (locator == null) {
+			return true;
+		}
+		try {
+			String version = locator.getLocations(application, profile, label).getVersion();
+			return version == null || version.equals(environment.getVersion());
+		}
+		catch (RuntimeException e) {
+			logger.debug("Cannot check the version of cached " + application + " (" + label + ")", e);
+			return false;
+		}
+	}
+
+	private Environment read(EnvironmentRequestKey key) {
+		try {
+			String json = this.redis.opsForValue().get(this.keyPrefix + key.digest());
+			return json != null ? this.objectMapper.readValue(json, Environment.class) : null;
+		}
+		catch (JsonProcessingException | RuntimeException e) {
+			logger.warn("Cannot read cached " + key + " from Redis", e);
+			return null;
+		}
+	}
+
+	private void write(EnvironmentRequestKey key, Environment environment) {
+		try {
+			for (String application : key.getApplications()) {
+				// A new version of an application makes all its cached environments stale
+				String field = application + "/" + environment.getLabel();
+				Object previous = this.redis.opsForHash().get(this.keyPrefix + "versions", field);
+				if (previous != null && !Objects.equals(previous, environment.getVersion())) {
+					invalidate(application);
+				}
+				this.redis.opsForHash().put(this.keyPrefix + "versions", field, environment.getVersion());
+			}
+			String dataKey = this.keyPrefix + key.digest();
+			this.redis.opsForValue().set(dataKey, this.objectMapper.writeValueAsString(environment),
+					this.timeToLive);
+			for (String application : key.getApplications()) {
+				String index = this.keyPrefix + "keys:" + application;
+				this.redis.opsForSet().add(index, dataKey);
+				this.redis.expire(index, this.timeToLive);
+			}
+		}
+		catch (JsonProcessingException | RuntimeException e) {
+			logger.warn("Cannot write " + key + " to Redis", e);
+		}
+	}
+
+	private static final class NearEntry {
+
+		private final Environment environment;
+
+		private final long expires;
+
+		private NearEntry(Environment environment, long expires) {
+			this.environment = environment;
+			this.expires = expires;
+		}
+
+	}
+
+	private final class CachingEnvironmentRepository implements EnvironmentRepository {
+
+		private final EnvironmentRepository delegate;
+
+		private CachingEnvironmentRepository(EnvironmentRepository delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Environment findOne(String application, String profile, String label) {
+			return findOne(application, profile, label, false);
+		}
+
+		@Override
+		public Environment findOne(String application, String profile, String label, boolean includeOrigin) {
+			return RedisEnvironmentCache.this.findOne(this.delegate, application, profile, label, includeOrigin);
+		}
+
+	}
+
+}
@@ -16,6 +16,8 @@
 
 package org.springframework.cloud.config.server.environment;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.cloud.config.server.support.EnvironmentRepositoryProperties;
 import org.springframework.core.Ordered;
@@ -28,6 +30,39 @@ public class RedisEnvironmentProperties implements EnvironmentRepositoryProperti
 
 	private int order = Ordered.LOWEST_PRECEDENCE;
 
+	/**
+	 * Name of an application whose keys are shared by all applications (like
+	 * application.yml), with a lower precedence than the keys of the application for the
+	 * same profile. Defaults to none.
+	 */
+	private String defaultApplicationName;
+
+	/**
+	 * Name of a hash holding a version for each key (for example incremented with
+	 * HINCRBY when the key is written). If set, the environment version is derived from
+	 * it, and assembled environments are cached until it changes. Defaults to none.
+	 */
+	private String versionKey;
+
+	/**
+	 * Listen to keyspace notifications (notify-keyspace-events must be enabled on the
+	 * Redis server) to cache assembled environments until a key they were read from
+	 * changes, and to publish the changes.
+	 */
+	private boolean keyspaceNotifications = false;
+
+	/**
+	 * How long the changes from keyspace notifications are collected before they are
+	 * published together, so that a burst of writes refreshes an application once.
+	 */
+	private Duration notificationDelay = Duration.ofSeconds(1);
+
+	/**
+	 * How long environments cached on keyspace notifications alone (without a version
+	 * key) are kept, which bounds how stale they can be if a notification is missed.
+	 */
+	private Duration cacheTimeToLive = Duration.ofMinutes(5);
+
 	public int getOrder() {
 		return this.order;
 	}
@@ -37,4 +72,44 @@ public class RedisEnvironmentProperties implements EnvironmentRepositoryProperti
 		this.order = order;
 	}
 
+	public String getDefaultApplicationName() {
+		return this.defaultApplicationName;
+	}
+
+	public void setDefaultApplicationName(String defaultApplicationName) {
+		this.defaultApplicationName = defaultApplicationName;
+	}
+
+	public String getVersionKey() {
+		return this.versionKey;
+	}
+
+	public void setVersionKey(String versionKey) {
+		this.versionKey = versionKey;
+	}
+
+	public boolean isKeyspaceNotifications() {
+		return this.keyspaceNotifications;
+	}
+
+	public void setKeyspaceNotifications(boolean keyspaceNotifications) {
+		this.keyspaceNotifications = keyspaceNotifications;
+	}
+
+	public Duration getNotificationDelay() {
+		return this.notificationDelay;
+	}
+
+	public void setNotificationDelay(Duration notificationDelay) {
+		this.notificationDelay = notificationDelay;
+	}
+
+	public Duration getCacheTimeToLive() {
+		return this.cacheTimeToLive;
+	}
+
+	public void setCacheTimeToLive(Duration cacheTimeToLive) {
+		this.cacheTimeToLive = cacheTimeToLive;
+	}
+
 }
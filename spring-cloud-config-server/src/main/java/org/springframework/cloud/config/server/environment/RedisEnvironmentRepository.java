@@ -16,23 +16,68 @@
 
 package org.springframework.cloud.config.server.environment;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.core.Ordered;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
 /**
+ * An {@link EnvironmentRepository} backed by Redis hashes named after the application and
+ * profile. The environment version is a digest of the hashes, or of the fields of the
+ * {@link RedisEnvironmentProperties#getVersionKey() version hash} when there is one. With
+ * a version hash or {@link #keyChanged(String) keyspace notifications} the assembled
+ * environments are cached until a key they were read from changes. Only the changes to
+ * keys read since the server started are handled, and they are published after a short
+ * delay, so that a burst of writes to the hashes of an application refreshes it once.
+ * <p>
+ * Without a version hash, a missed notification would leave a cached environment stale,
+ * so environments are then kept for at most the
+ * {@link RedisEnvironmentProperties#getCacheTimeToLive() cache time to live}, and are not
+ * cached at all if the server does not publish the keyspace events of hashes.
+ *
  * @author Piotr Mińkowski
  * @author KNV Srinivas
  */
-public class RedisEnvironmentRepository implements EnvironmentRepository, Ordered {
+public class RedisEnvironmentRepository implements EnvironmentRepository, Ordered, ApplicationEventPublisherAware {
+
+	private static final Log logger = LogFactory.getLog(RedisEnvironmentRepository.class);
+
+	private static final String NOTIFY_KEYSPACE_EVENTS = "notify-keyspace-events";
+
+	private static final int MAX_CACHED_ENVIRONMENTS = 1024;
+
+	private static final int MAX_WATCHED_KEYS = 4 * MAX_CACHED_ENVIRONMENTS;
+
+	// The keyspace events of a hash being written or removed
+	private static final Set<String> HASH_EVENTS = new HashSet<>(Arrays.asList("hset", "hdel", "hincrby",
+			"hincrbyfloat", "hexpired", "del", "expired", "evicted", "rename_from", "rename_to", "move_from",
+			"move_to", "copy_to", "restore"));
 
 	private final StringRedisTemplate redis;
 
@@ -40,37 +85,254 @@ public class RedisEnvironmentRepository implements EnvironmentRepository, Ordere
 
 	private final int order;
 
+	private final Map<List<String>, CachedEnvironment> cache = new ConcurrentHashMap<>();
+
+	private final AtomicLong changes = new AtomicLong();
+
+	private final Set<String> watchedKeys = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean watchingAllKeys;
+
+	private final Set<String> pendingChanges = new LinkedHashSet<>();
+
+	private volatile Boolean keyspaceEventsEnabled;
+
+	private ApplicationEventPublisher applicationEventPublisher;
+
 	public RedisEnvironmentRepository(StringRedisTemplate redis, RedisEnvironmentProperties properties) {
 		this.redis = redis;
 		this.properties = properties;
 		this.order = properties.getOrder();
 	}
 
+	@Override
+	public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+		this.applicationEventPublisher = applicationEventPublisher;
+	}
+
 	@Override
 	public Environment findOne(String application, String profile, String label) {
 		String[] profiles = StringUtils.commaDelimitedListToStringArray(profile);
-		Environment environment = new Environment(application, profiles, label, null, null);
 		final List<String> keys = addKeys(application, Arrays.asList(profiles));
-		keys.forEach(it -> {
-			Map<?, ?> m = redis.opsForHash().entries(it);
-			environment.add(new PropertySource("redis:" + it, m));
-		});
+		watch(keys);
+		String versionKey = this.properties.getVersionKey();
+		boolean cacheable = versionKey != null || this.properties.isKeyspaceNotifications() && keyspaceEventsEnabled();
+		List<String> cacheKey = Arrays.asList(application, profile, label);
+		// Read before loading, so a change while loading is not hidden by the cache
+		long changes = this.changes.get();
+		long now = System.nanoTime();
+		String version = versionKey != null ? versions(versionKey, keys) : null;
+		CachedEnvironment cached = cacheable ? this.cache.get(cacheKey) : null;
+		if (cached != null && Objects.equals(version, cached.version)
+				&& (versionKey != null || now - cached.expires < 0)) {
+			return Environments.copy(cached.environment);
+		}
+		List<Map<?, ?>> sources = entries(keys);
+		Environment environment = new Environment(application, profiles, label,
+				version != null ? version : digest(sources), null);
+		for (int i = 0; i < keys.size(); i++) {
+			environment.add(new PropertySource("redis:" + keys.get(i), sources.get(i)));
+		}
+		if (cacheable && this.changes.get() == changes) {
+			if (this.cache.size() >= MAX_CACHED_ENVIRONMENTS && !this.cache.containsKey(cacheKey)) {
+				this.cache.clear();
+			}
+			this.cache.put(cacheKey, new CachedEnvironment(version, keys, Environments.copy(environment),
+					now + this.properties.getCacheTimeToLive().toNanos()));
+		}
 		return environment;
 	}
 
+	/**
+	 * Called for a keyspace notification. Only the events of a hash being written or
+	 * removed are handled.
+	 * @param key the key of the notification
+	 * @param event the event, such as {@code hset}
+	 */
+	public void keyspaceNotification(String key, String event) {
+		if (HASH_EVENTS.contains(event)) {
+			keyChanged(key);
+		}
+	}
+
+	/**
+	 * Called when a key changed in Redis, for instance from a keyspace notification.
+	 * Drops the cached environments read from the key and publishes an
+	 * {@link EnvironmentRepositoryChangedEvent}, together with the other keys that changed
+	 * within the {@link RedisEnvironmentProperties#getNotificationDelay() notification
+	 * delay}. Keys that were not read since the server started are ignored.
+	 * @param key the key that changed
+	 */
+	public void keyChanged(String key) {
+		if (key.equals(this.properties.getVersionKey()) || !this.watchingAllKeys && !this.watchedKeys.contains(key)) {
+			return;
+		}
+		this.changes.incrementAndGet();
+		this.cache.values().removeIf(cached -> cached.keys.contains(key));
+		if (this.applicationEventPublisher != null) {
+			publishLater(key);
+		}
+	}
+
+	/**
+	 * Whether the server publishes the keyspace events of hashes, read once from its
+	 * {@code notify-keyspace-events} setting. Some managed services do not allow reading
+	 * the setting, in which case it is assumed to be enabled and the cached environments
+	 * are only bounded by their time to live.
+	 */
+	private boolean keyspaceEventsEnabled() {
+		Boolean enabled = this.keyspaceEventsEnabled;
+		if (enabled == null) {
+			enabled = checkKeyspaceEvents();
+			this.keyspaceEventsEnabled = enabled;
+		}
+		return enabled;
+	}
+
+	private boolean checkKeyspaceEvents() {
+		String flags;
+		try {
+			Properties config = this.redis.execute((RedisCallback<Properties>) connection -> connection
+					.serverCommands().getConfig(NOTIFY_KEYSPACE_EVENTS));
+			flags = config != null ? config.getProperty(NOTIFY_KEYSPACE_EVENTS) : null;
+		}
+		catch (RuntimeException e) {
+			logger.warn("Cannot read " + NOTIFY_KEYSPACE_EVENTS + " from Redis, environments are cached for at most "
+					+ this.properties.getCacheTimeToLive(), e);
+			return true;
+		}
+		if (flags == null) {
+			logger.warn("Cannot read " + NOTIFY_KEYSPACE_EVENTS + " from Redis, environments are cached for at most "
+					+ this.properties.getCacheTimeToLive());
+			return true;
+		}
+		// K for keyspace events, with A (all) or h (hashes) and g (generic, such as del)
+		boolean enabled = flags.contains("K") && (flags.contains("A") || flags.contains("h") && flags.contains("g"));
+		if (!enabled) {
+			logger.warn("Redis does not publish the keyspace events of hashes (" + NOTIFY_KEYSPACE_EVENTS + "=\""
+					+ flags + "\"), so environments are not cached");
+		}
+		return enabled;
+	}
+
+	private void watch(List<String> keys) {
+		if (!this.watchingAllKeys && this.watchedKeys.addAll(keys) && this.watchedKeys.size() > MAX_WATCHED_KEYS) {
+			// Too many to tell apart, so all the keys are treated as read
+			this.watchingAllKeys = true;
+			this.watchedKeys.clear();
+		}
+	}
+
+	private void publishLater(String key) {
+		boolean first;
+		synchronized (this.pendingChanges) {
+			first = this.pendingChanges.isEmpty();
+			this.pendingChanges.add(key);
+		}
+		if (first) {
+			long delay = this.properties.getNotificationDelay().toMillis();
+			if (delay > 0) {
+				CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(this::publishChanges);
+			}
+			else {
+				publishChanges();
+			}
+		}
+	}
+
+	private void publishChanges() {
+		String[] paths;
+		synchronized (this.pendingChanges) {
+			paths = this.pendingChanges.toArray(new String[0]);
+			this.pendingChanges.clear();
+		}
+		this.applicationEventPublisher.publishEvent(new EnvironmentRepositoryChangedEvent(this, paths));
+	}
+
 	private List<String> addKeys(String application, List<String> profiles) {
+		List<String> applications = new ArrayList<>();
+		applications.add(application);
+		String defaultApplication = this.properties.getDefaultApplicationName();
+		if (StringUtils.hasText(defaultApplication) && !defaultApplication.equals(application)) {
+			applications.add(defaultApplication);
+		}
 		List<String> keys = new ArrayList<>();
-		keys.add(application);
-		for (String profile : profiles) {
-			keys.add(application + "-" + profile);
+		List<String> reversed = new ArrayList<>(profiles);
+		Collections.reverse(reversed);
+		for (String profile : reversed) {
+			for (String app : applications) {
+				keys.add(app + "-" + profile);
+			}
 		}
-		Collections.reverse(keys);
+		keys.addAll(applications);
 		return keys;
 	}
 
+	/**
+	 * Read the hashes of all the keys in a single pipeline, so a request costs one round
+	 * trip whatever the number of profiles.
+	 */
+	private List<Map<?, ?>> entries(List<String> keys) {
+		RedisSerializer<String> serializer = this.redis.getStringSerializer();
+		List<Object> results = this.redis.executePipelined((RedisCallback<Object>) connection -> {
+			for (String key : keys) {
+				connection.hashCommands().hGetAll(serializer.serialize(key));
+			}
+			return null;
+		});
+		List<Map<?, ?>> sources = new ArrayList<>(keys.size());
+		for (Object result : results) {
+			sources.add(result instanceof Map ? (Map<?, ?>) result : Collections.emptyMap());
+		}
+		return sources;
+	}
+
+	/**
+	 * Read the versions of all the keys from the version hash in a single command.
+	 */
+	private String versions(String versionKey, List<String> keys) {
+		List<Object> versions = this.redis.opsForHash().multiGet(versionKey, new ArrayList<>(keys));
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < keys.size(); i++) {
+			Object version = versions != null && i < versions.size() ? versions.get(i) : null;
+			builder.append(keys.get(i)).append('=').append(version != null ? version : "0").append('\n');
+		}
+		return DigestUtils.md5DigestAsHex(builder.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String digest(List<Map<?, ?>> sources) {
+		StringBuilder builder = new StringBuilder();
+		for (Map<?, ?> source : sources) {
+			// Hash fields have no defined order
+			Map<String, String> sorted = new TreeMap<>();
+			source.forEach((name, value) -> sorted.put(String.valueOf(name), String.valueOf(value)));
+			builder.append(sorted).append('\n');
+		}
+		return DigestUtils.md5DigestAsHex(builder.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
 	@Override
 	public int getOrder() {
 		return order;
 	}
 
+	private static final class CachedEnvironment {
+
+		private final String version;
+
+		private final List<String> keys;
+
+		private final Environment environment;
+
+		private final long expires;
+
+		private CachedEnvironment(String version, List<String> keys, Environment environment, long expires) {
+			this.version = version;
+			this.keys = keys;
+			this.environment = environment;
+			this.expires = expires;
+		}
+
+	}
+
 }
@@ -22,6 +22,8 @@ import java.util.List;
 
 import io.micrometer.observation.ObservationRegistry;
 
+import org.springframework.core.io.Resource;
+
 /**
  * A {@link CompositeEnvironmentRepository} which implements {@link SearchPathLocator}.
  *
@@ -45,14 +47,23 @@ public class SearchPathCompositeEnvironmentRepository extends CompositeEnvironme
 	@Override
 	public Locations getLocations(String application, String profile, String label) {
 		List<String> locations = new ArrayList<>();
+		String version = null;
 		for (EnvironmentRepository repo : this.environmentRepositories) {
 			try {
+				Locations found = null;
 				if (repo instanceof SearchPathLocator searchPathLocator) {
-					addForSearchPathLocators(application, profile, label, locations, searchPathLocator);
+					found = searchPathLocator.getLocations(application, profile, label);
 				}
 				else if (repo instanceof ObservationEnvironmentRepositoryWrapper wrapper
 						&& wrapper.getDelegate() instanceof SearchPathLocator searchPathLocator) {
-					addForSearchPathLocators(application, profile, label, locations, searchPathLocator);
+					found = searchPathLocator.getLocations(application, profile, label);
+				}
+				if (found != null) {
+					locations.addAll(Arrays.asList(found.getLocations()));
+					// like findOne, a single repository gives its version to the composite
+					if (this.environmentRepositories.size() == 1) {
+						version = found.getVersion();
+					}
 				}
 			}
 			catch (RepositoryException ex) {
@@ -64,12 +75,38 @@ public class SearchPathCompositeEnvironmentRepository extends CompositeEnvironme
 				}
 			}
 		}
-		return new Locations(application, profile, label, null, locations.toArray(new String[locations.size()]));
+		return new Locations(application, profile, label, version, locations.toArray(new String[locations.size()]));
 	}
 
-	private void addForSearchPathLocators(String application, String profile, String label, List<String> locations,
-			SearchPathLocator searchPathLocator) {
-		locations.addAll(Arrays.asList(searchPathLocator.getLocations(application, profile, label).getLocations()));
+	@Override
+	public boolean isCurrent(Locations locations) {
+		SearchPathLocator locator = getSingleLocator();
+		return locator == null || locator.isCurrent(locations);
+	}
+
+	@Override
+	public Resource snapshot(Locations locations, Resource resource) {
+		SearchPathLocator locator = getSingleLocator();
+		return locator != null ? locator.snapshot(locations, resource) : resource;
+	}
+
+	/**
+	 * The locator of the only repository, whose locations are those of the composite, or
+	 * null if there are several repositories (or the only one has no locations).
+	 */
+	private SearchPathLocator getSingleLocator() {
+		if (this.environmentRepositories.size() != 1) {
+			return null;
+		}
+		EnvironmentRepository repo = this.environmentRepositories.get(0);
+		if (repo instanceof SearchPathLocator searchPathLocator) {
+			return searchPathLocator;
+		}
+		if (repo instanceof ObservationEnvironmentRepositoryWrapper wrapper
+				&& wrapper.getDelegate() instanceof SearchPathLocator searchPathLocator) {
+			return searchPathLocator;
+		}
+		return null;
 	}
 
 }
@@ -19,6 +19,8 @@ package org.springframework.cloud.config.server.environment;
 import java.util.Arrays;
 import java.util.Objects;
 
+import org.springframework.core.io.Resource;
+
 /**
  * Strategy for locating a search path for resource (e.g. in the file system or
  * classpath).
@@ -30,6 +32,31 @@ public interface SearchPathLocator {
 
 	Locations getLocations(String application, String profile, String label);
 
+	/**
+	 * Whether the files at the locations still belong to the version they were returned
+	 * with. Locators that check every label out into the same place (JGit for example)
+	 * can tell whether another version has been checked out since, so that callers know
+	 * whether they can trust what they just read.
+	 * @param locations locations returned by this locator
+	 * @return false if the files may belong to another version by now
+	 */
+	default boolean isCurrent(Locations locations) {
+		return true;
+	}
+
+	/**
+	 * A resource found at the locations, with the content of the version they were
+	 * returned with. Locators that check every label out into the same place (JGit for
+	 * example) read it from their own store, so that it can be read while other labels
+	 * are checked out.
+	 * @param locations locations returned by this locator
+	 * @param resource a resource found at the locations
+	 * @return the resource as of the version of the locations
+	 */
+	default Resource snapshot(Locations locations, Resource resource) {
+		return resource;
+	}
+
 	/**
 	 * Locations POJO.
 	 */
@@ -21,11 +21,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import org.springframework.cloud.config.server.config.ConfigServerProperties;
 import org.springframework.cloud.config.server.environment.SearchPathLocator;
+import org.springframework.cloud.config.server.environment.SearchPathLocator.Locations;
 import org.springframework.cloud.config.server.support.PathUtils;
 import org.springframework.context.ResourceLoaderAware;
 import org.springframework.core.io.Resource;
@@ -34,15 +39,37 @@ import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 /**
- * An {@link ResourceRepository} backed by a {@link SearchPathLocator}.
+ * An {@link ResourceRepository} backed by a {@link SearchPathLocator}. Lookups are not
+ * synchronized: each call resolves the requested path against the {@link Locations}
+ * returned by the locator for that label, and returns the locator's
+ * {@link SearchPathLocator#snapshot(Locations, Resource) snapshot} of the resource, so
+ * that it keeps the content of that version while other labels are checked out. If the
+ * locator says the files moved to another version while they were probed, the lookup is
+ * tried again. When the locations have a version, resolved paths and misses are
+ * remembered for that label and version, so repeated lookups (including 404s) do not
+ * probe the file system again.
  *
  * @author Dave Syer
  */
 public class GenericResourceRepository implements ResourceRepository, ResourceLoaderAware {
 
-	private ResourceLoader resourceLoader;
+	private static final int MAX_INDEXES = 256;
 
-	private SearchPathLocator service;
+	private static final int MAX_INDEX_ENTRIES = 1024;
+
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final Map<List<Object>, ResourceIndex> indexes = Collections
+			.synchronizedMap(new LinkedHashMap<List<Object>, ResourceIndex>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<List<Object>, ResourceIndex> eldest) {
+					return size() > MAX_INDEXES;
+				}
+			});
+
+	private volatile ResourceLoader resourceLoader;
+
+	private final SearchPathLocator service;
 
 	private ConfigServerProperties properties;
 
@@ -61,38 +88,78 @@ public class GenericResourceRepository implements ResourceRepository, ResourceLo
 	}
 
 	@Override
-	public synchronized Resource findOne(String application, String profile, String label, String path) {
+	public Resource findOne(String application, String profile, String label, String path) {
 
 		if (StringUtils.hasText(path)) {
-			String[] locations = this.service.getLocations(application, profile, label).getLocations();
-			if (!ObjectUtils.isEmpty(properties) && properties.isReverseLocationOrder()) {
-				Collections.reverse(Arrays.asList(locations));
-			}
-			ArrayList<Resource> locationResources = new ArrayList<>();
-			for (String location : locations) {
-				if (!PathUtils.isInvalidEncodedLocation(location)) {
-					locationResources.add(this.resourceLoader.getResource(location.replaceFirst("optional:", "")));
+			for (int attempt = 1;; attempt++) {
+				Locations snapshot = this.service.getLocations(application, profile, label);
+				List<String> locations = new ArrayList<>(Arrays.asList(snapshot.getLocations()));
+				if (!ObjectUtils.isEmpty(properties) && properties.isReverseLocationOrder()) {
+					// reverse a copy, the snapshot may be shared with other requests
+					Collections.reverse(locations);
+				}
+				ResourceIndex index = getIndex(snapshot, locations);
+				String key = profile + ":" + path;
+				Optional<Resource> indexed = index == null ? null : index.get(key);
+				if (indexed == null) {
+					Resource resource = resolve(locations, profile, path);
+					// Another label may have been checked out into the same files meanwhile
+					boolean current = this.service.isCurrent(snapshot);
+					if (!current && attempt < MAX_ATTEMPTS) {
+						continue;
+					}
+					indexed = Optional.ofNullable(resource).map(found -> this.service.snapshot(snapshot, found));
+					if (index != null && current) {
+						index.put(key, indexed);
+					}
+				}
+				if (indexed.isPresent()) {
+					return indexed.get();
 				}
+				break;
+			}
+		}
+		throw new NoSuchResourceException("Not found: " + path);
+	}
+
+	private Resource resolve(List<String> locations, String profile, String path) {
+		ArrayList<Resource> locationResources = new ArrayList<>();
+		for (String location : locations) {
+			if (!PathUtils.isInvalidEncodedLocation(location)) {
+				locationResources.add(this.resourceLoader.getResource(location.replaceFirst("optional:", "")));
 			}
+		}
 
-			try {
-				for (Resource location : locationResources) {
-					for (String local : getProfilePaths(profile, path)) {
-						if (!PathUtils.isInvalidPath(local) && !PathUtils.isInvalidEncodedPath(local)) {
-							Resource file = location.createRelative(local);
-							if (file.exists() && file.isReadable()
-									&& PathUtils.checkResource(file, location, locationResources)) {
-								return file;
-							}
+		try {
+			for (Resource location : locationResources) {
+				for (String local : getProfilePaths(profile, path)) {
+					if (!PathUtils.isInvalidPath(local) && !PathUtils.isInvalidEncodedPath(local)) {
+						Resource file = location.createRelative(local);
+						if (file.exists() && file.isReadable()
+								&& PathUtils.checkResource(file, location, locationResources)) {
+							return file;
 						}
 					}
 				}
 			}
-			catch (IOException e) {
-				throw new NoSuchResourceException("Error : " + path + ". (" + e.getMessage() + ")");
-			}
 		}
-		throw new NoSuchResourceException("Not found: " + path);
+		catch (IOException e) {
+			throw new NoSuchResourceException("Error : " + path + ". (" + e.getMessage() + ")");
+		}
+		return null;
+	}
+
+	/**
+	 * The index of resolved paths for the label, version and search locations, or null if
+	 * the locations have no version (and so may change at any time). The least recently
+	 * used indexes are dropped first, so alternating labels keep their own index.
+	 */
+	private ResourceIndex getIndex(Locations snapshot, List<String> locations) {
+		if (snapshot.getVersion() == null) {
+			return null;
+		}
+		List<Object> key = Arrays.asList(snapshot.getLabel(), snapshot.getVersion(), locations);
+		return this.indexes.computeIfAbsent(key, k -> new ResourceIndex());
 	}
 
 	private Collection<String> getProfilePaths(String profiles, String path) {
@@ -118,4 +185,27 @@ public class GenericResourceRepository implements ResourceRepository, ResourceLo
 		return paths;
 	}
 
+	/**
+	 * Resolved paths (or misses) for one version of a set of search locations.
+	 */
+	private static final class ResourceIndex {
+
+		private final Map<String, Optional<Resource>> entries = Collections
+				.synchronizedMap(new LinkedHashMap<String, Optional<Resource>>(16, 0.75f, true) {
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, Optional<Resource>> eldest) {
+						return size() > MAX_INDEX_ENTRIES;
+					}
+				});
+
+		Optional<Resource> get(String key) {
+			return this.entries.get(key);
+		}
+
+		void put(String key, Optional<Resource> resource) {
+			this.entries.put(key, resource);
+		}
+
+	}
+
 }
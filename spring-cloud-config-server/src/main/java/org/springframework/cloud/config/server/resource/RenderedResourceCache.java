@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.util.DigestUtils;
+
+/**
+ * A bounded, least recently used cache of plain text resources after placeholder
+ * resolution and decryption. Entries are keyed on the resource, its last modified time
+ * and the version of the {@link Environment} used to render it, so a new commit or a
+ * changed file simply misses the cache. Environments without a version cannot be told
+ * apart and are never cached.
+ */
+class RenderedResourceCache {
+
+	private final Map<Key, RenderedResource> cache;
+
+	RenderedResourceCache(int maxSize) {
+		this.cache = Collections.synchronizedMap(new LinkedHashMap<Key, RenderedResource>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, RenderedResource> eldest) {
+				return size() > maxSize;
+			}
+		});
+	}
+
+	/**
+	 * Create a cache key for the rendered resource, or null if the result cannot be
+	 * cached (no environment version or no last modified time for the resource).
+	 */
+	Key key(String name, String profile, String label, Resource resource, Environment environment,
+			boolean resolvePlaceholders) {
+		if (environment == null || environment.getVersion() == null) {
+			return null;
+		}
+		long lastModified;
+		try {
+			lastModified = resource.lastModified();
+		}
+		catch (Exception e) {
+			return null;
+		}
+		return new Key(name, profile, label, resource.getDescription(), lastModified, environment.getVersion(),
+				resolvePlaceholders);
+	}
+
+	RenderedResource get(Key key) {
+		return this.cache.get(key);
+	}
+
+	RenderedResource put(Key key, String text) {
+		RenderedResource rendered = new RenderedResource(text);
+		this.cache.put(key, rendered);
+		return rendered;
+	}
+
+	int size() {
+		return this.cache.size();
+	}
+
+	static final class Key {
+
+		private final String name;
+
+		private final String profile;
+
+		private final String label;
+
+		private final String resource;
+
+		private final long lastModified;
+
+		private final String version;
+
+		private final boolean resolvePlaceholders;
+
+		private Key(String name, String profile, String label, String resource, long lastModified, String version,
+				boolean resolvePlaceholders) {
+			this.name = name;
+			this.profile = profile;
+			this.label = label;
+			this.resource = resource;
+			this.lastModified = lastModified;
+			this.version = version;
+			this.resolvePlaceholders = resolvePlaceholders;
+		}
+
+		long getLastModified() {
+			return this.lastModified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			Key other = (Key) o;
+			return this.lastModified == other.lastModified && this.resolvePlaceholders == other.resolvePlaceholders
+					&& Objects.equals(this.name, other.name) && Objects.equals(this.profile, other.profile)
+					&& Objects.equals(this.label, other.label) && Objects.equals(this.resource, other.resource)
+					&& Objects.equals(this.version, other.version);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.name, this.profile, this.label, this.resource, this.lastModified, this.version,
+					this.resolvePlaceholders);
+		}
+
+	}
+
+	static final class RenderedResource {
+
+		private final String text;
+
+		private final String etag;
+
+		private RenderedResource(String text) {
+			this.text = text;
+			this.etag = "\"" + DigestUtils.md5DigestAsHex(text.getBytes(StandardCharsets.UTF_8)) + "\"";
+		}
+
+		String getText() {
+			return this.text;
+		}
+
+		String getEtag() {
+			return this.etag;
+		}
+
+	}
+
+}
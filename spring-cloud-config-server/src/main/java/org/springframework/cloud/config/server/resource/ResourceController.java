@@ -29,7 +29,10 @@ import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.server.encryption.ResourceEncryptor;
 import org.springframework.cloud.config.server.environment.EnvironmentRepository;
 import org.springframework.cloud.config.server.environment.NoSuchLabelException;
+import org.springframework.cloud.config.server.environment.SearchPathLocator;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.util.StreamUtils;
@@ -78,6 +81,8 @@ public class ResourceController {
 
 	private boolean plainTextEncryptEnabled = false;
 
+	private volatile RenderedResourceCache renderedResources;
+
 	public ResourceController(ResourceRepository resourceRepository, EnvironmentRepository environmentRepository,
 			Map<String, ResourceEncryptor> resourceEncryptorMap) {
 		this.resourceRepository = resourceRepository;
@@ -100,6 +105,17 @@ public class ResourceController {
 		this.plainTextEncryptEnabled = plainTextEncryptEnabled;
 	}
 
+	/**
+	 * Set the maximum number of rendered plain text resources to cache. Rendered text is
+	 * only cached for environments that have a version, and is keyed on that version and
+	 * the last modified time of the resource. Zero (the default) disables the cache.
+	 * @param renderedResourceCacheSize the maximum number of cached resources
+	 */
+	public void setRenderedResourceCacheSize(int renderedResourceCacheSize) {
+		this.renderedResources = renderedResourceCacheSize > 0 ? new RenderedResourceCache(renderedResourceCacheSize)
+				: null;
+	}
+
 	@GetMapping("/{name}/{profile}/{label}/**")
 	public String retrieve(@PathVariable String name, @PathVariable String profile, @PathVariable String label,
 			ServletWebRequest request, @RequestParam(defaultValue = "true") boolean resolvePlaceholders)
@@ -129,11 +145,12 @@ public class ResourceController {
 	}
 
 	/**
-	 * This method is synchronized because the underlying EnvironmentRespositorys may not
-	 * be threadsafe (JGit for example). Calling this method could result in an update to
-	 * the files on disk.
+	 * Requests run concurrently, so one slow request does not block other resource
+	 * downloads. Repositories that check every label out into the same files on disk
+	 * (JGit for example) return a snapshot of the resource for its label, so it can be
+	 * read while another label is checked out.
 	 */
-	synchronized String retrieve(ServletWebRequest request, String name, String profile, String label, String path,
+	String retrieve(ServletWebRequest request, String name, String profile, String label, String path,
 			boolean resolvePlaceholders) throws IOException {
 		name = Environment.normalize(name);
 		label = Environment.normalize(label);
@@ -142,6 +159,26 @@ public class ResourceController {
 			// Content was not modified. Just return.
 			return null;
 		}
+		Environment environment = this.environmentRepository.findOne(name, profile, label, false);
+		RenderedResourceCache cache = this.renderedResources;
+		RenderedResourceCache.Key key = cache == null ? null
+				: cache.key(name, profile, label, resource, environment, resolvePlaceholders);
+		if (key == null) {
+			return render(resource, environment, resolvePlaceholders);
+		}
+		RenderedResourceCache.RenderedResource rendered = cache.get(key);
+		if (rendered == null) {
+			rendered = cache.put(key, render(resource, environment, resolvePlaceholders));
+		}
+		if (checkNotModified(request, rendered.getEtag(), key.getLastModified())) {
+			// Rendered content was not modified. Just return.
+			return null;
+		}
+		return rendered.getText();
+	}
+
+	private String render(Resource resource, Environment environment, boolean resolvePlaceholders)
+			throws IOException {
 		// ensure InputStream will be closed to prevent file locks on Windows
 		try (InputStream is = resource.getInputStream()) {
 			String text = StreamUtils.copyToString(is, Charset.forName("UTF-8"));
@@ -149,7 +186,6 @@ public class ResourceController {
 			if (ext != null) {
 				ext = ext.toLowerCase();
 			}
-			Environment environment = this.environmentRepository.findOne(name, profile, label, false);
 			if (resolvePlaceholders) {
 				text = resolvePlaceholders(prepareEnvironment(environment), text);
 			}
@@ -175,7 +211,7 @@ public class ResourceController {
 	}
 
 	@GetMapping(value = "/{name}/{profile}/{label}/**", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-	public byte[] binary(@PathVariable String name, @PathVariable String profile, @PathVariable String label,
+	public Resource binary(@PathVariable String name, @PathVariable String profile, @PathVariable String label,
 			ServletWebRequest request) throws IOException {
 		String path = getFilePath(request, name, profile, label);
 		return binary(request, name, profile, label, path);
@@ -183,7 +219,7 @@ public class ResourceController {
 
 	@GetMapping(value = "/{name}/{profile}/{path:.*}", params = "useDefaultLabel",
 			produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-	public byte[] binaryDefault(@PathVariable String name, @PathVariable String profile, @PathVariable String path,
+	public Resource binaryDefault(@PathVariable String name, @PathVariable String profile, @PathVariable String path,
 			ServletWebRequest request) throws IOException {
 		return binary(request, name, profile, null, path);
 	}
@@ -192,11 +228,24 @@ public class ResourceController {
 	 * Used only for unit tests.
 	 */
 	byte[] binary(String name, String profile, String label, String path) throws IOException {
-		return binary(null, name, profile, label, path);
+		Resource resource = binary(null, name, profile, label, path);
+		// ensure InputStream will be closed to prevent file locks on Windows
+		try (InputStream is = resource.getInputStream()) {
+			return StreamUtils.copyToByteArray(is);
+		}
 	}
 
-	private synchronized byte[] binary(ServletWebRequest request, String name, String profile, String label,
-			String path) throws IOException {
+	/**
+	 * Binary resources are not templated, so there is no need to build an
+	 * {@link Environment} for them: locating the resource goes through the
+	 * {@link SearchPathLocator} which already refreshes the label. The resource itself is
+	 * returned so that it is streamed to the client rather than buffered in memory, and
+	 * so that Spring MVC can answer {@code Range} requests with partial content. Nothing
+	 * is held while it is streamed: repositories that check every label out into the same
+	 * files (JGit for example) return a snapshot that keeps the content of its label.
+	 */
+	private Resource binary(ServletWebRequest request, String name, String profile, String label, String path)
+			throws IOException {
 		name = Environment.normalize(name);
 		label = Environment.normalize(label);
 		Resource resource = this.resourceRepository.findOne(name, profile, label, path);
@@ -204,10 +253,31 @@ public class ResourceController {
 			// Content was not modified. Just return.
 			return null;
 		}
-		// TODO: is this line needed for side effects?
-		prepareEnvironment(this.environmentRepository.findOne(name, profile, label));
-		try (InputStream is = resource.getInputStream()) {
-			return StreamUtils.copyToByteArray(is);
+		if (!checkIfRange(request, resource)) {
+			// The client's partial copy is stale so the Range header has to be ignored,
+			// and an InputStreamResource is always sent in full
+			resource = new InputStreamResource(resource.getInputStream(), resource.getDescription());
+		}
+		return resource;
+	}
+
+	/**
+	 * Check whether a {@code Range} request may be honoured. An {@code If-Range} header
+	 * with a date matches if the resource has not been modified since then; entity tags
+	 * never match because binary resources are not served with strong validators.
+	 */
+	private boolean checkIfRange(ServletWebRequest request, Resource resource) {
+		if (request == null || request.getHeader(HttpHeaders.RANGE) == null
+				|| !StringUtils.hasText(request.getHeader(HttpHeaders.IF_RANGE))) {
+			return true;
+		}
+		try {
+			long ifRange = request.getRequest().getDateHeader(HttpHeaders.IF_RANGE);
+			return resource.lastModified() / 1000 == ifRange / 1000;
+		}
+		catch (Exception ex) {
+			// Not a date (so an entity tag) or no timestamp for the resource
+			return false;
 		}
 	}
 
@@ -221,6 +291,16 @@ public class ResourceController {
 		return false;
 	}
 
+	private boolean checkNotModified(ServletWebRequest request, String etag, long lastModified) {
+		try {
+			return request != null && request.checkNotModified(etag, lastModified);
+		}
+		catch (Exception ex) {
+			// Ignore the exception since caching is optional.
+		}
+		return false;
+	}
+
 	@ExceptionHandler(NoSuchResourceException.class)
 	@ResponseStatus(HttpStatus.NOT_FOUND)
 	public void notFound(NoSuchResourceException e) {
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.support;
+
+import java.util.function.Supplier;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Helpers for work that runs on another thread on behalf of an HTTP request, so that
+ * request scoped beans (for example a Vault token taken from the request headers) are
+ * still available there.
+ */
+public final class RequestContextSupport {
+
+	private RequestContextSupport() {
+	}
+
+	/**
+	 * Wrap the supplier so that it runs with the request attributes of the calling
+	 * thread.
+	 * @param supplier the supplier to wrap
+	 * @param <T> the result type
+	 * @return a supplier that can run on another thread
+	 */
+	public static <T> Supplier<T> withRequestAttributes(Supplier<T> supplier) {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes == null) {
+			return supplier;
+		}
+		return () -> getWith(attributes, supplier);
+	}
+
+	/**
+	 * Wrap the supplier so that it runs with a copy of the calling thread's request,
+	 * taken now. Unlike {@link #withRequestAttributes(Supplier)} this
+	 * is safe for work that may outlive the request: once a request has completed the
+	 * container recycles it for another client, so its live attributes must not be read
+	 * any more. The supplier sees a copy of the request, with its headers, attributes and
+	 * parameters but no session or body.
+	 * @param supplier the supplier to wrap
+	 * @param <T> the result type
+	 * @return a supplier that can run on another thread, during or after the request
+	 */
+	public static <T> Supplier<T> withRequestSnapshot(Supplier<T> supplier) {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+			return supplier;
+		}
+		ServletRequestAttributes snapshot = new ServletRequestAttributes(
+				new RequestSnapshot(servletAttributes.getRequest()));
+		return () -> getWith(snapshot, supplier);
+	}
+
+	private static <T> T getWith(RequestAttributes attributes, Supplier<T> supplier) {
+		RequestAttributes previous = RequestContextHolder.getRequestAttributes();
+		RequestContextHolder.setRequestAttributes(attributes);
+		try {
+			return supplier.get();
+		}
+		finally {
+			RequestContextHolder.setRequestAttributes(previous);
+		}
+	}
+
+	/**
+	 * @param name the name of the header
+	 * @return the header of the current HTTP request, or null if there is no request or
+	 * no such header
+	 */
+	public static String getRequestHeader(String name) {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes instanceof ServletRequestAttributes servletAttributes) {
+			return servletAttributes.getRequest().getHeader(name);
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,544 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.support;
+
+import java.io.BufferedReader;
+import java.security.Principal;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.ServletConnection;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpUpgradeHandler;
+import jakarta.servlet.http.Part;
+
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+/**
+ * A copy of an {@link HttpServletRequest}, taken while the request is being handled, that
+ * can be read after the container has recycled the request for another client. The
+ * headers, attributes, parameters and the details of the request line and connection
+ * are copied. There is no session and no body, and the operations that need the live
+ * request (such as dispatching, going async or logging in) are not supported.
+ */
+final class RequestSnapshot implements HttpServletRequest {
+
+	private final Map<String, List<String>> headers = new LinkedCaseInsensitiveMap<>();
+
+	private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+	private final Map<String, String[]> parameters = new LinkedHashMap<>();
+
+	private final String method;
+
+	private final String requestUri;
+
+	private final String requestUrl;
+
+	private final String contextPath;
+
+	private final String servletPath;
+
+	private final String pathInfo;
+
+	private final String pathTranslated;
+
+	private final String queryString;
+
+	private final String protocol;
+
+	private final String scheme;
+
+	private final String serverName;
+
+	private final int serverPort;
+
+	private final boolean secure;
+
+	private final String remoteAddr;
+
+	private final String remoteHost;
+
+	private final int remotePort;
+
+	private final String localName;
+
+	private final String localAddr;
+
+	private final int localPort;
+
+	private final List<Locale> locales;
+
+	private volatile String characterEncoding;
+
+	private final String contentType;
+
+	private final long contentLength;
+
+	private final Cookie[] cookies;
+
+	private final String authType;
+
+	private final String remoteUser;
+
+	private final Principal userPrincipal;
+
+	private final String requestId;
+
+	private final String protocolRequestId;
+
+	private final ServletContext servletContext;
+
+	RequestSnapshot(HttpServletRequest request) {
+		for (String name : Collections.list(request.getHeaderNames())) {
+			this.headers.put(name, Collections.list(request.getHeaders(name)));
+		}
+		for (String name : Collections.list(request.getAttributeNames())) {
+			Object value = request.getAttribute(name);
+			if (value != null) {
+				this.attributes.put(name, value);
+			}
+		}
+		request.getParameterMap().forEach((name, values) -> this.parameters.put(name, values.clone()));
+		this.method = request.getMethod();
+		this.requestUri = request.getRequestURI();
+		StringBuffer url = request.getRequestURL();
+		this.requestUrl = url != null ? url.toString() : null;
+		this.contextPath = request.getContextPath();
+		this.servletPath = request.getServletPath();
+		this.pathInfo = request.getPathInfo();
+		this.pathTranslated = request.getPathTranslated();
+		this.queryString = request.getQueryString();
+		this.protocol = request.getProtocol();
+		this.scheme = request.getScheme();
+		this.serverName = request.getServerName();
+		this.serverPort = request.getServerPort();
+		this.secure = request.isSecure();
+		this.remoteAddr = request.getRemoteAddr();
+		this.remoteHost = request.getRemoteHost();
+		this.remotePort = request.getRemotePort();
+		this.localName = request.getLocalName();
+		this.localAddr = request.getLocalAddr();
+		this.localPort = request.getLocalPort();
+		this.locales = Collections.list(request.getLocales());
+		this.characterEncoding = request.getCharacterEncoding();
+		this.contentType = request.getContentType();
+		this.contentLength = request.getContentLengthLong();
+		Cookie[] cookies = request.getCookies();
+		this.cookies = cookies != null ? cookies.clone() : null;
+		this.authType = request.getAuthType();
+		this.remoteUser = request.getRemoteUser();
+		this.userPrincipal = request.getUserPrincipal();
+		this.requestId = request.getRequestId();
+		this.protocolRequestId = request.getProtocolRequestId();
+		this.servletContext = request.getServletContext();
+	}
+
+	@Override
+	public String getHeader(String name) {
+		List<String> values = this.headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String name) {
+		return Collections.enumeration(this.headers.getOrDefault(name, Collections.emptyList()));
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		return Collections.enumeration(new ArrayList<>(this.headers.keySet()));
+	}
+
+	@Override
+	public long getDateHeader(String name) {
+		String value = getHeader(name);
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		}
+		catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Cannot parse " + name + " header as a date: " + value, e);
+		}
+	}
+
+	@Override
+	public int getIntHeader(String name) {
+		String value = getHeader(name);
+		return value != null ? Integer.parseInt(value) : -1;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return this.attributes.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(new ArrayList<>(this.attributes.keySet()));
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		if (value == null) {
+			this.attributes.remove(name);
+		}
+		else {
+			this.attributes.put(name, value);
+		}
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		this.attributes.remove(name);
+	}
+
+	@Override
+	public String getParameter(String name) {
+		String[] values = this.parameters.get(name);
+		return values != null && values.length > 0 ? values[0] : null;
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(this.parameters.keySet());
+	}
+
+	@Override
+	public String[] getParameterValues(String name) {
+		String[] values = this.parameters.get(name);
+		return values != null ? values.clone() : null;
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		return Collections.unmodifiableMap(this.parameters);
+	}
+
+	@Override
+	public String getMethod() {
+		return this.method;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return this.requestUri;
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+		return this.requestUrl != null ? new StringBuffer(this.requestUrl) : null;
+	}
+
+	@Override
+	public String getContextPath() {
+		return this.contextPath;
+	}
+
+	@Override
+	public String getServletPath() {
+		return this.servletPath;
+	}
+
+	@Override
+	public String getPathInfo() {
+		return this.pathInfo;
+	}
+
+	@Override
+	public String getPathTranslated() {
+		return this.pathTranslated;
+	}
+
+	@Override
+	public String getQueryString() {
+		return this.queryString;
+	}
+
+	@Override
+	public String getProtocol() {
+		return this.protocol;
+	}
+
+	@Override
+	public String getScheme() {
+		return this.scheme;
+	}
+
+	@Override
+	public String getServerName() {
+		return this.serverName;
+	}
+
+	@Override
+	public int getServerPort() {
+		return this.serverPort;
+	}
+
+	@Override
+	public boolean isSecure() {
+		return this.secure;
+	}
+
+	@Override
+	public String getRemoteAddr() {
+		return this.remoteAddr;
+	}
+
+	@Override
+	public String getRemoteHost() {
+		return this.remoteHost;
+	}
+
+	@Override
+	public int getRemotePort() {
+		return this.remotePort;
+	}
+
+	@Override
+	public String getLocalName() {
+		return this.localName;
+	}
+
+	@Override
+	public String getLocalAddr() {
+		return this.localAddr;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return this.localPort;
+	}
+
+	@Override
+	public Locale getLocale() {
+		return this.locales.isEmpty() ? Locale.getDefault() : this.locales.get(0);
+	}
+
+	@Override
+	public Enumeration<Locale> getLocales() {
+		return Collections.enumeration(this.locales.isEmpty() ? List.of(Locale.getDefault()) : this.locales);
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return this.characterEncoding;
+	}
+
+	@Override
+	public void setCharacterEncoding(String characterEncoding) {
+		this.characterEncoding = characterEncoding;
+	}
+
+	@Override
+	public String getContentType() {
+		return this.contentType;
+	}
+
+	@Override
+	public int getContentLength() {
+		return this.contentLength > Integer.MAX_VALUE ? -1 : (int) this.contentLength;
+	}
+
+	@Override
+	public long getContentLengthLong() {
+		return this.contentLength;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() {
+		throw new IllegalStateException("The body of the request is not available");
+	}
+
+	@Override
+	public BufferedReader getReader() {
+		throw new IllegalStateException("The body of the request is not available");
+	}
+
+	@Override
+	public Cookie[] getCookies() {
+		return this.cookies != null ? this.cookies.clone() : null;
+	}
+
+	@Override
+	public String getAuthType() {
+		return this.authType;
+	}
+
+	@Override
+	public String getRemoteUser() {
+		return this.remoteUser;
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		return this.userPrincipal;
+	}
+
+	@Override
+	public boolean isUserInRole(String role) {
+		return false;
+	}
+
+	@Override
+	public boolean authenticate(HttpServletResponse response) {
+		return false;
+	}
+
+	@Override
+	public void login(String username, String password) throws ServletException {
+		throw new ServletException("Cannot log in on a copy of a request");
+	}
+
+	@Override
+	public void logout() {
+	}
+
+	@Override
+	public HttpSession getSession(boolean create) {
+		return null;
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return null;
+	}
+
+	@Override
+	public String changeSessionId() {
+		throw new IllegalStateException("A copy of a request has no session");
+	}
+
+	@Override
+	public String getRequestedSessionId() {
+		return null;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromCookie() {
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromURL() {
+		return false;
+	}
+
+	@Override
+	public Collection<Part> getParts() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Part getPart(String name) {
+		return null;
+	}
+
+	@Override
+	public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) throws ServletException {
+		throw new ServletException("Cannot upgrade a copy of a request");
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(String path) {
+		return null;
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return this.servletContext;
+	}
+
+	@Override
+	public AsyncContext startAsync() {
+		throw new IllegalStateException("A copy of a request does not support async processing");
+	}
+
+	@Override
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+		throw new IllegalStateException("A copy of a request does not support async processing");
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		return false;
+	}
+
+	@Override
+	public boolean isAsyncSupported() {
+		return false;
+	}
+
+	@Override
+	public AsyncContext getAsyncContext() {
+		throw new IllegalStateException("A copy of a request does not support async processing");
+	}
+
+	@Override
+	public DispatcherType getDispatcherType() {
+		return DispatcherType.REQUEST;
+	}
+
+	@Override
+	public String getRequestId() {
+		return this.requestId;
+	}
+
+	@Override
+	public String getProtocolRequestId() {
+		return this.protocolRequestId;
+	}
+
+	@Override
+	public ServletConnection getServletConnection() {
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "Copy of request " + this.method + " " + this.requestUri;
+	}
+
+}
@@ -16,9 +16,13 @@
 
 package org.springframework.cloud.config.server.encryption;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -119,4 +123,67 @@ public class CipherEnvironmentEncryptorTests {
 				.isEqualTo(secret);
 	}
 
+	@ParameterizedTest
+	@MethodSource("params")
+	public void shouldDecryptEachCipherTextOnceWithCache(String salt, String key) {
+		TextEncryptor textEncryptor = new EncryptorFactory(salt).create(key);
+		AtomicInteger locates = new AtomicInteger();
+		CipherEnvironmentEncryptor encryptor = new CipherEnvironmentEncryptor(keys -> {
+			locates.incrementAndGet();
+			return textEncryptor;
+		});
+		DecryptedValueCache cache = new DecryptedValueCache(10, Duration.ofMinutes(1));
+		encryptor.setDecryptedValueCache(cache);
+		// given
+		String secret = randomUUID().toString();
+		Environment environment = new Environment("name", "profile", "label");
+		environment.add(new PropertySource("a", Collections.<Object, Object>singletonMap(environment.getName(),
+				"{cipher}" + textEncryptor.encrypt(secret))));
+
+		// when
+		encryptor.decrypt(environment);
+		Environment decrypted = encryptor.decrypt(environment);
+
+		// then
+		assertThat(decrypted.getPropertySources().get(0).getSource().get(environment.getName())).isEqualTo(secret);
+		assertThat(locates).hasValue(1);
+		assertThat(cache.getHitCount()).isEqualTo(1);
+		assertThat(cache.getMissCount()).isEqualTo(1);
+	}
+
+	@ParameterizedTest
+	@MethodSource("params")
+	public void shouldDecryptInParallelPreservingOrder(String salt, String key) {
+		TextEncryptor textEncryptor = new EncryptorFactory(salt).create(key);
+		CipherEnvironmentEncryptor encryptor = new CipherEnvironmentEncryptor(keys -> textEncryptor);
+		encryptor.setParallelism(4);
+		// given
+		Map<Object, Object> source = new LinkedHashMap<>();
+		Map<String, String> secrets = new LinkedHashMap<>();
+		for (int i = 0; i < 50; i++) {
+			String secret = randomUUID().toString();
+			secrets.put("secret" + i, secret);
+			source.put("plain" + i, "value" + i);
+			source.put("secret" + i, "{cipher}" + textEncryptor.encrypt(secret));
+		}
+		source.put("broken", "{cipher}notencrypted");
+		Environment environment = new Environment("name", "profile", "label");
+		environment.add(new PropertySource("a", source));
+
+		// when
+		Map<?, ?> decrypted = encryptor.decrypt(environment).getPropertySources().get(0).getSource();
+
+		// then
+		List<Object> expectedKeys = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			expectedKeys.add("plain" + i);
+		}
+		expectedKeys.addAll(secrets.keySet());
+		expectedKeys.add("invalid.broken");
+		assertThat(new ArrayList<>(decrypted.keySet())).isEqualTo(expectedKeys);
+		secrets.forEach((name, secret) -> assertThat(decrypted.get(name)).isEqualTo(secret));
+		assertThat(decrypted.get("invalid.broken")).isEqualTo("<n/a>");
+		encryptor.destroy();
+	}
+
 }
@@ -62,4 +62,19 @@ public class CipherResourcePropertiesEncryptorTests {
 		assertThat(decyptedResource.contains("{cipher}")).isFalse();
 	}
 
+	@Test
+	public void whenDecryptResource_thenEachOccurrenceReplacedInPlace() throws Exception {
+		// given
+		Environment environment = new Environment("name", "profile", "label");
+		String first = "{cipher}" + textEncryptor.encrypt("first");
+		String second = "{cipher}" + textEncryptor.encrypt("second");
+		String text = "# comment\na=" + first + "\nb=plain\nc=" + second + "\nd=" + first + "\n";
+
+		// when
+		String decyptedResource = encryptor.decrypt(text, environment);
+
+		// then
+		assertThat(decyptedResource).isEqualTo("# comment\na=first\nb=plain\nc=second\nd=first\n");
+	}
+
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.encryption;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DecryptedValueCacheTests {
+
+	private final Map<String, String> keys = Collections.singletonMap("key", "mykey");
+
+	@Test
+	public void cachesDecryptedValue() {
+		DecryptedValueCache cache = new DecryptedValueCache(10, Duration.ofMinutes(1));
+		AtomicInteger decryptions = new AtomicInteger();
+
+		assertThat(cache.get(this.keys, "cipher", () -> "plain" + decryptions.incrementAndGet())).isEqualTo("plain1");
+		assertThat(cache.get(this.keys, "cipher", () -> "plain" + decryptions.incrementAndGet())).isEqualTo("plain1");
+
+		assertThat(cache.getHitCount()).isEqualTo(1);
+		assertThat(cache.getMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void keysArePartOfTheCacheKey() {
+		DecryptedValueCache cache = new DecryptedValueCache(10, Duration.ofMinutes(1));
+
+		cache.get(this.keys, "cipher", () -> "plain");
+
+		assertThat(cache.get(Collections.singletonMap("key", "other"), "cipher", () -> "other")).isEqualTo("other");
+		assertThat(cache.getMissCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void expiredValuesAreDecryptedAgain() throws Exception {
+		DecryptedValueCache cache = new DecryptedValueCache(10, Duration.ofMillis(1));
+
+		cache.get(this.keys, "cipher", () -> "plain");
+		Thread.sleep(10);
+
+		assertThat(cache.get(this.keys, "cipher", () -> "fresh")).isEqualTo("fresh");
+		assertThat(cache.getEvictionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void sizeIsBounded() {
+		DecryptedValueCache cache = new DecryptedValueCache(2, Duration.ofMinutes(1));
+
+		cache.get(this.keys, "one", () -> "1");
+		cache.get(this.keys, "two", () -> "2");
+		cache.get(this.keys, "one", () -> "1");
+		cache.get(this.keys, "three", () -> "3");
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.getEvictionCount()).isEqualTo(1);
+		// "two" was least recently used
+		assertThat(cache.get(this.keys, "one", () -> "again")).isEqualTo("1");
+		assertThat(cache.get(this.keys, "two", () -> "again")).isEqualTo("again");
+	}
+
+	@Test
+	public void failuresAreNotCached() {
+		DecryptedValueCache cache = new DecryptedValueCache(10, Duration.ofMinutes(1));
+
+		assertThatThrownBy(() -> cache.get(this.keys, "cipher", () -> {
+			throw new IllegalStateException("Planned");
+		})).isInstanceOf(IllegalStateException.class);
+
+		assertThat(cache.size()).isZero();
+		assertThat(cache.get(this.keys, "cipher", () -> "plain")).isEqualTo("plain");
+	}
+
+}
@@ -16,6 +16,10 @@
 
 package org.springframework.cloud.config.server.encryption;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.Assertions;
@@ -156,4 +160,57 @@ public class EncryptionControllerTests {
 		assertThat(decrypt).as("Wrong decrypted plaintext: " + decrypt).isEqualTo("foo bar");
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	public void batchEncryptDecryptArray() {
+		this.controller = new EncryptionController(new SingleTextEncryptorLocator(new RsaSecretEncryptor()));
+		List<Map<String, Object>> ciphers = (List<Map<String, Object>>) this.controller
+				.encryptBatch(Arrays.asList("foo", "bar"));
+		assertThat(ciphers).extracting(result -> result.get("status")).containsExactly("OK", "OK");
+
+		List<Object> input = new ArrayList<>();
+		ciphers.forEach(result -> input.add(result.get("value")));
+		input.add(1, "invalid");
+		input.add(42);
+		List<Map<String, Object>> plain = (List<Map<String, Object>>) this.controller.decryptBatch(input);
+		assertThat(plain).extracting(result -> result.get("status")).containsExactly("OK", "INVALID", "OK",
+				"INVALID");
+		assertThat(plain.get(0)).containsEntry("value", "foo");
+		assertThat(plain.get(1)).containsEntry("description", "Text not encrypted with this key");
+		assertThat(plain.get(2)).containsEntry("value", "bar");
+		assertThat(plain.get(3)).containsEntry("description", "Value is not a string");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void batchEncryptDecryptObjectInParallel() {
+		this.controller = new EncryptionController(new SingleTextEncryptorLocator(new RsaSecretEncryptor()));
+		this.controller.setParallelism(4);
+		try {
+			Map<String, String> values = new LinkedHashMap<>();
+			for (int i = 0; i < 20; i++) {
+				values.put("key" + i, "value" + i);
+			}
+			Map<String, Map<String, Object>> ciphers = (Map<String, Map<String, Object>>) this.controller
+					.encryptBatch("app", "default", values);
+			assertThat(ciphers).containsOnlyKeys(values.keySet());
+
+			Map<String, Object> input = new LinkedHashMap<>();
+			ciphers.forEach((key, result) -> input.put(key, result.get("value")));
+			Map<String, Map<String, Object>> plain = (Map<String, Map<String, Object>>) this.controller
+					.decryptBatch("app", "default", input);
+			assertThat(plain.keySet()).containsExactlyElementsOf(values.keySet());
+			values.forEach((key, value) -> assertThat(plain.get(key)).containsEntry("value", value));
+		}
+		finally {
+			this.controller.destroy();
+		}
+	}
+
+	@Test
+	public void batchMustBeArrayOrObject() {
+		this.controller = new EncryptionController(new SingleTextEncryptorLocator(new RsaSecretEncryptor()));
+		Assertions.assertThrows(InvalidBatchException.class, () -> this.controller.encryptBatch("foo"));
+	}
+
 }
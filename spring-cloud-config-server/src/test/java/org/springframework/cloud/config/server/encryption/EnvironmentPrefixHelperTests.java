@@ -22,6 +22,7 @@ import java.util.Map;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 /**
  * @author Dave Syer
@@ -88,4 +89,39 @@ public class EnvironmentPrefixHelperTests {
 				.isEqualTo("textwith}brac{es{and}prefix");
 	}
 
+	@Test
+	public void testKeysWithEnvironmentPrefix() {
+		Map<String, String> keys = this.helper.getEncryptorKeys("foo", "bar", "{name:spam}{key:mykey}{profiles:x}foo");
+		assertThat(keys).containsExactly(entry("name", "foo"), entry("profiles", "bar"), entry("key", "mykey"));
+	}
+
+	@Test
+	public void testKeysWithCurlyBracesInText() {
+		Map<String, String> keys = this.helper.getEncryptorKeys("foo", "bar", "{key:mykey}text{with:braces}");
+		assertThat(keys.size()).isEqualTo(3);
+		assertThat(keys.get("key")).isEqualTo("mykey");
+	}
+
+	@Test
+	public void testKeysWithoutValue() {
+		Map<String, String> keys = this.helper.getEncryptorKeys("foo", "bar", "{key}{other:}{secret:mykey}foo");
+		assertThat(keys).containsExactly(entry("name", "foo"), entry("profiles", "bar"), entry("key", ""),
+				entry("other:", ""), entry("secret", "mykey"));
+		assertThat(this.helper.stripPrefix("{key}{secret:mykey}foo")).isEqualTo("foo");
+		assertThat(this.helper.stripPrefix("{key}foo")).isEqualTo("{key}foo");
+	}
+
+	@Test
+	public void testStripEscapeAfterText() {
+		assertThat(this.helper.stripPrefix("foo{plain}{key:foo}bar")).isEqualTo("{key:foo}bar");
+		assertThat(this.helper.getEncryptorKeys("foo", "bar", "{key}{plain}{other:bar}foo")).containsOnlyKeys("name",
+				"profiles", "key");
+	}
+
+	@Test
+	public void testStripUnterminatedPrefix() {
+		assertThat(this.helper.stripPrefix("{key:foo")).isEqualTo("{key:foo");
+		assertThat(this.helper.stripPrefix("{key:foo}{plain")).isEqualTo("{plain");
+	}
+
 }
@@ -16,13 +16,20 @@
 
 package org.springframework.cloud.config.server.encryption;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.security.rsa.crypto.KeyStoreKeyFactory;
 
@@ -75,4 +82,37 @@ public class KeyStoreTextEncryptorLocatorTests {
 		assertThat(encryptor1).isEqualTo(encryptor2);
 	}
 
+	@Test
+	public void testEncryptorCachedPerAliasAndSecret() {
+		AtomicInteger lookups = new AtomicInteger();
+		this.locator.setSecretLocator(secret -> {
+			lookups.incrementAndGet();
+			return "letmein".toCharArray();
+		});
+		Map<String, String> keys = Collections.singletonMap("key", "mykey");
+		TextEncryptor encryptor1 = this.locator.locate(keys);
+		TextEncryptor encryptor2 = this.locator.locate(keys);
+		assertThat(encryptor1).isSameAs(encryptor2);
+		assertThat(encryptor1).isNotSameAs(this.locator.locate(Collections.singletonMap("key", "mytestkey")));
+		assertThat(lookups).hasValue(3);
+	}
+
+	@Test
+	public void testKeyStoreReloadedWhenChanged(@TempDir Path dir) throws Exception {
+		Path keyStore = dir.resolve("server.jks");
+		Files.copy(new ClassPathResource("server.jks").getInputStream(), keyStore);
+		KeyStoreTextEncryptorLocator locator = new KeyStoreTextEncryptorLocator(new FileSystemResource(keyStore),
+				"letmein".toCharArray(), "jks", "changeme", "mytestkey");
+		locator.setKeyStoreCheckInterval(Duration.ZERO);
+		locator.afterPropertiesSet();
+		TextEncryptor encryptor = locator.locate(Collections.<String, String>emptyMap());
+		assertThat(locator.locate(Collections.<String, String>emptyMap())).isSameAs(encryptor);
+
+		Files.setLastModifiedTime(keyStore,
+				FileTime.fromMillis(Files.getLastModifiedTime(keyStore).toMillis() + 10000));
+		TextEncryptor reloaded = locator.locate(Collections.<String, String>emptyMap());
+		assertThat(reloaded).isNotSameAs(encryptor);
+		assertThat(reloaded.decrypt(encryptor.encrypt("foo"))).isEqualTo("foo");
+	}
+
 }
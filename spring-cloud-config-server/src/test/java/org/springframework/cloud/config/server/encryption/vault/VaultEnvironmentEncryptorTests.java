@@ -16,19 +16,34 @@
 
 package org.springframework.cloud.config.server.encryption.vault;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 
+import org.springframework.cloud.config.client.ConfigClientProperties;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.cloud.config.server.support.RequestContextSupport;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.vault.core.VaultKeyValueOperations;
 import org.springframework.vault.support.VaultResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -183,6 +198,214 @@ public class VaultEnvironmentEncryptorTests {
 				.isEqualTo("<n/a>");
 	}
 
+	@Test
+	public void shouldReadDistinctVaultPathsOnceInParallel() {
+		// given
+		CountDownLatch inFlight = new CountDownLatch(2);
+		VaultKeyValueOperations keyValueTemplate = mock(VaultKeyValueOperations.class);
+		when(keyValueTemplate.get("accounts/mypay")).thenAnswer(invocation -> {
+			inFlight.countDown();
+			assertThat(inFlight.await(5, TimeUnit.SECONDS)).isTrue();
+			return withVaultResponse("access_key", "mypay");
+		});
+		when(keyValueTemplate.get("accounts/other")).thenAnswer(invocation -> {
+			inFlight.countDown();
+			assertThat(inFlight.await(5, TimeUnit.SECONDS)).isTrue();
+			return withVaultResponse("access_key", "other");
+		});
+
+		VaultEnvironmentEncryptor encryptor = new VaultEnvironmentEncryptor(keyValueTemplate);
+		encryptor.setParallelism(4);
+
+		// when
+		Map<Object, Object> source = new LinkedHashMap<>();
+		source.put("first", "{vault}:accounts/mypay#access_key");
+		source.put("plain", "value");
+		source.put("second", "{vault}:accounts/other#access_key");
+		source.put("broken", "{vault}:accounts/mypay");
+		source.put("third", "{vault}:accounts/mypay#access_key");
+		Environment environment = new Environment("name", "profile", "label");
+		environment.add(new PropertySource("a", source));
+
+		// then
+		Map<?, ?> processed = encryptor.decrypt(environment).getPropertySources().get(0).getSource();
+		assertThat(processed.keySet()).containsExactly("plain", "first", "second", "invalid.broken", "third");
+		assertThat(processed.get("first")).isEqualTo("mypay");
+		assertThat(processed.get("second")).isEqualTo("other");
+		assertThat(processed.get("third")).isEqualTo("mypay");
+		verify(keyValueTemplate, times(1)).get("accounts/mypay");
+		verify(keyValueTemplate, times(1)).get("accounts/other");
+		encryptor.destroy();
+	}
+
+	@Test
+	public void shouldReadInParallelWithTheRequestTokenAndShareAFailedRead() {
+		// given
+		VaultKeyValueOperations keyValueTemplate = mock(VaultKeyValueOperations.class);
+		List<String> tokens = new CopyOnWriteArrayList<>();
+		when(keyValueTemplate.get("accounts/mypay")).thenAnswer(invocation -> {
+			tokens.add(RequestContextSupport.getRequestHeader(ConfigClientProperties.TOKEN_HEADER));
+			return withVaultResponse("access_key", "mypay");
+		});
+		when(keyValueTemplate.get("accounts/broken")).thenAnswer(invocation -> {
+			tokens.add(RequestContextSupport.getRequestHeader(ConfigClientProperties.TOKEN_HEADER));
+			throw new IllegalStateException("Vault is sealed");
+		});
+		VaultEnvironmentEncryptor encryptor = new VaultEnvironmentEncryptor(keyValueTemplate);
+		encryptor.setParallelism(4);
+
+		Map<Object, Object> source = new LinkedHashMap<>();
+		source.put("first", "{vault}:accounts/mypay#access_key");
+		source.put("second", "{vault}:accounts/broken#access_key");
+		source.put("third", "{vault}:accounts/broken#secret_key");
+		Environment environment = new Environment("name", "profile", "label");
+		environment.add(new PropertySource("a", source));
+
+		// when
+		Map<?, ?> processed;
+		try {
+			MockHttpServletRequest request = new MockHttpServletRequest();
+			request.addHeader(ConfigClientProperties.TOKEN_HEADER, "token");
+			RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+			processed = encryptor.decrypt(environment).getPropertySources().get(0).getSource();
+		}
+		finally {
+			RequestContextHolder.resetRequestAttributes();
+			encryptor.destroy();
+		}
+
+		// then
+		assertThat(tokens).containsExactly("token", "token");
+		assertThat(processed.keySet()).containsExactly("first", "invalid.second", "invalid.third");
+		verify(keyValueTemplate, times(1)).get("accounts/broken");
+		assertThat(encryptor.getStatistics().get("accounts/broken").getErrorCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void shouldCacheVaultResponsesAcrossRequests() {
+		// given
+		VaultKeyValueOperations keyValueTemplate = mock(VaultKeyValueOperations.class);
+		when(keyValueTemplate.get("accounts/mypay")).thenReturn(withVaultResponse("access_key", "mysecret"));
+		VaultResponse leased = withVaultResponse("access_key", "leased");
+		leased.setLeaseDuration(1);
+		when(keyValueTemplate.get("accounts/leased")).thenReturn(leased);
+
+		VaultEnvironmentEncryptor encryptor = new VaultEnvironmentEncryptor(keyValueTemplate);
+		encryptor.setCacheTimeToLive(Duration.ofMinutes(5));
+		Map<String, VaultEnvironmentEncryptor.ReadStatistics> registered = new HashMap<>();
+		encryptor.setStatisticsListener(registered::put);
+
+		// when
+		Map<Object, Object> source = new LinkedHashMap<>();
+		source.put("cached", "{vault}:accounts/mypay#access_key");
+		source.put("leased", "{vault}:accounts/leased#access_key");
+		Environment environment = new Environment("name", "profile", "label");
+		environment.add(new PropertySource("a", source));
+		encryptor.decrypt(environment);
+		Map<?, ?> processed = encryptor.decrypt(environment).getPropertySources().get(0).getSource();
+
+		// then
+		assertThat(processed.get("cached")).isEqualTo("mysecret");
+		assertThat(processed.get("leased")).isEqualTo("leased");
+		verify(keyValueTemplate, times(1)).get("accounts/mypay");
+		assertThat(registered).containsOnlyKeys("accounts/mypay", "accounts/leased");
+		VaultEnvironmentEncryptor.ReadStatistics statistics = encryptor.getStatistics().get("accounts/mypay");
+		assertThat(statistics.getReadCount()).isEqualTo(1);
+		assertThat(statistics.getCacheHitCount()).isEqualTo(1);
+		assertThat(statistics.getErrorCount()).isZero();
+	}
+
+	@Test
+	public void shouldNotCacheVaultResponsesByDefault() {
+		// given
+		VaultKeyValueOperations keyValueTemplate = mock(VaultKeyValueOperations.class);
+		when(keyValueTemplate.get("accounts/mypay")).thenReturn(withVaultResponse("access_key", "mysecret"));
+		VaultEnvironmentEncryptor encryptor = new VaultEnvironmentEncryptor(keyValueTemplate);
+
+		// when
+		Environment environment = new Environment("name", "profile", "label");
+		environment.add(new PropertySource("a",
+				Collections.<Object, Object>singletonMap("key", "{vault}:accounts/mypay#access_key")));
+		encryptor.decrypt(environment);
+		encryptor.decrypt(environment);
+
+		// then
+		verify(keyValueTemplate, times(2)).get("accounts/mypay");
+		assertThat(encryptor.getStatistics().get("accounts/mypay").getReadCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void shouldReadWithRequestTokenAndNotShareCachedResponsesBetweenTokens() {
+		// given
+		VaultKeyValueOperations keyValueTemplate = mock(VaultKeyValueOperations.class);
+		List<String> tokens = new CopyOnWriteArrayList<>();
+		when(keyValueTemplate.get(anyString())).thenAnswer(invocation -> {
+			tokens.add(RequestContextSupport.getRequestHeader(ConfigClientProperties.TOKEN_HEADER));
+			return withVaultResponse("access_key", "mysecret");
+		});
+		VaultEnvironmentEncryptor encryptor = new VaultEnvironmentEncryptor(keyValueTemplate);
+		encryptor.setCacheTimeToLive(Duration.ofMinutes(5));
+		encryptor.setParallelism(2);
+
+		Map<Object, Object> source = new LinkedHashMap<>();
+		source.put("first", "{vault}:accounts/first#access_key");
+		source.put("second", "{vault}:accounts/second#access_key");
+		Environment environment = new Environment("name", "profile", "label");
+		environment.add(new PropertySource("a", source));
+
+		// when
+		try {
+			for (String token : Arrays.asList("token1", "token1", "token2")) {
+				MockHttpServletRequest request = new MockHttpServletRequest();
+				request.addHeader(ConfigClientProperties.TOKEN_HEADER, token);
+				RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+				assertThat(encryptor.decrypt(environment).getPropertySources().get(0).getSource().get("first"))
+						.isEqualTo("mysecret");
+			}
+		}
+		finally {
+			RequestContextHolder.resetRequestAttributes();
+			encryptor.destroy();
+		}
+
+		// then
+		assertThat(tokens).containsExactlyInAnyOrder("token1", "token1", "token2", "token2");
+		assertThat(encryptor.getStatistics().get("accounts/first").getCacheHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void shouldKeepCachingResponsesOnceTheCacheIsFull() {
+		// given
+		VaultKeyValueOperations keyValueTemplate = mock(VaultKeyValueOperations.class);
+		when(keyValueTemplate.get("accounts/mypay")).thenReturn(withVaultResponse("access_key", "mysecret"));
+		VaultEnvironmentEncryptor encryptor = new VaultEnvironmentEncryptor(keyValueTemplate);
+		encryptor.setCacheTimeToLive(Duration.ofMinutes(5));
+		encryptor.setCacheMaxSize(1);
+
+		Environment environment = new Environment("name", "profile", "label");
+		environment.add(new PropertySource("a",
+				Collections.<Object, Object>singletonMap("key", "{vault}:accounts/mypay#access_key")));
+
+		// when
+		try {
+			// A rotated token replaces the response cached for the previous one
+			for (String token : Arrays.asList("token1", "token2", "token2", "token1")) {
+				MockHttpServletRequest request = new MockHttpServletRequest();
+				request.addHeader(ConfigClientProperties.TOKEN_HEADER, token);
+				RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+				encryptor.decrypt(environment);
+			}
+		}
+		finally {
+			RequestContextHolder.resetRequestAttributes();
+			encryptor.destroy();
+		}
+
+		// then
+		verify(keyValueTemplate, times(3)).get("accounts/mypay");
+		assertThat(encryptor.getStatistics().get("accounts/mypay").getCacheHitCount()).isEqualTo(1);
+	}
+
 	private VaultResponse withVaultResponse(String key, Object value) {
 		Map<String, Object> responseData = new HashMap<>();
 		responseData.put(key, value);
@@ -31,11 +31,13 @@ import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.RandomUtils;
 import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
 import software.amazon.awssdk.services.ssm.SsmClient;
 import software.amazon.awssdk.services.ssm.model.GetParametersByPathRequest;
 import software.amazon.awssdk.services.ssm.model.GetParametersByPathResponse;
 import software.amazon.awssdk.services.ssm.model.Parameter;
 import software.amazon.awssdk.services.ssm.model.ParameterType;
+import software.amazon.awssdk.services.ssm.model.SsmException;
 
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
@@ -44,6 +46,8 @@ import org.springframework.util.StringUtils;
 
 import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -107,6 +111,79 @@ public class AWSParameterStoreEnvironmentRepositoryUnitTest {
 		assertThat(result).usingRecursiveComparison().withStrictTypeChecking().isEqualTo(expected);
 	}
 
+	@Test
+	public void testFindOneWithCachedParameterPaths() {
+		// Arrange
+		String application = configServerProperties.getDefaultApplicationName();
+		String profile = configServerProperties.getDefaultProfile();
+		String[] profiles = StringUtils.commaDelimitedListToStringArray(profile);
+
+		environmentProperties.setCacheTimeToLive(60);
+
+		String sharedDefaultParamsPsName = "aws:ssm:parameter:/config/application-default/";
+		PropertySource sharedDefaultParamsPs = new PropertySource(sharedDefaultParamsPsName, SHARED_DEFAULT_PROPERTIES);
+
+		String sharedParamsPsName = "aws:ssm:parameter:/config/application/";
+		PropertySource sharedParamsPs = new PropertySource(sharedParamsPsName, SHARED_PROPERTIES);
+
+		Environment expected = new Environment(application, profiles, null, null, null);
+		expected.addAll(Arrays.asList(sharedDefaultParamsPs, sharedParamsPs));
+
+		setupAwsSsmClientMocks(expected, false, false);
+
+		// Act
+		repository.findOne(application, profile, null);
+		Environment result = repository.findOne(application, profile, null);
+
+		// Assert
+		assertThat(result).usingRecursiveComparison().withStrictTypeChecking().isEqualTo(expected);
+		assertThat(repository.getCallCount()).isEqualTo(2);
+		assertThat(repository.getCacheHitCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void testFindOneWithThrottledAwsSsmClientResponse() {
+		// Arrange
+		SsmException throttled = (SsmException) SsmException.builder().statusCode(400)
+				.awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottlingException").build()).build();
+		Parameter parameter = Parameter.builder().name("/config/application/logging.level.root").value("warn")
+				.type(ParameterType.STRING).build();
+
+		when(ssmClient.getParametersByPath(any(GetParametersByPathRequest.class))).thenThrow(throttled)
+				.thenReturn(GetParametersByPathResponse.builder().parameters(parameter).build());
+
+		// Act
+		Environment result = repository.findOne("application", "default", null);
+
+		// Assert
+		assertThat(result.getPropertySources().size()).isEqualTo(2);
+		assertThat(repository.getThrottleCount()).isEqualTo(1);
+		assertThat(repository.getCallCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void testFindOneAfterThrottledRetriesAreExhausted() {
+		// Arrange
+		SsmException throttled = (SsmException) SsmException.builder().statusCode(400)
+				.awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottlingException").build()).build();
+		Parameter parameter = Parameter.builder().name("/config/application/logging.level.root").value("warn")
+				.type(ParameterType.STRING).build();
+
+		when(ssmClient.getParametersByPath(any(GetParametersByPathRequest.class))).thenThrow(throttled);
+
+		// Act
+		assertThatThrownBy(() -> repository.findOne("application", "default", null)).isSameAs(throttled);
+
+		when(ssmClient.getParametersByPath(any(GetParametersByPathRequest.class)))
+				.thenReturn(GetParametersByPathResponse.builder().parameters(parameter).build());
+		Environment result = repository.findOne("application", "default", null);
+
+		// Assert
+		assertThat(result.getPropertySources().size()).isEqualTo(2);
+		assertThat(repository.getThrottleCount()).isEqualTo(8);
+		assertThat(repository.getCallCount()).isEqualTo(10);
+	}
+
 	private void setupAwsSsmClientMocks(Environment environment, boolean withSlashesForPropertyName,
 			boolean paginatedResponse) {
 		for (PropertySource ps : environment.getPropertySources()) {
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.cloud.config.server.config.ConfigServerProperties;
+import org.springframework.util.DigestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for reading objects without a live bucket, counting the calls to S3. The
+ * {@link FakeS3Client} can also stand in for S3 when measuring the repository.
+ */
+public class AwsS3EnvironmentRepositoryUnitTests {
+
+	private final S3Client s3Client = mock(S3Client.class);
+
+	private final AwsS3EnvironmentRepository repository = new AwsS3EnvironmentRepository(this.s3Client, "bucket1",
+			new ConfigServerProperties());
+
+	@AfterEach
+	public void close() {
+		this.repository.destroy();
+	}
+
+	@Test
+	public void listsOnceAndReadsOnlyExistingObjectsConcurrently() {
+		when(this.s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(
+				ListObjectsV2Response.builder().contents(object("main/foo.yml"), object("main/foo-dev.properties"))
+						.isTruncated(true).nextContinuationToken("next").build(),
+				ListObjectsV2Response.builder().contents(object("main/bar.txt")).isTruncated(false).build());
+		when(this.s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+			String key = invocation.<GetObjectRequest>getArgument(0).key();
+			return response(key.endsWith(".yml") ? "foo: yml" : "foo=properties", key);
+		});
+		this.repository.setParallelism(4);
+		this.repository.setRefreshRate(60);
+
+		Environment environment = this.repository.findOne("foo", "dev", "main");
+		this.repository.findOne("foo", "dev", "main");
+
+		assertThat(environment.getPropertySources()).extracting(PropertySource::getName)
+				.containsExactly("s3:foo-dev", "s3:foo");
+		assertThat(environment.getPropertySources().get(1).getSource()).containsEntry("foo", "yml");
+		verify(this.s3Client, times(2)).listObjectsV2(any(ListObjectsV2Request.class));
+		verify(this.s3Client).listObjectsV2(argThat((ListObjectsV2Request request) -> "next"
+				.equals(request.continuationToken()) && "main/".equals(request.prefix())));
+		verify(this.s3Client, times(4)).getObject(any(GetObjectRequest.class));
+	}
+
+	@Test
+	public void probesForObjectsWhenListingIsDenied() {
+		when(this.s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+				.thenThrow(S3Exception.builder().statusCode(403).message("Access Denied").build());
+		when(this.s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+			String key = invocation.<GetObjectRequest>getArgument(0).key();
+			if (!key.equals("foo.properties")) {
+				throw NoSuchKeyException.builder().message("No such key").build();
+			}
+			return response("foo=bar", key);
+		});
+
+		Environment environment = this.repository.findOne("foo", "dev", null);
+		this.repository.findOne("foo", "dev", null);
+
+		assertThat(environment.getPropertySources()).extracting(PropertySource::getName).containsExactly("s3:foo");
+		verify(this.s3Client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+		verify(this.s3Client, times(2))
+				.getObject(argThat((GetObjectRequest request) -> request.key().equals("foo.properties")));
+	}
+
+	@Test
+	public void reusesObjectsWhoseETagIsUnchangedInTheListing() {
+		FakeS3Client fake = new FakeS3Client();
+		fake.put("main/foo.yml", "foo: bar");
+		AwsS3EnvironmentRepository repository = new AwsS3EnvironmentRepository(fake, "bucket1",
+				new ConfigServerProperties());
+
+		repository.findOne("foo", "dev", "main");
+		Environment cached = repository.findOne("foo", "dev", "main");
+		fake.put("main/foo.yml", "foo: baz");
+		Environment changed = repository.findOne("foo", "dev", "main");
+
+		assertThat(cached.getPropertySources().get(0).getSource()).containsEntry("foo", "bar");
+		assertThat(changed.getPropertySources().get(0).getSource()).containsEntry("foo", "baz");
+		assertThat(fake.lists.get()).isEqualTo(3);
+		assertThat(fake.gets.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void revalidatesWithConditionalGetWhenListingIsDenied() {
+		FakeS3Client fake = new FakeS3Client();
+		fake.listingDenied = true;
+		fake.put("foo.properties", "foo=bar");
+		AwsS3EnvironmentRepository repository = new AwsS3EnvironmentRepository(fake, "bucket1",
+				new ConfigServerProperties());
+
+		repository.findOne("foo", null, null);
+		Environment environment = repository.findOne("foo", null, null);
+
+		assertThat(environment.getPropertySources().get(0).getSource()).containsEntry("foo", "bar");
+		assertThat(fake.notModified.get()).isEqualTo(1);
+
+		repository.setRevalidateRate(60);
+		repository.findOne("foo", null, null);
+		repository.findOne("foo", null, null);
+
+		assertThat(fake.notModified.get()).isEqualTo(2);
+	}
+
+	private static S3Object object(String key) {
+		return S3Object.builder().key(key).build();
+	}
+
+	private static ResponseInputStream<GetObjectResponse> response(String content, String key) {
+		return new ResponseInputStream<>(GetObjectResponse.builder().versionId(key + "-v1").build(),
+				AbortableInputStream.create(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	/**
+	 * An in-process stand-in for S3, with ETags and conditional GETs.
+	 */
+	static class FakeS3Client implements S3Client {
+
+		private final Map<String, String> objects = new ConcurrentHashMap<>();
+
+		boolean listingDenied;
+
+		final AtomicInteger lists = new AtomicInteger();
+
+		final AtomicInteger gets = new AtomicInteger();
+
+		final AtomicInteger notModified = new AtomicInteger();
+
+		void put(String key, String content) {
+			this.objects.put(key, content);
+		}
+
+		@Override
+		public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+			this.lists.incrementAndGet();
+			if (this.listingDenied) {
+				throw S3Exception.builder().statusCode(403).message("Access Denied").build();
+			}
+			List<S3Object> contents = new ArrayList<>();
+			this.objects.forEach((key, content) -> {
+				if (key.startsWith(request.prefix())
+						&& !key.substring(request.prefix().length()).contains(request.delimiter())) {
+					contents.add(S3Object.builder().key(key).eTag(eTag(content)).build());
+				}
+			});
+			return ListObjectsV2Response.builder().contents(contents).isTruncated(false).build();
+		}
+
+		@Override
+		public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+			String content = this.objects.get(request.key());
+			if (content == null) {
+				throw NoSuchKeyException.builder().statusCode(404).message("No such key").build();
+			}
+			if (eTag(content).equals(request.ifNoneMatch())) {
+				this.notModified.incrementAndGet();
+				throw S3Exception.builder().statusCode(304).message("Not Modified").build();
+			}
+			this.gets.incrementAndGet();
+			return new ResponseInputStream<>(GetObjectResponse.builder().eTag(eTag(content)).build(),
+					AbortableInputStream.create(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))));
+		}
+
+		private static String eTag(String content) {
+			return "\"" + DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8)) + "\"";
+		}
+
+		@Override
+		public String serviceName() {
+			return SERVICE_NAME;
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
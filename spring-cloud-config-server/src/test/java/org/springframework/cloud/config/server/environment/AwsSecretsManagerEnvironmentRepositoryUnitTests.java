@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.services.secretsmanager.model.DescribeSecretRequest;
+import software.amazon.awssdk.services.secretsmanager.model.DescribeSecretResponse;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
+import software.amazon.awssdk.services.secretsmanager.model.ResourceNotFoundException;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.cloud.config.server.config.ConfigServerProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for reading secrets without a live Secrets Manager, counting the calls to it.
+ */
+public class AwsSecretsManagerEnvironmentRepositoryUnitTests {
+
+	private final SecretsManagerClient smClient = mock(SecretsManagerClient.class);
+
+	private final AwsSecretsManagerEnvironmentProperties environmentProperties =
+			new AwsSecretsManagerEnvironmentProperties();
+
+	private AwsSecretsManagerEnvironmentRepository repository;
+
+	@AfterEach
+	public void close() {
+		this.repository.destroy();
+	}
+
+	@Test
+	public void readsSecretsConcurrentlyInOrder() {
+		when(this.smClient.getSecretValue(any(GetSecretValueRequest.class))).thenAnswer(invocation -> {
+			String path = invocation.<GetSecretValueRequest>getArgument(0).secretId();
+			if (path.contains("default")) {
+				throw ResourceNotFoundException.builder().message("Not found").build();
+			}
+			return secret(path, "v1");
+		});
+		this.repository = repository();
+
+		Environment environment = this.repository.findOne("foo", "dev", null);
+
+		assertThat(environment.getPropertySources()).extracting(PropertySource::getName).containsExactly(
+				"aws:secrets:/secret/foo-dev/", "aws:secrets:/secret/application-dev/", "aws:secrets:/secret/foo/",
+				"aws:secrets:/secret/application/");
+		assertThat(environment.getPropertySources().get(0).getSource()).containsEntry("path", "/secret/foo-dev/");
+		verify(this.smClient, times(6)).getSecretValue(any(GetSecretValueRequest.class));
+	}
+
+	@Test
+	public void cachesSecretsForTheirTimeToLive() {
+		when(this.smClient.getSecretValue(any(GetSecretValueRequest.class)))
+				.thenAnswer(invocation -> secret(invocation.<GetSecretValueRequest>getArgument(0).secretId(), "v1"));
+		this.environmentProperties.setCacheTimeToLive(60);
+		this.repository = repository();
+
+		this.repository.findOne("foo", "default", null).getPropertySources().get(0).getSource().clear();
+		Environment environment = this.repository.findOne("foo", "default", null);
+
+		assertThat(environment.getPropertySources()).hasSize(4);
+		assertThat(environment.getPropertySources().get(0).getSource()).containsEntry("path", "/secret/foo-default/");
+		verify(this.smClient, times(4)).getSecretValue(any(GetSecretValueRequest.class));
+		verify(this.smClient, never()).describeSecret(any(DescribeSecretRequest.class));
+	}
+
+	@Test
+	public void expiredSecretsAreOnlyReadAgainWhenTheirVersionChanged() {
+		when(this.smClient.getSecretValue(any(GetSecretValueRequest.class)))
+				.thenAnswer(invocation -> secret(invocation.<GetSecretValueRequest>getArgument(0).secretId(), "v1"));
+		when(this.smClient.describeSecret(any(DescribeSecretRequest.class))).thenAnswer(invocation -> {
+			String path = invocation.<DescribeSecretRequest>getArgument(0).secretId();
+			String current = path.equals("/secret/foo/") ? "v2" : "v1";
+			return DescribeSecretResponse.builder()
+					.versionIdsToStages(Collections.singletonMap(current, Collections.singletonList("AWSCURRENT")))
+					.build();
+		});
+		this.repository = repository();
+		this.repository.setCacheTimeToLive(Duration.ofNanos(1));
+
+		this.repository.findOne("foo", "default", null);
+		this.repository.findOne("foo", "default", null);
+
+		verify(this.smClient, times(4)).describeSecret(any(DescribeSecretRequest.class));
+		verify(this.smClient, times(5)).getSecretValue(any(GetSecretValueRequest.class));
+		verify(this.smClient, times(2))
+				.getSecretValue(argThat((GetSecretValueRequest request) -> request.secretId().equals("/secret/foo/")));
+	}
+
+	private AwsSecretsManagerEnvironmentRepository repository() {
+		return new AwsSecretsManagerEnvironmentRepository(this.smClient, new ConfigServerProperties(),
+				this.environmentProperties);
+	}
+
+	private static GetSecretValueResponse secret(String path, String versionId) {
+		return GetSecretValueResponse.builder().versionId(versionId).secretString("{\"path\":\"" + path + "\"}")
+				.build();
+	}
+
+}
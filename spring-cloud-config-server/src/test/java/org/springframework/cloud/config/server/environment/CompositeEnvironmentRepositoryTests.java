@@ -16,27 +16,42 @@
 
 package org.springframework.cloud.config.server.environment;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.Test;
 
+import org.springframework.cloud.config.client.ConfigClientProperties;
 import org.springframework.cloud.config.environment.Environment;
 import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.config.CompositeConfiguration;
 import org.springframework.cloud.config.server.config.ConfigServerHealthIndicator;
+import org.springframework.cloud.config.server.support.RequestContextSupport;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.Ordered;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOfType;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 /**
  * @author Ryan Baxter
@@ -134,6 +149,8 @@ public class CompositeEnvironmentRepositoryTests {
 		Environment multiEnv = multiCompositeRepo.findOne("app", "dev", "label", false);
 		assertThat(multiEnv.getVersion()).isEqualTo(null);
 		assertThat(multiEnv.getState()).isEqualTo(null);
+		assertThat(compositeRepo.getLocations("app", "dev", "label").getVersion()).isEqualTo("version");
+		assertThat(multiCompositeRepo.getLocations("app", "dev", "label").getVersion()).isNull();
 	}
 
 	@Test
@@ -207,6 +224,201 @@ public class CompositeEnvironmentRepositoryTests {
 				.isThrownBy(() -> compositeRepo.getLocations("app", "dev", "label"));
 	}
 
+	@Test
+	public void singleRepositoryTellsWhetherLocationsAreCurrent() {
+		EnvironmentRepository repo = mock(EnvironmentRepository.class,
+				withSettings().extraInterfaces(SearchPathLocator.class));
+		SearchPathLocator locator = (SearchPathLocator) repo;
+		SearchPathLocator.Locations locations = new SearchPathLocator.Locations("app", "dev", "label", "version",
+				new String[] { "loc1" });
+		Resource resource = new ByteArrayResource(new byte[0]);
+		Resource snapshot = new ByteArrayResource(new byte[0]);
+		when(locator.isCurrent(locations)).thenReturn(false);
+		when(locator.snapshot(locations, resource)).thenReturn(snapshot);
+
+		SearchPathCompositeEnvironmentRepository compositeRepo = new SearchPathCompositeEnvironmentRepository(
+				Collections.singletonList(repo), ObservationRegistry.NOOP, true);
+		SearchPathCompositeEnvironmentRepository multiCompositeRepo = new SearchPathCompositeEnvironmentRepository(
+				Arrays.asList(repo, repo), ObservationRegistry.NOOP, true);
+
+		assertThat(compositeRepo.isCurrent(locations)).isFalse();
+		assertThat(compositeRepo.snapshot(locations, resource)).isSameAs(snapshot);
+		assertThat(multiCompositeRepo.isCurrent(locations)).isTrue();
+		assertThat(multiCompositeRepo.snapshot(locations, resource)).isSameAs(resource);
+	}
+
+	@Test
+	public void testConcurrentQueriesKeepOrder() {
+		CountDownLatch inFlight = new CountDownLatch(3);
+		List<EnvironmentRepository> repos = new ArrayList<EnvironmentRepository>();
+		repos.add(new TestBlockingEnvironmentRepository(3, environment("p3"), inFlight, inFlight));
+		repos.add(new TestBlockingEnvironmentRepository(1, environment("p1"), inFlight, inFlight));
+		repos.add(new TestBlockingEnvironmentRepository(2, environment("p2"), inFlight, inFlight));
+		CompositeEnvironmentRepository compositeRepo = new CompositeEnvironmentRepository(repos,
+				ObservationRegistry.NOOP, true);
+		compositeRepo.setParallelism(3);
+		try {
+			Environment env = compositeRepo.findOne("app", "dev", "label", false);
+			assertThat(env.getPropertySources()).extracting(PropertySource::getName).containsExactly("p1", "p2",
+					"p3");
+		}
+		finally {
+			compositeRepo.destroy();
+		}
+	}
+
+	@Test
+	public void testConcurrentQueriesSeeRequestAttributes() {
+		List<EnvironmentRepository> repos = new ArrayList<EnvironmentRepository>();
+		repos.add((application, profile, label) -> environment(
+				RequestContextSupport.getRequestHeader(ConfigClientProperties.TOKEN_HEADER) + "1"));
+		repos.add((application, profile, label) -> environment(
+				RequestContextSupport.getRequestHeader(ConfigClientProperties.TOKEN_HEADER) + "2"));
+		CompositeEnvironmentRepository compositeRepo = new CompositeEnvironmentRepository(repos,
+				ObservationRegistry.NOOP, true);
+		compositeRepo.setParallelism(2);
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(ConfigClientProperties.TOKEN_HEADER, "token");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		try {
+			assertThat(compositeRepo.findOne("app", "dev", "label", false).getPropertySources())
+					.extracting(PropertySource::getName).containsExactly("token1", "token2");
+		}
+		finally {
+			RequestContextHolder.resetRequestAttributes();
+			compositeRepo.destroy();
+		}
+	}
+
+	@Test
+	public void testSlowRepositoryPolicies() {
+		TestBlockingEnvironmentRepository slow = new TestBlockingEnvironmentRepository(2, environment("slow"),
+				new CountDownLatch(0), new CountDownLatch(1));
+		List<EnvironmentRepository> repos = new ArrayList<EnvironmentRepository>();
+		repos.add(new TestOrderedEnvironmentRepository(1, environment("fast"), null));
+		repos.add(slow);
+		CompositeEnvironmentRepository compositeRepo = new CompositeEnvironmentRepository(repos,
+				ObservationRegistry.NOOP, true);
+		compositeRepo.setParallelism(4);
+		compositeRepo.setTimeout(Duration.ofMillis(200));
+		try {
+			assertThatExceptionOfType(RepositoryException.class)
+					.isThrownBy(() -> compositeRepo.findOne("app", "dev", "label", false));
+
+			compositeRepo.setTimeoutPolicy(CompositeEnvironmentRepository.TimeoutPolicy.SKIP);
+			assertThat(compositeRepo.findOne("app", "dev", "label", false).getPropertySources())
+					.extracting(PropertySource::getName).containsExactly("fast");
+
+			compositeRepo.setTimeoutPolicy(CompositeEnvironmentRepository.TimeoutPolicy.LAST_KNOWN_GOOD);
+			slow.release();
+			assertThat(compositeRepo.findOne("app", "dev", "label", false).getPropertySources())
+					.extracting(PropertySource::getName).containsExactly("fast", "slow");
+			slow.block();
+			assertThat(compositeRepo.findOne("app", "dev", "label", false).getPropertySources())
+					.extracting(PropertySource::getName).containsExactly("fast", "slow");
+		}
+		finally {
+			slow.release();
+			compositeRepo.destroy();
+		}
+	}
+
+	@Test
+	public void testFailedRequestCancelsTheOtherQueries() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		List<EnvironmentRepository> repos = new ArrayList<EnvironmentRepository>();
+		repos.add((application, profile, label) -> {
+			try {
+				started.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new IllegalArgumentException("Failing for some reason");
+		});
+		repos.add((application, profile, label) -> {
+			started.countDown();
+			try {
+				new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			return environment("slow");
+		});
+		CompositeEnvironmentRepository compositeRepo = new CompositeEnvironmentRepository(repos,
+				ObservationRegistry.NOOP, true);
+		compositeRepo.setParallelism(2);
+		try {
+			assertThatExceptionOfType(IllegalArgumentException.class)
+					.isThrownBy(() -> compositeRepo.findOne("app", "dev", "label", false));
+			assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+		}
+		finally {
+			compositeRepo.destroy();
+		}
+	}
+
+	@Test
+	public void testTimedOutQueriesKeepTheirRequestAndDoNotPileUp() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		List<String> tokens = new CopyOnWriteArrayList<>();
+		List<EnvironmentRepository> repos = new ArrayList<EnvironmentRepository>();
+		repos.add(new TestOrderedEnvironmentRepository(1, environment("fast"), null));
+		repos.add((application, profile, label) -> {
+			calls.incrementAndGet();
+			// A backend that does not respond to interrupts, like a blocking socket read
+			while (release.getCount() > 0) {
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					// keep waiting
+				}
+			}
+			tokens.add(RequestContextSupport.getRequestHeader(ConfigClientProperties.TOKEN_HEADER));
+			done.countDown();
+			return environment("slow");
+		});
+		CompositeEnvironmentRepository compositeRepo = new CompositeEnvironmentRepository(repos,
+				ObservationRegistry.NOOP, true);
+		compositeRepo.setParallelism(2);
+		compositeRepo.setTimeout(Duration.ofMillis(100));
+		compositeRepo.setTimeoutPolicy(CompositeEnvironmentRepository.TimeoutPolicy.SKIP);
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(ConfigClientProperties.TOKEN_HEADER, "token");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		try {
+			assertThat(compositeRepo.findOne("app", "dev", "label", false).getPropertySources())
+					.extracting(PropertySource::getName).containsExactly("fast");
+			// The slow repository still holds its share of the pool, so it is skipped
+			assertThat(compositeRepo.findOne("app", "dev", "label", false).getPropertySources())
+					.extracting(PropertySource::getName).containsExactly("fast");
+			assertThat(calls.get()).isEqualTo(1);
+
+			// The container recycles the request for another client
+			request.removeHeader(ConfigClientProperties.TOKEN_HEADER);
+			request.addHeader(ConfigClientProperties.TOKEN_HEADER, "other");
+			release.countDown();
+			assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+			assertThat(tokens).containsExactly("token");
+		}
+		finally {
+			release.countDown();
+			RequestContextHolder.resetRequestAttributes();
+			compositeRepo.destroy();
+		}
+	}
+
+	private static Environment environment(String name) {
+		Environment environment = new Environment("app", "dev");
+		environment.add(new PropertySource(name, Collections.singletonMap("name", name)));
+		return environment;
+	}
+
 	private static class TestOrderedEnvironmentRepository implements EnvironmentRepository, SearchPathLocator, Ordered {
 
 		private Environment env;
@@ -261,6 +473,41 @@ public class CompositeEnvironmentRepositoryTests {
 
 	}
 
+	private static class TestBlockingEnvironmentRepository extends TestOrderedEnvironmentRepository {
+
+		private final CountDownLatch arrived;
+
+		private volatile CountDownLatch release;
+
+		TestBlockingEnvironmentRepository(int order, Environment env, CountDownLatch arrived,
+				CountDownLatch release) {
+			super(order, env, null);
+			this.arrived = arrived;
+			this.release = release;
+		}
+
+		void block() {
+			this.release = new CountDownLatch(1);
+		}
+
+		void release() {
+			this.release.countDown();
+		}
+
+		@Override
+		public Environment findOne(String application, String profile, String label, boolean includeOrigin) {
+			this.arrived.countDown();
+			try {
+				this.release.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return super.findOne(application, profile, label, includeOrigin);
+		}
+
+	}
+
 	private static class TestFailingLocationRepository extends TestOrderedEnvironmentRepository {
 
 		TestFailingLocationRepository(int order, Environment env, Locations locations) {
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class EnvironmentRequestCoalescerTests {
+
+	private final EnvironmentRequestCoalescer coalescer = new EnvironmentRequestCoalescer();
+
+	@Test
+	public void concurrentIdenticalRequestsShareOneQuery() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger queries = new AtomicInteger();
+		EnvironmentRepository repository = this.coalescer.coalescing((application, profile, label) -> {
+			queries.incrementAndGet();
+			await(release);
+			Environment environment = new Environment(application, profile);
+			environment.add(new PropertySource("one", Collections.singletonMap("foo", "bar")));
+			return environment;
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			CompletableFuture<Environment> first = CompletableFuture
+					.supplyAsync(() -> repository.findOne("foo", "dev", "master"), executor);
+			waitUntil(() -> this.coalescer.getInFlightCount() == 1);
+			CompletableFuture<Environment> second = CompletableFuture
+					.supplyAsync(() -> repository.findOne("foo", "dev", "master"), executor);
+			CompletableFuture<Environment> other = CompletableFuture
+					.supplyAsync(() -> repository.findOne("bar", "dev", "master"), executor);
+			waitUntil(() -> this.coalescer.getCoalescedCount() == 1 && this.coalescer.getInFlightCount() == 2);
+			release.countDown();
+
+			Environment environment = first.get(5, TimeUnit.SECONDS);
+			environment.addFirst(new PropertySource("overrides", Collections.singletonMap("foo", "baz")));
+			assertThat(second.get(5, TimeUnit.SECONDS).getPropertySources()).extracting(PropertySource::getName)
+					.containsExactly("one");
+			assertThat(other.get(5, TimeUnit.SECONDS).getName()).isEqualTo("bar");
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		assertThat(queries).hasValue(2);
+		assertThat(this.coalescer.getCoalescedCount()).isEqualTo(1);
+		assertThat(this.coalescer.getInFlightCount()).isZero();
+	}
+
+	@Test
+	public void failuresArePassedToCoalescedRequests() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		EnvironmentRepository repository = this.coalescer.coalescing((application, profile, label) -> {
+			await(release);
+			throw new NoSuchLabelException("No such label: " + label);
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			CompletableFuture<Environment> first = CompletableFuture
+					.supplyAsync(() -> repository.findOne("foo", "dev", "missing"), executor);
+			waitUntil(() -> this.coalescer.getInFlightCount() == 1);
+			CompletableFuture<Environment> second = CompletableFuture
+					.supplyAsync(() -> repository.findOne("foo", "dev", "missing"), executor);
+			waitUntil(() -> this.coalescer.getCoalescedCount() == 1);
+			release.countDown();
+
+			assertThatExceptionOfType(Exception.class).isThrownBy(() -> first.get(5, TimeUnit.SECONDS))
+					.withCauseInstanceOf(NoSuchLabelException.class);
+			assertThatExceptionOfType(Exception.class).isThrownBy(() -> second.get(5, TimeUnit.SECONDS))
+					.withCauseInstanceOf(NoSuchLabelException.class);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(condition.getAsBoolean()).isTrue();
+	}
+
+}
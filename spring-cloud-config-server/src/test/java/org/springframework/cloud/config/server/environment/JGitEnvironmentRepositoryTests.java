@@ -18,6 +18,8 @@ package org.springframework.cloud.config.server.environment;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -79,6 +81,9 @@ import org.springframework.cloud.config.server.support.GitSkipSslValidationCrede
 import org.springframework.cloud.config.server.support.PassphraseCredentialsProvider;
 import org.springframework.cloud.config.server.test.ConfigServerTestUtils;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.StreamUtils;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -198,6 +203,39 @@ public class JGitEnvironmentRepositoryTests {
 		assertVersion(environment);
 	}
 
+	@Test
+	public void locationsAreNotCurrentOnceAnotherLabelIsCheckedOut() {
+		this.repository.setBasedir(this.basedir);
+		SearchPathLocator.Locations master = this.repository.getLocations("bar", "staging", "master");
+		assertThat(this.repository.isCurrent(master)).isTrue();
+		SearchPathLocator.Locations raw = this.repository.getLocations("bar", "staging", "raw");
+		assertThat(this.repository.isCurrent(master)).isFalse();
+		assertThat(this.repository.isCurrent(raw)).isTrue();
+	}
+
+	@Test
+	public void snapshotKeepsTheContentOfItsLabel() throws IOException {
+		this.repository.setBasedir(this.basedir);
+		SearchPathLocator.Locations master = this.repository.getLocations("bar", "default", "master");
+		Resource file = new UrlResource(this.repository.getUri() + "/bar.properties");
+		Resource snapshot = this.repository.snapshot(master, file);
+
+		this.repository.getLocations("bar", "default", "composite");
+
+		assertThat(read(file)).isEqualTo("foo: barconfig");
+		assertThat(read(snapshot)).isEqualTo("foo: bar");
+		try (InputStream stream = snapshot.getInputStream()) {
+			assertThat(snapshot.contentLength()).isEqualTo(StreamUtils.copyToByteArray(stream).length);
+		}
+		assertThat(snapshot.getFilename()).isEqualTo("bar.properties");
+	}
+
+	private static String read(Resource resource) throws IOException {
+		try (InputStream stream = resource.getInputStream()) {
+			return StreamUtils.copyToString(stream, StandardCharsets.UTF_8).trim();
+		}
+	}
+
 	@Test
 	public void basedir() {
 		this.repository.setBasedir(this.basedir);
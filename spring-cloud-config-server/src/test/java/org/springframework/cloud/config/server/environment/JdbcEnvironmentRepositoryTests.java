@@ -16,6 +16,13 @@
 
 package org.springframework.cloud.config.server.environment;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 import javax.sql.DataSource;
 
 import org.junit.jupiter.api.Test;
@@ -26,6 +33,7 @@ import org.springframework.boot.autoconfigure.sql.init.SqlInitializationAutoConf
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.environment.JdbcEnvironmentRepositoryTests.ApplicationConfiguration;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.dao.DataAccessException;
@@ -220,6 +228,215 @@ public class JdbcEnvironmentRepositoryTests {
 		assertThat(env.getPropertySources().get(1).getSource().get("a.b.c")).isEqualTo("application-bar");
 	}
 
+	@Test
+	public void testSingleQuery() {
+		JdbcEnvironmentProperties properties = new JdbcEnvironmentProperties();
+		Environment expected = new JdbcEnvironmentRepository(new JdbcTemplate(this.dataSource), properties,
+				new JdbcEnvironmentRepository.PropertiesResultSetExtractor()).findOne("foo", "default,bar", "");
+		properties.setSingleQuery(true);
+		Environment env = new JdbcEnvironmentRepository(new JdbcTemplate(this.dataSource), properties,
+				new JdbcEnvironmentRepository.PropertiesResultSetExtractor()).findOne("foo", "default,bar", "");
+		assertThat(env.getPropertySources()).extracting(PropertySource::getName).containsExactly("foo-bar",
+				"application-bar", "foo-default", "application-default", "foo", "application");
+		assertThat(env.getPropertySources()).extracting(PropertySource::getSource)
+				.isEqualTo(expected.getPropertySources().stream().map(PropertySource::getSource).toList());
+	}
+
+	@Test
+	public void testSingleQueryWithIncompleteConfig() {
+		JdbcEnvironmentProperties properties = new JdbcEnvironmentProperties();
+		properties.setSql("SELECT MY_KEY, MY_VALUE from MY_PROPERTIES where APPLICATION=? and PROFILE=? and LABEL=?");
+		assertThat(properties.isConfigIncomplete()).isTrue();
+		Environment expected = new JdbcEnvironmentRepository(new JdbcTemplate(this.dataSource), properties,
+				new JdbcEnvironmentRepository.PropertiesResultSetExtractor()).findOne("foo", "bar", "");
+		properties.setSingleQuery(true);
+		properties.setSingleQuerySql("SELECT APPLICATION, PROFILE, MY_KEY, MY_VALUE from MY_PROPERTIES"
+				+ " where APPLICATION in (:applications) and PROFILE in (:profiles) and LABEL=:label");
+		Environment env = new JdbcEnvironmentRepository(new JdbcTemplate(this.dataSource), properties,
+				new JdbcEnvironmentRepository.PropertiesResultSetExtractor()).findOne("foo", "bar", "");
+		assertThat(env.getProfiles()).isEqualTo(expected.getProfiles());
+		assertThat(env.getPropertySources()).extracting(PropertySource::getName).containsExactly("foo-bar",
+				"application-bar", "foo-default", "application-default");
+		assertThat(env.getPropertySources()).extracting(PropertySource::getSource)
+				.isEqualTo(expected.getPropertySources().stream().map(PropertySource::getSource).toList());
+	}
+
+	@Test
+	public void testSingleQueryNotAppliedWithCustomExtractor() {
+		JdbcEnvironmentProperties properties = new JdbcEnvironmentProperties();
+		properties.setSingleQuery(true);
+		properties.setSingleQuerySql("SELECT SHOULD_FAIL from TABLE_NOTEXIST where APPLICATION in (:applications)");
+		Environment env = new JdbcEnvironmentRepository(new JdbcTemplate(this.dataSource), properties,
+				new JdbcEnvironmentRepository.PropertiesResultSetExtractor() {
+					@Override
+					public Map<String, Object> extractData(ResultSet rs) throws SQLException {
+						Map<String, Object> map = super.extractData(rs);
+						map.replaceAll((key, value) -> value.toString().toUpperCase());
+						return map;
+					}
+				}).findOne("foo", "bar", "");
+		assertThat(env.getPropertySources()).extracting(PropertySource::getName).containsExactly("foo-bar",
+				"application-bar", "foo", "application");
+		assertThat(env.getPropertySources().get(0).getSource().get("a.b.c")).isEqualTo("FOO-BAR");
+	}
+
+	@Test
+	public void testSingleQueryNotFailOnError() {
+		JdbcEnvironmentProperties properties = new JdbcEnvironmentProperties();
+		properties.setSingleQuery(true);
+		properties.setFailOnError(false);
+		properties.setSingleQuerySql("SELECT SHOULD_FAIL from TABLE_NOTEXIST where APPLICATION in (:applications)");
+		Environment env = new JdbcEnvironmentRepository(new JdbcTemplate(this.dataSource), properties,
+				new JdbcEnvironmentRepository.PropertiesResultSetExtractor()).findOne("foo", "bar", "");
+		assertThat(env.getPropertySources()).isEmpty();
+		properties.setFailOnError(true);
+		JdbcEnvironmentRepository repository = new JdbcEnvironmentRepository(new JdbcTemplate(this.dataSource),
+				properties, new JdbcEnvironmentRepository.PropertiesResultSetExtractor());
+		assertThatThrownBy(() -> repository.findOne("foo", "bar", "")).isInstanceOf(DataAccessException.class);
+	}
+
+	@Test
+	public void testVersionedEnvironmentCachedUntilVersionChanges() {
+		JdbcTemplate jdbc = new JdbcTemplate(this.dataSource);
+		jdbc.execute("CREATE TABLE VERSIONED_PROPERTIES (\"KEY\" VARCHAR(2048), \"VALUE\" VARCHAR(4096),"
+				+ " APPLICATION VARCHAR(128), PROFILE VARCHAR(128), LABEL VARCHAR(128))");
+		jdbc.execute("CREATE TABLE PROPERTIES_VERSION (APPLICATION VARCHAR(128), LABEL VARCHAR(128),"
+				+ " VERSION VARCHAR(128))");
+		try {
+			jdbc.update("INSERT into VERSIONED_PROPERTIES values ('a.b.c', 'foo-bar', 'foo', 'bar', 'master')");
+			jdbc.update("INSERT into PROPERTIES_VERSION values ('foo', 'master', 'v1')");
+			JdbcEnvironmentProperties properties = new JdbcEnvironmentProperties();
+			properties.setSql("SELECT \"KEY\", \"VALUE\" from VERSIONED_PROPERTIES"
+					+ " where APPLICATION=? and PROFILE=? and LABEL=?");
+			properties.setSqlWithoutProfile("SELECT \"KEY\", \"VALUE\" from VERSIONED_PROPERTIES"
+					+ " where APPLICATION=? and PROFILE is null and LABEL=?");
+			properties.setVersionSql(
+					"SELECT VERSION from PROPERTIES_VERSION where APPLICATION in (:applications) and LABEL=:label");
+			JdbcEnvironmentRepository repository = new JdbcEnvironmentRepository(jdbc, properties,
+					new JdbcEnvironmentRepository.PropertiesResultSetExtractor());
+
+			Environment env = repository.findOne("foo", "bar", "");
+			assertThat(env.getVersion()).isEqualTo("v1");
+			assertThat(env.getPropertySources()).hasSize(1);
+			env.addFirst(new PropertySource("overrides", Collections.singletonMap("a.b.c", "overridden")));
+
+			jdbc.update("INSERT into VERSIONED_PROPERTIES values ('a.b.c', 'foo-null', 'foo', null, 'master')");
+			env = repository.findOne("foo", "bar", "");
+			assertThat(env.getVersion()).isEqualTo("v1");
+			assertThat(env.getPropertySources()).extracting(PropertySource::getName).containsExactly("foo-bar");
+
+			jdbc.update("UPDATE PROPERTIES_VERSION set VERSION='v2'");
+			env = repository.findOne("foo", "bar", "");
+			assertThat(env.getVersion()).isEqualTo("v2");
+			assertThat(env.getPropertySources()).extracting(PropertySource::getName).containsExactly("foo-bar",
+					"foo");
+		}
+		finally {
+			jdbc.execute("DROP TABLE VERSIONED_PROPERTIES");
+			jdbc.execute("DROP TABLE PROPERTIES_VERSION");
+		}
+	}
+
+	@Test
+	public void testVersionedEnvironmentNotCachedWhenAQueryFailed() {
+		JdbcTemplate jdbc = new JdbcTemplate(this.dataSource);
+		jdbc.execute("CREATE TABLE PROPERTIES_VERSION (APPLICATION VARCHAR(128), LABEL VARCHAR(128),"
+				+ " VERSION VARCHAR(128))");
+		try {
+			jdbc.update("INSERT into PROPERTIES_VERSION values ('foo', 'master', 'v1')");
+			JdbcEnvironmentProperties properties = new JdbcEnvironmentProperties();
+			properties.setFailOnError(false);
+			properties.setSql("SELECT \"KEY\", \"VALUE\" from LATE_PROPERTIES"
+					+ " where APPLICATION=? and PROFILE=? and LABEL=?");
+			properties.setSqlWithoutProfile("SELECT \"KEY\", \"VALUE\" from LATE_PROPERTIES"
+					+ " where APPLICATION=? and PROFILE is null and LABEL=?");
+			properties.setVersionSql(
+					"SELECT VERSION from PROPERTIES_VERSION where APPLICATION in (:applications) and LABEL=:label");
+			JdbcEnvironmentRepository repository = new JdbcEnvironmentRepository(jdbc, properties,
+					new JdbcEnvironmentRepository.PropertiesResultSetExtractor());
+
+			// the properties table is not there yet, so the queries fail
+			Environment env = repository.findOne("foo", "bar", "");
+			assertThat(env.getVersion()).isNull();
+			assertThat(env.getPropertySources()).isEmpty();
+
+			jdbc.execute("CREATE TABLE LATE_PROPERTIES (\"KEY\" VARCHAR(2048), \"VALUE\" VARCHAR(4096),"
+					+ " APPLICATION VARCHAR(128), PROFILE VARCHAR(128), LABEL VARCHAR(128))");
+			jdbc.update("INSERT into LATE_PROPERTIES values ('a.b.c', 'foo-bar', 'foo', 'bar', 'master')");
+			env = repository.findOne("foo", "bar", "");
+			assertThat(env.getVersion()).isEqualTo("v1");
+			assertThat(env.getPropertySources()).extracting(PropertySource::getName).containsExactly("foo-bar");
+		}
+		finally {
+			jdbc.execute("DROP TABLE IF EXISTS LATE_PROPERTIES");
+			jdbc.execute("DROP TABLE PROPERTIES_VERSION");
+		}
+	}
+
+	@Test
+	public void testVersionRowsInAnyOrderGiveTheSameVersion() {
+		JdbcTemplate jdbc = new JdbcTemplate(this.dataSource);
+		jdbc.execute("CREATE TABLE PROPERTIES_VERSION (APPLICATION VARCHAR(128), LABEL VARCHAR(128),"
+				+ " VERSION VARCHAR(128))");
+		try {
+			jdbc.update("INSERT into PROPERTIES_VERSION values ('foo', 'master', 'v1')");
+			jdbc.update("INSERT into PROPERTIES_VERSION values ('application', 'master', 'v2')");
+			List<String> versions = new ArrayList<>();
+			for (String order : new String[] { "asc", "desc" }) {
+				JdbcEnvironmentProperties properties = new JdbcEnvironmentProperties();
+				properties.setVersionSql("SELECT VERSION from PROPERTIES_VERSION"
+						+ " where APPLICATION in (:applications) and LABEL=:label order by VERSION " + order);
+				versions.add(new JdbcEnvironmentRepository(jdbc, properties,
+						new JdbcEnvironmentRepository.PropertiesResultSetExtractor()).findOne("foo", "bar", "")
+								.getVersion());
+			}
+			assertThat(versions.get(0)).isNotNull().isNotIn("v1", "v2").isEqualTo(versions.get(1));
+		}
+		finally {
+			jdbc.execute("DROP TABLE PROPERTIES_VERSION");
+		}
+	}
+
+	@Test
+	public void testLargeTableWithFetchSizeAndDeduplicatedKeys() {
+		JdbcTemplate jdbc = new JdbcTemplate(this.dataSource);
+		jdbc.execute("CREATE TABLE LARGE_PROPERTIES (\"KEY\" VARCHAR(2048), \"VALUE\" VARCHAR(4096),"
+				+ " APPLICATION VARCHAR(128), PROFILE VARCHAR(128), LABEL VARCHAR(128))");
+		try {
+			List<Object[]> rows = new ArrayList<>();
+			for (int i = 0; i < 5000; i++) {
+				rows.add(new Object[] { "key." + i, "foo-bar-" + i, "foo", "bar" });
+				rows.add(new Object[] { "key." + i, "foo-" + i, "foo", null });
+			}
+			jdbc.batchUpdate("INSERT into LARGE_PROPERTIES values (?, ?, ?, ?, 'master')", rows);
+			JdbcEnvironmentProperties properties = new JdbcEnvironmentProperties();
+			properties.setSql("SELECT \"KEY\", \"VALUE\" from LARGE_PROPERTIES"
+					+ " where APPLICATION=? and PROFILE=? and LABEL=?");
+			properties.setSqlWithoutProfile("SELECT \"KEY\", \"VALUE\" from LARGE_PROPERTIES"
+					+ " where APPLICATION=? and PROFILE is null and LABEL=?");
+			properties.setSingleQuerySql("SELECT APPLICATION, PROFILE, \"KEY\", \"VALUE\" from LARGE_PROPERTIES"
+					+ " where APPLICATION in (:applications) and LABEL=:label");
+			properties.setFetchSize(500);
+			properties.setDeduplicateKeys(true);
+
+			for (boolean singleQuery : new boolean[] { false, true }) {
+				properties.setSingleQuery(singleQuery);
+				Environment env = new JdbcEnvironmentRepository(jdbc, properties,
+						new JdbcEnvironmentRepository.PropertiesResultSetExtractor()).findOne("foo", "bar", "");
+				assertThat(env.getPropertySources()).extracting(PropertySource::getName).containsExactly("foo-bar",
+						"foo");
+				Map<?, ?> profiled = env.getPropertySources().get(0).getSource();
+				Map<?, ?> unprofiled = env.getPropertySources().get(1).getSource();
+				assertThat(profiled).hasSize(5000).containsEntry("key.4999", "foo-bar-4999");
+				assertThat(unprofiled).hasSize(5000).containsEntry("key.4999", "foo-4999");
+				assertThat(profiled.keySet().iterator().next()).isSameAs(unprofiled.keySet().iterator().next());
+			}
+		}
+		finally {
+			jdbc.execute("DROP TABLE LARGE_PROPERTIES");
+		}
+	}
+
 	@ImportAutoConfiguration(SqlInitializationAutoConfiguration.class)
 	@Configuration(proxyBeanMethods = false)
 	protected static class ApplicationConfiguration {
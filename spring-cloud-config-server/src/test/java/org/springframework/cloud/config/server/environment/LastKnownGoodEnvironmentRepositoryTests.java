@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.cloud.config.server.support.RequestContextSupport;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LastKnownGoodEnvironmentRepositoryTests {
+
+	private EnvironmentRepository delegate = mock(EnvironmentRepository.class);
+
+	private LastKnownGoodEnvironmentRepository repository = new LastKnownGoodEnvironmentRepository(this.delegate,
+			10, new ObjectMapper());
+
+	private MockHttpServletRequest request = new MockHttpServletRequest();
+
+	private MockHttpServletResponse response = new MockHttpServletResponse();
+
+	@BeforeEach
+	public void init() {
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(this.request, this.response));
+	}
+
+	@AfterEach
+	public void close() {
+		RequestContextHolder.resetRequestAttributes();
+		this.repository.destroy();
+	}
+
+	@Test
+	public void servesLastKnownGoodWhenDelegateFails() {
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1"))
+				.thenThrow(new IllegalStateException("Backend down"));
+
+		Environment live = this.repository.findOne("foo", "bar", "master");
+		live.addFirst(new PropertySource("overrides", Collections.singletonMap("foo", "bar")));
+		assertThat(this.response.getHeader(HttpHeaders.WARNING)).isNull();
+
+		Environment stale = this.repository.findOne("foo", "bar", "master");
+		assertThat(stale.getVersion()).isEqualTo("v1");
+		assertThat(stale.getPropertySources()).extracting(PropertySource::getName).containsExactly("v1");
+		assertThat(this.response.getHeader(HttpHeaders.WARNING)).isEqualTo("110 - \"Response is Stale\"");
+		assertThat(this.response.getHeader(HttpHeaders.AGE)).isNotNull();
+	}
+
+	@Test
+	public void clientErrorsAreNotMasked() {
+		when(this.delegate.findOne("foo", "bar", "missing", false)).thenReturn(environment("v1"))
+				.thenThrow(new NoSuchLabelException("No such label: missing"));
+
+		this.repository.findOne("foo", "bar", "missing");
+
+		assertThatExceptionOfType(NoSuchLabelException.class)
+				.isThrownBy(() -> this.repository.findOne("foo", "bar", "missing"));
+	}
+
+	@Test
+	public void servesStaleWhenSlowAndRefreshesInBackground() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1")).thenAnswer(i -> {
+			release.await(5, TimeUnit.SECONDS);
+			return environment("v2");
+		});
+		this.repository.setParallelism(2);
+		this.repository.setLatencyBudget(Duration.ofMillis(100));
+
+		assertThat(this.repository.findOne("foo", "bar", "master").getVersion()).isEqualTo("v1");
+		assertThat(this.repository.findOne("foo", "bar", "master").getVersion()).isEqualTo("v1");
+		assertThat(this.response.getHeader(HttpHeaders.WARNING)).isNotNull();
+
+		release.countDown();
+		long deadline = System.currentTimeMillis() + 5000;
+		Environment refreshed = this.repository.findOne("foo", "bar", "master");
+		while (!"v2".equals(refreshed.getVersion()) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+			refreshed = this.repository.findOne("foo", "bar", "master");
+		}
+		assertThat(refreshed.getVersion()).isEqualTo("v2");
+	}
+
+	@Test
+	public void lastKnownGoodSurvivesRestartWhenPersisted(@TempDir Path directory) {
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1"))
+				.thenThrow(new IllegalStateException("Backend down"));
+		this.repository.setPersistenceDirectory(directory.toString());
+		this.repository.findOne("foo", "bar", "master");
+
+		LastKnownGoodEnvironmentRepository restarted = new LastKnownGoodEnvironmentRepository(this.delegate, 10,
+				new ObjectMapper());
+		restarted.setPersistenceDirectory(directory.toString());
+		Environment stale = restarted.findOne("foo", "bar", "master");
+
+		assertThat(stale.getVersion()).isEqualTo("v1");
+		assertThat(stale.getPropertySources().get(0).getSource()).containsEntry("foo", "v1");
+		assertThat(directory.toFile().list()).hasSize(1);
+	}
+
+	@Test
+	public void backgroundQueriesDoNotReadTheRecycledRequest() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> tokens = new CopyOnWriteArrayList<>();
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1")).thenAnswer(i -> {
+			release.await(5, TimeUnit.SECONDS);
+			tokens.add(RequestContextSupport.getRequestHeader(ConfigClientProperties.TOKEN_HEADER));
+			return environment("v2");
+		});
+		this.request.addHeader(ConfigClientProperties.TOKEN_HEADER, "token");
+		this.repository.setParallelism(2);
+		this.repository.setLatencyBudget(Duration.ofMillis(100));
+
+		this.repository.findOne("foo", "bar", "master");
+		assertThat(this.repository.findOne("foo", "bar", "master").getVersion()).isEqualTo("v1");
+		// The container recycles the request for another client
+		this.request.removeHeader(ConfigClientProperties.TOKEN_HEADER);
+		this.request.addHeader(ConfigClientProperties.TOKEN_HEADER, "other");
+		release.countDown();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (tokens.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertThat(tokens).containsExactly("token");
+	}
+
+	@Test
+	public void persistedEnvironmentsAreOnlyReadableByTheOwner(@TempDir Path directory) throws Exception {
+		assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1"));
+		Path persisted = directory.resolve("last-known-good");
+		this.repository.setPersistenceDirectory(persisted.toString());
+
+		this.repository.findOne("foo", "bar", "master");
+
+		assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(persisted))).isEqualTo("rwx------");
+		List<Path> files;
+		try (Stream<Path> list = Files.list(persisted)) {
+			files = list.toList();
+		}
+		assertThat(files).hasSize(1);
+		assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(files.get(0)))).isEqualTo("rw-------");
+	}
+
+	private static Environment environment(String version) {
+		Environment environment = new Environment("foo", new String[] { "bar" }, "master", version, null);
+		environment.add(new PropertySource(version, Collections.singletonMap("foo", version)));
+		return environment;
+	}
+
+}
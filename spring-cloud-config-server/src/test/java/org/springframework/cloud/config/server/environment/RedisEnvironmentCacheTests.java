@@ -0,0 +1,196 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class RedisEnvironmentCacheTests {
+
+	private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+
+	@SuppressWarnings("unchecked")
+	private final ValueOperations<String, String> values = mock(ValueOperations.class);
+
+	@SuppressWarnings("unchecked")
+	private final HashOperations<String, Object, Object> hashes = mock(HashOperations.class);
+
+	@SuppressWarnings("unchecked")
+	private final SetOperations<String, String> sets = mock(SetOperations.class);
+
+	private final Map<String, String> stored = new HashMap<>();
+
+	private final Map<Object, Object> versions = new HashMap<>();
+
+	private final EnvironmentRepository delegate = mock(EnvironmentRepository.class);
+
+	private final RedisEnvironmentCache cache = new RedisEnvironmentCache(this.redis, new ObjectMapper(), "test:");
+
+	@BeforeEach
+	public void init() {
+		when(this.redis.opsForValue()).thenReturn(this.values);
+		when(this.redis.opsForHash()).thenReturn(this.hashes);
+		when(this.redis.opsForSet()).thenReturn(this.sets);
+		when(this.values.get(anyString())).thenAnswer(i -> this.stored.get(i.<String>getArgument(0)));
+		doAnswer(i -> this.stored.put(i.getArgument(0), i.getArgument(1))).when(this.values).set(anyString(),
+				anyString(), any(Duration.class));
+		when(this.hashes.get(eq("test:versions"), any())).thenAnswer(i -> this.versions.get(i.getArgument(1)));
+		doAnswer(i -> this.versions.put(i.getArgument(1), i.getArgument(2))).when(this.hashes)
+				.put(eq("test:versions"), any(), any());
+		this.cache.setNearCacheTimeToLive(Duration.ZERO);
+	}
+
+	@Test
+	public void versionedEnvironmentIsServedFromRedis() {
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1"));
+		EnvironmentRepository repository = this.cache.caching(this.delegate);
+
+		assertThat(repository.findOne("foo", "bar", "master").getVersion()).isEqualTo("v1");
+		Environment cached = repository.findOne("foo", "bar", "master");
+
+		assertThat(cached.getVersion()).isEqualTo("v1");
+		assertThat(cached.getPropertySources().get(0).getSource()).containsEntry("foo", "v1");
+		verify(this.delegate, times(1)).findOne("foo", "bar", "master", false);
+		verify(this.sets).add(eq("test:keys:foo"), anyString());
+	}
+
+	@Test
+	public void cachedEnvironmentIsReloadedWhenTheBackendHasANewVersion() {
+		EnvironmentRepository delegate = mock(EnvironmentRepository.class,
+				withSettings().extraInterfaces(SearchPathLocator.class));
+		SearchPathLocator locator = (SearchPathLocator) delegate;
+		when(delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1"), environment("v2"));
+		// only consulted when the environment is found in Redis
+		when(locator.getLocations("foo", "bar", "master")).thenReturn(locations("v1"), locations("v2"));
+		EnvironmentRepository repository = this.cache.caching(delegate);
+
+		repository.findOne("foo", "bar", "master");
+		assertThat(repository.findOne("foo", "bar", "master").getVersion()).isEqualTo("v1");
+		assertThat(repository.findOne("foo", "bar", "master").getVersion()).isEqualTo("v2");
+
+		verify(delegate, times(2)).findOne("foo", "bar", "master", false);
+		assertThat(this.versions).containsEntry("foo/master", "v2");
+	}
+
+	@Test
+	public void environmentWithoutVersionIsNotCached() {
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment(null));
+		EnvironmentRepository repository = this.cache.caching(this.delegate);
+
+		repository.findOne("foo", "bar", "master");
+		repository.findOne("foo", "bar", "master");
+
+		verify(this.delegate, times(2)).findOne("foo", "bar", "master", false);
+		assertThat(this.stored).isEmpty();
+	}
+
+	@Test
+	public void newVersionInvalidatesAllNodes() {
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1"));
+		when(this.delegate.findOne("foo", "other", "master", false)).thenReturn(environment("v2"));
+		when(this.sets.members("test:keys:foo")).thenReturn(Collections.singleton("test:stale"));
+		EnvironmentRepository repository = this.cache.caching(this.delegate);
+
+		repository.findOne("foo", "bar", "master");
+		repository.findOne("foo", "other", "master");
+
+		verify(this.redis).delete(Collections.singleton("test:stale"));
+		verify(this.redis).convertAndSend("test:invalidations", "foo");
+		assertThat(this.versions).containsEntry("foo/master", "v2");
+	}
+
+	@Test
+	public void changedPathsInvalidateTheirApplications() {
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1"));
+		when(this.sets.members("test:keys:foo")).thenAnswer(i -> new HashSet<>(this.stored.keySet()));
+		doAnswer(i -> {
+			this.stored.keySet().removeAll(i.getArgument(0));
+			return null;
+		}).when(this.redis).delete(anyCollection());
+		EnvironmentRepository repository = this.cache.caching(this.delegate);
+		repository.findOne("foo", "bar", "master");
+
+		this.cache.onEnvironmentRepositoryChanged(new EnvironmentRepositoryChangedEvent(this, "config/foo-bar.yml"));
+		repository.findOne("foo", "bar", "master");
+
+		verify(this.redis).convertAndSend("test:invalidations", "foo-bar");
+		verify(this.redis).convertAndSend("test:invalidations", "foo");
+		verify(this.redis).delete("test:keys:foo");
+		verify(this.delegate, times(2)).findOne("foo", "bar", "master", false);
+	}
+
+	@Test
+	public void changedDefaultApplicationInvalidatesAllApplications() {
+		this.versions.put("foo/master", "v1");
+		this.versions.put("bar/main", "v2");
+		when(this.hashes.keys("test:versions")).thenReturn(this.versions.keySet());
+
+		this.cache.invalidatePaths(Collections.singletonList("application-dev.properties"));
+
+		verify(this.redis).convertAndSend("test:invalidations", "foo");
+		verify(this.redis).convertAndSend("test:invalidations", "bar");
+		verify(this.redis, never()).convertAndSend("test:invalidations", "application");
+	}
+
+	@Test
+	public void redisFailuresFallBackToTheRepository() {
+		when(this.redis.opsForValue()).thenThrow(new IllegalStateException("Redis down"));
+		when(this.delegate.findOne("foo", "bar", "master", false)).thenReturn(environment("v1"));
+
+		Environment environment = this.cache.caching(this.delegate).findOne("foo", "bar", "master");
+
+		assertThat(environment.getVersion()).isEqualTo("v1");
+	}
+
+	private static SearchPathLocator.Locations locations(String version) {
+		return new SearchPathLocator.Locations("foo", "bar", "master", version, new String[0]);
+	}
+
+	private static Environment environment(String version) {
+		Environment environment = new Environment("foo", new String[] { "bar" }, "master", version, null);
+		environment.add(new PropertySource("one", Collections.singletonMap("foo", version)));
+		return environment;
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.environment;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RedisEnvironmentRepositoryTests {
+
+	private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void readsAllKeysInOnePipeline() {
+		when(this.redis.getStringSerializer()).thenReturn(RedisSerializer.string());
+		when(this.redis.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(
+				Collections.singletonMap("a", "foo-dev"), Collections.singletonMap("a", "application-dev"),
+				Collections.singletonMap("a", "foo-default"), Collections.emptyMap(),
+				Collections.singletonMap("a", "foo"), Collections.singletonMap("a", "application")));
+		RedisEnvironmentProperties properties = new RedisEnvironmentProperties();
+		properties.setDefaultApplicationName("application");
+
+		Environment environment = new RedisEnvironmentRepository(this.redis, properties).findOne("foo",
+				"default,dev", "master");
+
+		assertThat(environment.getPropertySources()).extracting(PropertySource::getName).containsExactly(
+				"redis:foo-dev", "redis:application-dev", "redis:foo-default", "redis:application-default",
+				"redis:foo", "redis:application");
+		assertThat(environment.getPropertySources().get(1).getSource()).containsEntry("a", "application-dev");
+
+		ArgumentCaptor<RedisCallback<Object>> callback = ArgumentCaptor.forClass(RedisCallback.class);
+		verify(this.redis).executePipelined(callback.capture());
+		RedisConnection connection = mock(RedisConnection.class);
+		RedisHashCommands hashCommands = mock(RedisHashCommands.class);
+		when(connection.hashCommands()).thenReturn(hashCommands);
+		callback.getValue().doInRedis(connection);
+		InOrder order = inOrder(hashCommands);
+		for (String key : Arrays.asList("foo-dev", "application-dev", "foo-default", "application-default", "foo",
+				"application")) {
+			order.verify(hashCommands).hGetAll(key.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void versionedEnvironmentCachedUntilVersionChanges() {
+		HashOperations<String, Object, Object> hashes = mock(HashOperations.class);
+		when(this.redis.opsForHash()).thenReturn(hashes);
+		when(hashes.multiGet("versions", Arrays.asList("foo-dev", "foo"))).thenReturn(Arrays.asList("1", "1"),
+				Arrays.asList("1", "1"), Arrays.asList("2", "1"));
+		when(this.redis.getStringSerializer()).thenReturn(RedisSerializer.string());
+		when(this.redis.executePipelined(any(RedisCallback.class))).thenReturn(
+				Arrays.asList(Collections.singletonMap("a", "dev"), Collections.singletonMap("a", "foo")));
+		RedisEnvironmentProperties properties = new RedisEnvironmentProperties();
+		properties.setVersionKey("versions");
+		RedisEnvironmentRepository repository = new RedisEnvironmentRepository(this.redis, properties);
+
+		Environment first = repository.findOne("foo", "dev", "master");
+		Environment cached = repository.findOne("foo", "dev", "master");
+		Environment changed = repository.findOne("foo", "dev", "master");
+
+		assertThat(first.getVersion()).isNotNull().isEqualTo(cached.getVersion());
+		assertThat(cached.getPropertySources().get(0).getSource()).containsEntry("a", "dev");
+		assertThat(changed.getVersion()).isNotEqualTo(first.getVersion());
+		verify(this.redis, times(2)).executePipelined(any(RedisCallback.class));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void keyspaceNotificationEvictsCacheAndPublishesChange() {
+		when(this.redis.getStringSerializer()).thenReturn(RedisSerializer.string());
+		when(this.redis.executePipelined(any(RedisCallback.class))).thenReturn(
+				Arrays.asList(Collections.singletonMap("a", "dev"), Collections.singletonMap("a", "foo")),
+				Arrays.asList(Collections.singletonMap("a", "changed"), Collections.singletonMap("a", "foo")));
+		keyspaceEvents("Kh$g");
+		RedisEnvironmentProperties properties = new RedisEnvironmentProperties();
+		properties.setKeyspaceNotifications(true);
+		properties.setNotificationDelay(Duration.ZERO);
+		RedisEnvironmentRepository repository = new RedisEnvironmentRepository(this.redis, properties);
+		ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+		repository.setApplicationEventPublisher(publisher);
+
+		Environment first = repository.findOne("foo", "dev", "master");
+		repository.keyChanged("bar-dev");
+		assertThat(repository.findOne("foo", "dev", "master").getVersion()).isEqualTo(first.getVersion());
+		repository.keyChanged("foo-dev");
+		Environment changed = repository.findOne("foo", "dev", "master");
+
+		assertThat(changed.getPropertySources().get(0).getSource()).containsEntry("a", "changed");
+		assertThat(changed.getVersion()).isNotEqualTo(first.getVersion());
+		verify(this.redis, times(2)).executePipelined(any(RedisCallback.class));
+		ArgumentCaptor<EnvironmentRepositoryChangedEvent> event = ArgumentCaptor
+				.forClass(EnvironmentRepositoryChangedEvent.class);
+		verify(publisher, times(1)).publishEvent(event.capture());
+		assertThat(event.getValue().getPaths()).containsExactly("foo-dev");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void keyspaceNotificationsAreCoalescedAndUnrelatedKeysIgnored() {
+		when(this.redis.getStringSerializer()).thenReturn(RedisSerializer.string());
+		when(this.redis.executePipelined(any(RedisCallback.class))).thenReturn(
+				Arrays.asList(Collections.singletonMap("a", "dev"), Collections.singletonMap("a", "foo")));
+		RedisEnvironmentProperties properties = new RedisEnvironmentProperties();
+		properties.setKeyspaceNotifications(true);
+		properties.setNotificationDelay(Duration.ofMillis(100));
+		RedisEnvironmentRepository repository = new RedisEnvironmentRepository(this.redis, properties);
+		ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+		repository.setApplicationEventPublisher(publisher);
+
+		repository.findOne("foo", "dev", "master");
+		repository.keyspaceNotification("foo-dev", "hset");
+		repository.keyspaceNotification("foo", "hdel");
+		repository.keyspaceNotification("foo-dev", "hincrby");
+		repository.keyspaceNotification("bar-dev", "hset");
+		repository.keyspaceNotification("foo", "expire");
+
+		ArgumentCaptor<EnvironmentRepositoryChangedEvent> event = ArgumentCaptor
+				.forClass(EnvironmentRepositoryChangedEvent.class);
+		verify(publisher, timeout(1000)).publishEvent(event.capture());
+		assertThat(event.getValue().getPaths()).containsExactly("foo-dev", "foo");
+		verify(publisher, after(300).times(1)).publishEvent(any(EnvironmentRepositoryChangedEvent.class));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void keyspaceNotificationsDisabledOnTheServerAreNotTrusted() {
+		when(this.redis.getStringSerializer()).thenReturn(RedisSerializer.string());
+		when(this.redis.executePipelined(any(RedisCallback.class))).thenReturn(
+				Arrays.asList(Collections.singletonMap("a", "dev"), Collections.singletonMap("a", "foo")));
+		keyspaceEvents("");
+		RedisEnvironmentProperties properties = new RedisEnvironmentProperties();
+		properties.setKeyspaceNotifications(true);
+		RedisEnvironmentRepository repository = new RedisEnvironmentRepository(this.redis, properties);
+
+		repository.findOne("foo", "dev", "master");
+		repository.findOne("foo", "dev", "master");
+
+		verify(this.redis, times(2)).executePipelined(any(RedisCallback.class));
+		verify(this.redis, times(1)).execute(any(RedisCallback.class));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void environmentCachedOnKeyspaceNotificationsExpires() {
+		when(this.redis.getStringSerializer()).thenReturn(RedisSerializer.string());
+		when(this.redis.executePipelined(any(RedisCallback.class))).thenReturn(
+				Arrays.asList(Collections.singletonMap("a", "dev"), Collections.singletonMap("a", "foo")));
+		keyspaceEvents("KEA");
+		RedisEnvironmentProperties properties = new RedisEnvironmentProperties();
+		properties.setKeyspaceNotifications(true);
+		properties.setCacheTimeToLive(Duration.ZERO);
+		RedisEnvironmentRepository repository = new RedisEnvironmentRepository(this.redis, properties);
+
+		repository.findOne("foo", "dev", "master");
+		repository.findOne("foo", "dev", "master");
+
+		verify(this.redis, times(2)).executePipelined(any(RedisCallback.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void keyspaceEvents(String flags) {
+		Properties config = new Properties();
+		config.setProperty("notify-keyspace-events", flags);
+		when(this.redis.execute(any(RedisCallback.class))).thenReturn(config);
+	}
+
+}
@@ -18,6 +18,8 @@ package org.springframework.cloud.config.server.resource;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import io.micrometer.observation.ObservationRegistry;
 import org.assertj.core.api.Assertions;
@@ -25,6 +27,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import software.amazon.awssdk.services.s3.S3Client;
 
 import org.springframework.boot.WebApplicationType;
@@ -36,14 +39,20 @@ import org.springframework.cloud.config.server.environment.AwsS3EnvironmentRepos
 import org.springframework.cloud.config.server.environment.NativeEnvironmentProperties;
 import org.springframework.cloud.config.server.environment.NativeEnvironmentRepository;
 import org.springframework.cloud.config.server.environment.NativeEnvironmentRepositoryTests;
+import org.springframework.cloud.config.server.environment.SearchPathLocator;
+import org.springframework.cloud.config.server.environment.SearchPathLocator.Locations;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -102,6 +111,84 @@ public class GenericResourceRepositoryTests {
 				.isInstanceOf(NoSuchResourceException.class);
 	}
 
+	@Test
+	public void lookupsAreIndexedPerVersion(@TempDir Path dir) throws IOException {
+		String location = dir.toUri().toString();
+		SearchPathLocator locator = locator();
+		when(locator.getLocations("blah", "default", "master"))
+				.thenReturn(new Locations("blah", "default", "master", "v1", new String[] { location }));
+		when(locator.isCurrent(any(Locations.class))).thenReturn(true);
+		GenericResourceRepository repository = new GenericResourceRepository(locator);
+		repository.setResourceLoader(new DefaultResourceLoader());
+
+		Assertions.assertThatThrownBy(() -> repository.findOne("blah", "default", "master", "foo.txt"))
+				.isInstanceOf(NoSuchResourceException.class);
+		Files.writeString(dir.resolve("foo.txt"), "foo");
+		// the miss is remembered for the same version
+		Assertions.assertThatThrownBy(() -> repository.findOne("blah", "default", "master", "foo.txt"))
+				.isInstanceOf(NoSuchResourceException.class);
+
+		when(locator.getLocations("blah", "default", "master"))
+				.thenReturn(new Locations("blah", "default", "master", "v2", new String[] { location }));
+		Resource resource = repository.findOne("blah", "default", "master", "foo.txt");
+		assertThat(resource.getFile()).isEqualTo(dir.resolve("foo.txt").toFile());
+		assertThat(repository.findOne("blah", "default", "master", "foo.txt")).isSameAs(resource);
+	}
+
+	@Test
+	public void labelsSharingLocationsKeepTheirOwnIndex(@TempDir Path dir) throws IOException {
+		String location = dir.toUri().toString();
+		SearchPathLocator locator = locator();
+		when(locator.getLocations("blah", "default", "master"))
+				.thenReturn(new Locations("blah", "default", "master", "v1", new String[] { location }));
+		when(locator.getLocations("blah", "default", "other"))
+				.thenReturn(new Locations("blah", "default", "other", "v2", new String[] { location }));
+		when(locator.isCurrent(any(Locations.class))).thenReturn(true);
+		GenericResourceRepository repository = new GenericResourceRepository(locator);
+		repository.setResourceLoader(new DefaultResourceLoader());
+
+		Assertions.assertThatThrownBy(() -> repository.findOne("blah", "default", "master", "foo.txt"))
+				.isInstanceOf(NoSuchResourceException.class);
+		Assertions.assertThatThrownBy(() -> repository.findOne("blah", "default", "other", "foo.txt"))
+				.isInstanceOf(NoSuchResourceException.class);
+		Files.writeString(dir.resolve("foo.txt"), "foo");
+		// looking up the other label did not drop the index of the first one
+		Assertions.assertThatThrownBy(() -> repository.findOne("blah", "default", "master", "foo.txt"))
+				.isInstanceOf(NoSuchResourceException.class);
+	}
+
+	@Test
+	public void lookupsAreNotIndexedWhenTheVersionChangedWhileProbing(@TempDir Path dir) throws IOException {
+		SearchPathLocator locator = locator();
+		when(locator.getLocations("blah", "default", "master"))
+				.thenReturn(new Locations("blah", "default", "master", "v1", new String[] { dir.toUri().toString() }));
+		// for example another label was checked out into the same working copy
+		when(locator.isCurrent(any(Locations.class))).thenReturn(false);
+		GenericResourceRepository repository = new GenericResourceRepository(locator);
+		repository.setResourceLoader(new DefaultResourceLoader());
+
+		Assertions.assertThatThrownBy(() -> repository.findOne("blah", "default", "master", "foo.txt"))
+				.isInstanceOf(NoSuchResourceException.class);
+		// the lookup was tried again in case the label is checked out again
+		verify(locator, times(3)).getLocations("blah", "default", "master");
+		Files.writeString(dir.resolve("foo.txt"), "foo");
+		assertThat(repository.findOne("blah", "default", "master", "foo.txt").exists()).isTrue();
+	}
+
+	@Test
+	public void lookupsWithoutVersionAreNotIndexed(@TempDir Path dir) throws IOException {
+		SearchPathLocator locator = locator();
+		when(locator.getLocations("blah", "default", "master"))
+				.thenReturn(new Locations("blah", "default", "master", null, new String[] { dir.toUri().toString() }));
+		GenericResourceRepository repository = new GenericResourceRepository(locator);
+		repository.setResourceLoader(new DefaultResourceLoader());
+
+		Assertions.assertThatThrownBy(() -> repository.findOne("blah", "default", "master", "foo.txt"))
+				.isInstanceOf(NoSuchResourceException.class);
+		Files.writeString(dir.resolve("foo.txt"), "foo");
+		assertThat(repository.findOne("blah", "default", "master", "foo.txt").exists()).isTrue();
+	}
+
 	@Test
 	public void invalidPath(CapturedOutput capturedOutput) {
 		Assertions.assertThatThrownBy(() -> {
@@ -189,4 +276,10 @@ public class GenericResourceRepositoryTests {
 		assertThat(resource.getURL()).isEqualTo(new URL("https://us-east-1/test/main%2Fdata.json"));
 	}
 
+	private static SearchPathLocator locator() {
+		SearchPathLocator locator = mock(SearchPathLocator.class);
+		when(locator.snapshot(any(Locations.class), any(Resource.class))).thenAnswer(i -> i.getArgument(1));
+		return locator;
+	}
+
 }
@@ -16,8 +16,18 @@
 
 package org.springframework.cloud.config.server.resource;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -36,20 +46,26 @@ import org.springframework.cloud.config.server.environment.EnvironmentRepository
 import org.springframework.cloud.config.server.environment.NoSuchLabelException;
 import org.springframework.cloud.config.server.resource.ResourceControllerIntegrationTests.ControllerConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.AbstractResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.client.RestTemplate;
 import org.springframework.web.context.WebApplicationContext;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 
@@ -147,16 +163,81 @@ public class ResourceControllerIntegrationTests {
 
 	@Test
 	public void binaryResourceNoLabel() throws Exception {
-		when(this.repository.findOne("foo", "default", null)).thenReturn(new Environment("foo", "default", "master"));
 		when(this.resources.findOne("foo", "default", null, "foo.txt"))
 				.thenReturn(new ClassPathResource("resource-controller/foo.txt"));
 		this.mvc.perform(MockMvcRequestBuilders.get("/foo/default/foo.txt").param("useDefaultLabel", "")
 				.header(HttpHeaders.ACCEPT, MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE))
-				.andExpect(MockMvcResultMatchers.status().isOk());
-		verify(this.repository).findOne("foo", "default", null);
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.content().string("hello"));
+		verifyNoInteractions(this.repository);
 		verify(this.resources).findOne("foo", "default", null, "foo.txt");
 	}
 
+	@Test
+	public void binaryResourceRange() throws Exception {
+		when(this.resources.findOne("foo", "default", "master", "foo.txt"))
+				.thenReturn(new ClassPathResource("resource-controller/foo.txt"));
+		this.mvc.perform(MockMvcRequestBuilders.get("/foo/default/master/foo.txt")
+				.header(HttpHeaders.ACCEPT, MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE)
+				.header(HttpHeaders.RANGE, "bytes=1-3"))
+				.andExpect(MockMvcResultMatchers.status().isPartialContent())
+				.andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes 1-3/5"))
+				.andExpect(MockMvcResultMatchers.content().string("ell"));
+		verifyNoInteractions(this.repository);
+	}
+
+	@Test
+	public void binaryResourceStaleIfRange() throws Exception {
+		when(this.resources.findOne("foo", "default", "master", "foo.txt"))
+				.thenReturn(new ClassPathResource("resource-controller/foo.txt"));
+		this.mvc.perform(MockMvcRequestBuilders.get("/foo/default/master/foo.txt")
+				.header(HttpHeaders.ACCEPT, MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE)
+				.header(HttpHeaders.RANGE, "bytes=1-3")
+				.header(HttpHeaders.IF_RANGE, "Wed, 21 Oct 2015 07:28:00 GMT"))
+				.andExpect(MockMvcResultMatchers.status().isOk())
+				.andExpect(MockMvcResultMatchers.content().string("hello"));
+	}
+
+	@Test
+	public void concurrentBinaryDownloadsAreStreamed() throws Exception {
+		// each resource stops half way until its client has received part of it, so the
+		// downloads can only complete if the body is streamed rather than buffered
+		int downloads = 4;
+		int size = 4 * 1024 * 1024;
+		RestTemplate rest = new RestTemplate(new HttpComponentsClientHttpRequestFactory());
+		ExecutorService executor = Executors.newFixedThreadPool(downloads);
+		try {
+			List<Future<Long>> results = new ArrayList<>();
+			for (int i = 0; i < downloads; i++) {
+				String name = "large" + i + ".bin";
+				CountDownLatch received = new CountDownLatch(1);
+				when(this.resources.findOne("foo", "default", "master", name))
+						.thenReturn(new HalfWayResource(name, size, received));
+				String url = "http://localhost:" + port + "/foo/default/master/" + name;
+				results.add(executor.submit(() -> rest.execute(url, HttpMethod.GET,
+						request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_OCTET_STREAM)),
+						response -> {
+							long count = 0;
+							byte[] buffer = new byte[8192];
+							InputStream body = response.getBody();
+							for (int read = body.read(buffer); read != -1; read = body.read(buffer)) {
+								count += read;
+								if (count >= size / 4) {
+									received.countDown();
+								}
+							}
+							return count;
+						})));
+			}
+			for (Future<Long> result : results) {
+				assertThat(result.get(1, TimeUnit.MINUTES)).isEqualTo(size);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
 	@Test
 	public void resourceWithMissingLabel() throws Exception {
 		when(this.resources.findOne("foo", "default", "missing", "foo.txt"))
@@ -165,6 +246,83 @@ public class ResourceControllerIntegrationTests {
 				.andExpect(MockMvcResultMatchers.status().isNotFound());
 	}
 
+	/**
+	 * A resource of zeros that stops half way through until the latch is released.
+	 */
+	private static final class HalfWayResource extends AbstractResource {
+
+		private final String name;
+
+		private final int size;
+
+		private final CountDownLatch latch;
+
+		private HalfWayResource(String name, int size, CountDownLatch latch) {
+			this.name = name;
+			this.size = size;
+			this.latch = latch;
+		}
+
+		@Override
+		public String getFilename() {
+			return this.name;
+		}
+
+		@Override
+		public String getDescription() {
+			return "resource [" + this.name + "]";
+		}
+
+		@Override
+		public long contentLength() {
+			return this.size;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return new InputStream() {
+
+				private int position;
+
+				@Override
+				public int read() throws IOException {
+					byte[] one = new byte[1];
+					return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException {
+					if (this.position >= size) {
+						return -1;
+					}
+					int half = size / 2;
+					if (this.position == half) {
+						awaitLatch();
+					}
+					int limit = this.position < half ? half : size;
+					int count = Math.min(length, limit - this.position);
+					Arrays.fill(buffer, offset, offset + count, (byte) 0);
+					this.position += count;
+					return count;
+				}
+
+			};
+		}
+
+		private void awaitLatch() throws IOException {
+			try {
+				if (!this.latch.await(30, TimeUnit.SECONDS)) {
+					throw new IOException("The first half of " + this.name + " was never received");
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+		}
+
+	}
+
 	@SpringBootConfiguration
 	@EnableAutoConfiguration
 	public static class ControllerConfiguration {
@@ -16,29 +16,58 @@
 
 package org.springframework.cloud.config.server.resource;
 
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.encryption.ResourceEncryptor;
+import org.springframework.cloud.config.server.environment.EnvironmentRepository;
+import org.springframework.cloud.config.server.environment.JGitEnvironmentProperties;
+import org.springframework.cloud.config.server.environment.JGitEnvironmentRepository;
 import org.springframework.cloud.config.server.environment.NativeEnvironmentProperties;
 import org.springframework.cloud.config.server.environment.NativeEnvironmentRepository;
 import org.springframework.cloud.config.server.environment.NativeEnvironmentRepositoryTests;
+import org.springframework.cloud.config.server.test.ConfigServerTestUtils;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.context.request.ServletWebRequest;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -289,8 +318,9 @@ public class ResourceControllerTests {
 		MockHttpServletRequest request = new MockHttpServletRequest();
 		ServletWebRequest webRequest = new ServletWebRequest(request, new MockHttpServletResponse());
 		request.setRequestURI("/foo/bar/dev/" + "spam/foo.txt");
-		byte[] resource = this.controller.binary("foo", "bar", "dev", webRequest);
-		assertThat(new String(resource)).isEqualToIgnoringNewLines("foo: dev_bar/spam");
+		Resource resource = this.controller.binary("foo", "bar", "dev", webRequest);
+		assertThat(new String(StreamUtils.copyToByteArray(resource.getInputStream())))
+				.isEqualToIgnoringNewLines("foo: dev_bar/spam");
 	}
 
 	private String replaceNewLines(String text) {
@@ -303,8 +333,9 @@ public class ResourceControllerTests {
 		MockHttpServletRequest request = new MockHttpServletRequest();
 		ServletWebRequest webRequest = new ServletWebRequest(request, new MockHttpServletResponse());
 		request.setRequestURI("/dev/spam/bar/" + "foo.txt");
-		byte[] resource = this.controller.binary("dev/spam", "bar", null, webRequest);
-		assertThat(new String(resource)).isEqualToIgnoringNewLines("foo: dev_bar/spam");
+		Resource resource = this.controller.binary("dev/spam", "bar", null, webRequest);
+		assertThat(new String(StreamUtils.copyToByteArray(resource.getInputStream())))
+				.isEqualToIgnoringNewLines("foo: dev_bar/spam");
 	}
 
 	@Test
@@ -345,6 +376,152 @@ public class ResourceControllerTests {
 		assertThat(resource).isEqualToIgnoringNewLines("foo: dev_bar/spam");
 	}
 
+	@Test
+	public void concurrentRetrievesAreNotSerialized() throws Exception {
+		int requests = 4;
+		CountDownLatch inFlight = new CountDownLatch(requests);
+		ResourceRepository resources = mock(ResourceRepository.class);
+		when(resources.findOne(anyString(), anyString(), anyString(), anyString()))
+				.thenAnswer(invocation -> new ByteArrayResource("foo: ${foo}".getBytes()));
+		Environment environment = new Environment("foo", "bar");
+		environment.add(new PropertySource("test", Collections.singletonMap("foo", "spam")));
+		EnvironmentRepository environments = mock(EnvironmentRepository.class);
+		when(environments.findOne(anyString(), anyString(), anyString(), eq(false))).thenAnswer(invocation -> {
+			// every request has to be in flight at the same time for this to return
+			inFlight.countDown();
+			if (!inFlight.await(5, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("Resource requests were serialized");
+			}
+			return environment;
+		});
+		ResourceController controller = new ResourceController(resources, environments);
+		ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < requests; i++) {
+				results.add(executor.submit(() -> controller.retrieve("foo", "bar", "dev", "foo.txt", true)));
+			}
+			for (Future<String> result : results) {
+				assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("foo: spam");
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void concurrentRetrievesForDifferentGitLabelsDoNotMix(@TempDir Path basedir) throws Exception {
+		JGitEnvironmentRepository git = new JGitEnvironmentRepository(new StandardEnvironment(),
+				new JGitEnvironmentProperties(), ObservationRegistry.NOOP);
+		git.setUri(ConfigServerTestUtils.prepareLocalRepo());
+		git.setBasedir(basedir.toFile());
+		GenericResourceRepository resources = new GenericResourceRepository(git);
+		resources.setResourceLoader(new DefaultResourceLoader());
+		ResourceController controller = new ResourceController(resources, git);
+		// both labels are checked out into the same working copy
+		Map<String, String> expected = Map.of("master", "foo: bar", "composite", "foo: barconfig");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				String label = i % 2 == 0 ? "master" : "composite";
+				results.add(executor.submit(() -> {
+					for (int j = 0; j < 20; j++) {
+						assertThat(controller.retrieve("bar", "default", label, "bar.properties", false).trim())
+								.isEqualTo(expected.get(label));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get(60, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void unreadBinaryDownloadDoesNotBlockAnotherLabel(@TempDir Path basedir) throws Exception {
+		JGitEnvironmentRepository git = new JGitEnvironmentRepository(new StandardEnvironment(),
+				new JGitEnvironmentProperties(), ObservationRegistry.NOOP);
+		git.setUri(ConfigServerTestUtils.prepareLocalRepo());
+		git.setBasedir(basedir.toFile());
+		GenericResourceRepository resources = new GenericResourceRepository(git);
+		resources.setResourceLoader(new DefaultResourceLoader());
+		ResourceController controller = new ResourceController(resources, git);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bar/default/master/bar.properties");
+		Resource download = controller.binary("bar", "default", "master", new ServletWebRequest(request));
+		// the body of the first download has not been written yet
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> other = executor
+					.submit(() -> controller.retrieve("bar", "default", "composite", "bar.properties", false));
+			assertThat(other.get(30, TimeUnit.SECONDS).trim()).isEqualTo("foo: barconfig");
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		try (InputStream stream = download.getInputStream()) {
+			assertThat(StreamUtils.copyToString(stream, StandardCharsets.UTF_8).trim()).isEqualTo("foo: bar");
+		}
+	}
+
+	@Test
+	public void renderedResourceIsCachedForEnvironmentVersion(@TempDir Path dir) throws Exception {
+		File file = dir.resolve("foo.txt").toFile();
+		Files.writeString(file.toPath(), "foo: ${foo}");
+		long lastModified = file.lastModified();
+		ResourceRepository resources = mock(ResourceRepository.class);
+		when(resources.findOne("foo", "bar", "dev", "foo.txt")).thenReturn(new FileSystemResource(file));
+		Environment environment = new Environment("foo", new String[] { "bar" }, "dev", "v1", null);
+		environment.add(new PropertySource("test", Collections.singletonMap("foo", "spam")));
+		EnvironmentRepository environments = mock(EnvironmentRepository.class);
+		when(environments.findOne("foo", "bar", "dev", false)).thenReturn(environment);
+		ResourceController controller = new ResourceController(resources, environments);
+		controller.setRenderedResourceCacheSize(10);
+
+		assertThat(controller.retrieve("foo", "bar", "dev", "foo.txt", true)).isEqualTo("foo: spam");
+		// same version and timestamp, so the rendered text is served from the cache
+		Files.writeString(file.toPath(), "foo: changed ${foo}");
+		assertThat(file.setLastModified(lastModified)).isTrue();
+		assertThat(controller.retrieve("foo", "bar", "dev", "foo.txt", true)).isEqualTo("foo: spam");
+
+		environment.setVersion("v2");
+		assertThat(controller.retrieve("foo", "bar", "dev", "foo.txt", true)).isEqualTo("foo: changed spam");
+	}
+
+	@Test
+	public void renderedResourceHonoursEtag(@TempDir Path dir) throws Exception {
+		File file = dir.resolve("foo.txt").toFile();
+		Files.writeString(file.toPath(), "foo: ${foo}");
+		ResourceRepository resources = mock(ResourceRepository.class);
+		when(resources.findOne("foo", "bar", "dev", "foo.txt")).thenReturn(new FileSystemResource(file));
+		Environment environment = new Environment("foo", new String[] { "bar" }, "dev", "v1", null);
+		environment.add(new PropertySource("test", Collections.singletonMap("foo", "spam")));
+		EnvironmentRepository environments = mock(EnvironmentRepository.class);
+		when(environments.findOne("foo", "bar", "dev", false)).thenReturn(environment);
+		ResourceController controller = new ResourceController(resources, environments);
+		controller.setRenderedResourceCacheSize(10);
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		String resource = controller.retrieve(new ServletWebRequest(new MockHttpServletRequest(), response), "foo",
+				"bar", "dev", "foo.txt", true);
+		assertThat(resource).isEqualTo("foo: spam");
+		String etag = response.getHeader(HttpHeaders.ETAG);
+		assertThat(etag).isNotNull();
+
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+		response = new MockHttpServletResponse();
+		resource = controller.retrieve(new ServletWebRequest(request, response), "foo", "bar", "dev", "foo.txt",
+				true);
+		assertThat(resource).isNull();
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+	}
+
 	@Test
 	public void setSearchLocationsAppendSlashByConstructor() {
 		final NativeEnvironmentProperties properties = new NativeEnvironmentProperties();
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.config.server.support;
+
+import java.util.function.Supplier;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestContextSupportTests {
+
+	@AfterEach
+	public void reset() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	public void snapshotKeepsTheRequestAfterItIsRecycled() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/foo/default");
+		request.addHeader("X-Config-Token", "token");
+		request.setAttribute("attribute", "value");
+		request.addParameter("useDefaultLabel", "true");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		Supplier<HttpServletRequest> snapshot = RequestContextSupport.withRequestSnapshot(
+				() -> ((ServletRequestAttributes) RequestContextHolder.getRequestAttributes()).getRequest());
+		RequestContextHolder.resetRequestAttributes();
+
+		// The container recycles the request for another client
+		request.removeHeader("X-Config-Token");
+		request.addHeader("X-Config-Token", "other");
+		request.clearAttributes();
+		request.removeAllParameters();
+
+		HttpServletRequest copy = snapshot.get();
+		assertThat(copy.getHeader("x-config-token")).isEqualTo("token");
+		assertThat(copy.getAttribute("attribute")).isEqualTo("value");
+		assertThat(copy.getParameter("useDefaultLabel")).isEqualTo("true");
+		assertThat(copy.getMethod()).isEqualTo("GET");
+		assertThat(copy.getRequestURI()).isEqualTo("/foo/default");
+		assertThat(copy.getSession(false)).isNull();
+		assertThat(copy.getSession()).isNull();
+		assertThat(RequestContextHolder.getRequestAttributes()).isNull();
+	}
+
+	@Test
+	public void snapshotServesSessionScopedLookups() {
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+		Supplier<Object> snapshot = RequestContextSupport.withRequestSnapshot(() -> RequestContextHolder
+				.currentRequestAttributes().getAttribute("attribute", RequestAttributes.SCOPE_SESSION));
+
+		assertThat(snapshot.get()).isNull();
+	}
+
+}